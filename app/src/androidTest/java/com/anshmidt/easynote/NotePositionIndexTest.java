@@ -0,0 +1,129 @@
+package com.anshmidt.easynote;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented, since the index is kept in SparseArray and SparseIntArray.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotePositionIndexTest {
+
+    private static final int PRIORITIES_COUNT = 3;
+
+    @Test
+    public void removedNote_isNotFoundAndFollowingNotesShift() throws Exception {
+        ArrayList<Note> notes = listOf(createNote(1, 1), createNote(2, 2), createNote(3, 2));
+        NotePositionIndex index = new NotePositionIndex();
+        index.rebuild(notes);
+
+        Note removedNote = notes.remove(0);
+        index.onRemoved(notes, 0, Collections.singletonList(removedNote));
+
+        assertEquals(-1, index.getPosition(1));
+        assertEquals(0, index.getPosition(2));
+        assertEquals(1, index.getPosition(3));
+        assertEquals(0, index.getCount(1));
+        assertEquals(2, index.getCount(2));
+    }
+
+    @Test
+    public void priorityChangedInPlace_isUncountedFromOldPriority() throws Exception {
+        Note note = createNote(1, 2);
+        ArrayList<Note> notes = listOf(note);
+        NotePositionIndex index = new NotePositionIndex();
+        index.rebuild(notes);
+
+        note.setPriority(new Priority(1));  // as NotesRepository does before the row is moved or removed
+        notes.remove(0);
+        index.onRemoved(notes, 0, Collections.singletonList(note));
+
+        assertEquals(0, index.getCount(1));
+        assertEquals(0, index.getCount(2));
+    }
+
+    @Test
+    public void mixedChanges_leaveIndexAsIfRebuilt() throws Exception {
+        Random random = new Random(42);
+        ArrayList<Note> notes = new ArrayList<>();
+        int nextId = 1;
+        for (; nextId <= 50; nextId++) {
+            notes.add(createNote(nextId, 1 + random.nextInt(PRIORITIES_COUNT)));
+        }
+        Collections.sort(notes, NotesOrdering.LIST);
+        NotePositionIndex index = new NotePositionIndex();
+        index.rebuild(notes);
+        ArrayList<Integer> removedIds = new ArrayList<>();
+
+        for (int i = 0; i < 300; i++) {
+            int change = random.nextInt(5);
+            if ((change == 0) || notes.isEmpty()) {  // a new note
+                Note note = createNote(nextId++, 1 + random.nextInt(PRIORITIES_COUNT));
+                int position = NotesOrdering.LIST.getInsertPosition(notes, note);
+                notes.add(position, note);
+                index.onInserted(notes, position, 1);
+            } else if (change == 1) {  // a page
+                int position = random.nextInt(notes.size() + 1);
+                ArrayList<Note> page = new ArrayList<>();
+                for (int j = random.nextInt(4); j > 0; j--) {
+                    page.add(createNote(nextId++, 1 + random.nextInt(PRIORITIES_COUNT)));
+                }
+                notes.addAll(position, page);
+                index.onInserted(notes, position, page.size());
+            } else if (change == 2) {  // a swiped note
+                int position = random.nextInt(notes.size());
+                Note removedNote = notes.remove(position);
+                removedIds.add(removedNote.id);
+                index.onRemoved(notes, position, Collections.singletonList(removedNote));
+            } else if (change == 3) {  // a dropped page
+                int position = random.nextInt(notes.size());
+                List<Note> page = notes.subList(position, Math.min(notes.size(), position + 1 + random.nextInt(4)));
+                ArrayList<Note> removedNotes = new ArrayList<>(page);
+                page.clear();
+                for (Note removedNote : removedNotes) {
+                    removedIds.add(removedNote.id);
+                }
+                index.onRemoved(notes, position, removedNotes);
+            } else {  // a priority change
+                int position = random.nextInt(notes.size());
+                notes.get(position).setPriority(new Priority(1 + random.nextInt(PRIORITIES_COUNT)));
+                int newPosition = NotesOrdering.LIST.reposition(notes, position);
+                index.onMoved(notes, position, newPosition);
+            }
+            assertSameAsRebuilt(notes, index);
+            for (int removedId : removedIds) {
+                assertEquals(-1, index.getPosition(removedId));
+            }
+        }
+    }
+
+    private static void assertSameAsRebuilt(List<Note> notes, NotePositionIndex index) {
+        NotePositionIndex rebuiltIndex = new NotePositionIndex();
+        rebuiltIndex.rebuild(notes);
+        for (int position = 0; position < notes.size(); position++) {
+            assertEquals(position, index.getPosition(notes.get(position).id));
+        }
+        for (int priorityId = 1; priorityId <= PRIORITIES_COUNT; priorityId++) {
+            assertEquals(rebuiltIndex.getCount(priorityId), index.getCount(priorityId));
+        }
+    }
+
+    private static Note createNote(int id, int priorityId) {
+        return new Note(id, 1000 - id, "note " + id, false, new Priority(priorityId), new NotesList(1));
+    }
+
+    private static ArrayList<Note> listOf(Note... notes) {
+        ArrayList<Note> list = new ArrayList<>();
+        Collections.addAll(list, notes);
+        return list;
+    }
+}
@@ -0,0 +1,84 @@
+package com.anshmidt.easynote.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every write of notes and lists gets a growing change_seq, deletes leave tombstones, and changed rows are found by index.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChangeLogTest {
+
+    private static final int LIST_ID = 1;
+
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+    private ListsDao listsDao;
+    private ChangeLogDao changeLogDao;
+
+    @Before
+    public void createDb() throws Exception {
+        db = SQLiteDatabase.create(null);  // in-memory
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+        listsDao = new ListsDao(db);
+        changeLogDao = new ChangeLogDao(db);
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void priorityChange_isFoundAfterLastChangeSeq() throws Exception {
+        int changedNoteId = notesDao.addNote(new Note(1000, "milk", false, 2, LIST_ID));
+        notesDao.addNote(new Note(1000, "bread", false, 2, LIST_ID));
+        long lastChangeSeq = changeLogDao.getLastChangeSeq();
+
+        notesDao.changePriorityOfNotes(new int[] { changedNoteId }, 1);  // modification time stays the same
+
+        assertArrayEquals(new int[] { changedNoteId },
+                notesDao.getNoteIdsChangedBetween(lastChangeSeq, changeLogDao.getLastChangeSeq()));
+    }
+
+    @Test
+    public void deletes_leaveTombstones() throws Exception {
+        int noteId = notesDao.addNote(new Note(1000, "milk", false, 2, LIST_ID));
+        int listId = listsDao.addList(new NotesList(0, "Shopping", false));
+        long lastChangeSeq = changeLogDao.getLastChangeSeq();
+
+        notesDao.deleteNoteById(noteId);
+        listsDao.deleteList(listId);
+        long newChangeSeq = changeLogDao.getLastChangeSeq();
+
+        assertArrayEquals(new int[] { noteId }, changeLogDao.getDeletedIds(NotesDao.NOTES_TABLE_NAME, lastChangeSeq, newChangeSeq));
+        assertArrayEquals(new int[] { listId }, changeLogDao.getDeletedIds(ListsDao.LISTS_TABLE_NAME, lastChangeSeq, newChangeSeq));
+        changeLogDao.deleteTombstonesUpTo(newChangeSeq);
+        assertEquals(0, changeLogDao.getDeletedIds(NotesDao.NOTES_TABLE_NAME, 0, newChangeSeq).length);
+    }
+
+    @Test
+    public void changedNotesQuery_usesChangeSeqIndex() throws Exception {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN SELECT " + NotesDao.KEY_NOTE_ID + " FROM " + NotesDao.NOTES_TABLE_NAME
+                + " WHERE " + NotesDao.KEY_CHANGE_SEQ + " > 1 AND " + NotesDao.KEY_CHANGE_SEQ + " <= 2", null);
+        StringBuilder plan = new StringBuilder();
+        int detailColumn = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detailColumn)).append('\n');
+        }
+        cursor.close();
+        assertTrue(plan.toString(), plan.toString().contains(NotesDao.INDEX_CHANGE_SEQ));
+    }
+}
@@ -0,0 +1,101 @@
+package com.anshmidt.easynote.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes of every tier commit, with the synchronous level of their tier, on a WAL db file like the app's.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DurabilityPolicyTest {
+
+    private static final int SYNCHRONOUS_NORMAL = 1;  // as PRAGMA synchronous returns them
+    private static final int SYNCHRONOUS_FULL = 2;
+
+    private File dbFile;
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+    private DurabilityPolicy durabilityPolicy;
+
+    @Before
+    public void createDb() throws Exception {
+        dbFile = InstrumentationRegistry.getTargetContext().getDatabasePath("durability_policy_test");
+        SQLiteDatabase.deleteDatabase(dbFile);
+        dbFile.getParentFile().mkdirs();
+        db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+        db.enableWriteAheadLogging();
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+        durabilityPolicy = new DurabilityPolicy();
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+        SQLiteDatabase.deleteDatabase(dbFile);
+    }
+
+    @Test
+    public void writesOfBothTiers_commitWithTheirLevel() throws Exception {
+        assertEquals(SYNCHRONOUS_FULL, commitNote(DurabilityPolicy.STRUCTURAL, "structural"));
+        assertEquals(SYNCHRONOUS_NORMAL, commitNote(DurabilityPolicy.AUTOSAVE, "autosave"));
+        assertEquals(SYNCHRONOUS_NORMAL, commitNote(DurabilityPolicy.AUTOSAVE, "autosave again"));  // level is kept
+        assertEquals(SYNCHRONOUS_FULL, commitNote(DurabilityPolicy.STRUCTURAL, "structural again"));
+        assertEquals(4, DatabaseUtils.queryNumEntries(db, NotesDao.NOTES_TABLE_NAME));
+    }
+
+    @Test
+    public void nestedTransaction_keepsOuterLevel() throws Exception {
+        durabilityPolicy.beginTransaction(db, DurabilityPolicy.STRUCTURAL);
+        try {
+            durabilityPolicy.beginTransaction(db, DurabilityPolicy.AUTOSAVE);
+            try {
+                assertEquals(SYNCHRONOUS_FULL, getSynchronous());
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private int commitNote(int tier, String text) {  // returns synchronous level the commit ran with
+        durabilityPolicy.beginTransaction(db, tier);
+        try {
+            notesDao.addNote(new Note(0, System.currentTimeMillis(), text, false, new Priority(2), new NotesList(1)));
+            int synchronous = getSynchronous();
+            db.setTransactionSuccessful();
+            return synchronous;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private int getSynchronous() {  // inside a transaction, so it's read from the primary connection
+        Cursor cursor = db.rawQuery("PRAGMA synchronous", null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
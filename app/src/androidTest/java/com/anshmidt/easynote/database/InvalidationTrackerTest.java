@@ -0,0 +1,74 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.anshmidt.easynote.Note;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes are reported per table, a burst of them once, and only to observers of the changed tables.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InvalidationTrackerTest {
+
+    private static final int LIST_ID = 1;
+
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+    private InvalidationTracker invalidationTracker;
+
+    @Before
+    public void createDb() throws Exception {
+        db = SQLiteDatabase.create(null);  // in-memory
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+        invalidationTracker = new InvalidationTracker();
+        invalidationTracker.onOpen(db);
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void burstOfWrites_isReportedOnce() throws Exception {
+        assertTrue(invalidationTracker.takeChangedTables(db).isEmpty());
+        for (int i = 0; i < 10; i++) {
+            notesDao.addNote(new Note(1000 + i, "note " + i, false, 2, LIST_ID));
+        }
+
+        assertEquals(Collections.singleton(NotesDao.NOTES_TABLE_NAME), invalidationTracker.takeChangedTables(db));
+        assertTrue(invalidationTracker.takeChangedTables(db).isEmpty());
+    }
+
+    @Test
+    public void observer_isNotifiedOnlyAboutItsTables() throws Exception {
+        final Set<String> notifiedTables = new HashSet<>();
+        invalidationTracker.addObserver(new InvalidationTracker.Observer(ListsDao.LISTS_TABLE_NAME) {
+            @Override
+            public void onInvalidated(Set<String> changedTables) {
+                notifiedTables.addAll(changedTables);
+            }
+        });
+
+        notesDao.addNote(new Note(1000, "note", false, 2, LIST_ID));
+        invalidationTracker.notifyObservers(invalidationTracker.takeChangedTables(db));
+        assertTrue(notifiedTables.isEmpty());
+
+        db.execSQL("INSERT INTO " + ListsDao.LISTS_TABLE_NAME + " (" + ListsDao.KEY_LIST_NAME + ") VALUES ('list')");
+        invalidationTracker.notifyObservers(invalidationTracker.takeChangedTables(db));
+        assertEquals(Collections.singleton(ListsDao.LISTS_TABLE_NAME), notifiedTables);
+    }
+}
@@ -0,0 +1,147 @@
+package com.anshmidt.easynote.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Long note bodies are stored in chunks, lists read only their beginning, and the full text is assembled on request.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NoteChunksTest {
+
+    private static final int LIST_ID = 1;
+
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+
+    @Before
+    public void createDb() throws Exception {
+        db = SQLiteDatabase.create(null);  // in-memory
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void longText_isReadPartlyAndAssembledOnRequest() throws Exception {
+        String longText = createText(NoteChunksDao.CHUNK_LENGTH * 2 + 10);
+        notesDao.addNote(new Note(1000, longText, false, 2, LIST_ID));
+        assertEquals(3, countChunks());
+
+        Note note = notesDao.getAllNotesFromList(new NotesList(LIST_ID)).get(0);
+        assertFalse(note.hasFullText());
+        assertEquals(NoteChunksDao.MAX_INLINE_TEXT_LENGTH, note.text.length());
+        assertEquals(longText.length(), note.textLength);
+        assertEquals(longText, notesDao.getFullText(note));
+    }
+
+    @Test
+    public void partlyReadText_isNotSaved() throws Exception {
+        String longText = createText(NoteChunksDao.MAX_INLINE_TEXT_LENGTH + 1);
+        notesDao.addNote(new Note(1000, longText, false, 2, LIST_ID));
+
+        Note note = notesDao.getAllNotesFromList(new NotesList(LIST_ID)).get(0);
+        note.markChanged(Note.FIELD_TEXT);
+        notesDao.updateNote(note);
+
+        Note savedNote = notesDao.getAllNotesFromList(new NotesList(LIST_ID)).get(0);
+        assertEquals(longText, notesDao.getFullText(savedNote));
+    }
+
+    @Test
+    public void shortenedOrDeletedNote_hasNoChunks() throws Exception {
+        Note note = new Note(1000, createText(NoteChunksDao.CHUNK_LENGTH + 1), false, 2, LIST_ID);
+        notesDao.addNote(note);
+        assertEquals(2, countChunks());
+
+        note.setText("short");
+        notesDao.updateNote(note);
+        assertEquals(0, countChunks());
+        ArrayList<Note> notes = notesDao.getAllNotesFromList(new NotesList(LIST_ID));
+        assertTrue(notes.get(0).hasFullText());
+        assertEquals("short", notes.get(0).text);
+
+        note.setText(createText(NoteChunksDao.CHUNK_LENGTH + 1));
+        notesDao.updateNote(note);
+        notesDao.deleteNote(note);
+        assertEquals(0, countChunks());
+    }
+
+    @Test
+    public void wordPastInlineText_isFoundBySearch() throws Exception {
+        String beginning = createText(NoteChunksDao.CHUNK_LENGTH + 10);
+        Note note = new Note(1000, beginning + " pelican", false, 2, LIST_ID);
+        notesDao.addNote(note);
+        notesDao.addNote(new Note(1000, "short pelican", false, 2, LIST_ID));
+        assertEquals(2, notesDao.getSearchResults("pelican", false).size());
+
+        note.setText(beginning + " flamingo");
+        notesDao.updateNote(note);
+        assertEquals(1, notesDao.getSearchResults("pelican", false).size());
+        assertEquals(note.id, notesDao.getSearchResults("flam", false).get(0).id);
+
+        notesDao.deleteNote(note);
+        assertTrue(notesDao.getSearchResults("flamingo", false).isEmpty());
+    }
+
+    @Test
+    public void editPastInlineText_rewritesOnlyTouchedChunk() throws Exception {
+        String text = createText(NoteChunksDao.CHUNK_LENGTH * 2 + 10);
+        Note note = new Note(1000, text, false, 2, LIST_ID);
+        notesDao.addNote(note);
+        long firstChunkRowId = getChunkRowId(note.id, 0);
+        long lastChunkRowId = getChunkRowId(note.id, 2);
+
+        int changeStart = NoteChunksDao.CHUNK_LENGTH + 5;
+        String editedText = text.substring(0, changeStart) + "X" + text.substring(changeStart + 1);
+        note.setText(editedText, changeStart, text.length() - changeStart - 1);
+        notesDao.updateNote(note);
+
+        assertEquals(firstChunkRowId, getChunkRowId(note.id, 0));
+        assertEquals(lastChunkRowId, getChunkRowId(note.id, 2));
+        Note savedNote = notesDao.getAllNotesFromList(new NotesList(LIST_ID)).get(0);
+        assertEquals(text.substring(0, NoteChunksDao.MAX_INLINE_TEXT_LENGTH), savedNote.text);
+        assertEquals(editedText, notesDao.getFullText(savedNote));
+
+        String shortenedText = editedText.substring(0, NoteChunksDao.CHUNK_LENGTH + 1);
+        note.setText(shortenedText, shortenedText.length(), 0);
+        notesDao.updateNote(note);
+        assertEquals(2, countChunks());
+        assertEquals(shortenedText, notesDao.getFullText(notesDao.getAllNotesFromList(new NotesList(LIST_ID)).get(0)));
+    }
+
+    private long getChunkRowId(int noteId, int chunkIndex) {  // INSERT OR REPLACE gives a rewritten chunk a new rowid
+        return DatabaseUtils.longForQuery(db, "SELECT rowid FROM " + NoteChunksDao.CHUNKS_TABLE_NAME
+                + " WHERE " + NoteChunksDao.KEY_NOTE_ID + " = ? AND " + NoteChunksDao.KEY_CHUNK_INDEX + " = ?",
+                new String[] {String.valueOf(noteId), String.valueOf(chunkIndex)});
+    }
+
+    private long countChunks() {
+        return DatabaseUtils.queryNumEntries(db, NoteChunksDao.CHUNKS_TABLE_NAME);
+    }
+
+    private String createText(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + (i % 26)));
+        }
+        return text.toString();
+    }
+}
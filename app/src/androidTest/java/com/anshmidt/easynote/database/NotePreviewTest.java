@@ -0,0 +1,100 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * List pages and search results read only the preview of a note; the full text is read on request.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotePreviewTest {
+
+    private static final int LIST_ID = 1;
+
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+
+    @Before
+    public void createDb() throws Exception {
+        db = SQLiteDatabase.create(null);  // in-memory
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void preview_isLimitedByLinesAndLength() throws Exception {
+        assertEquals("short", NotesDao.getPreview("short"));
+
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < NotesDao.PREVIEW_MAX_LINES + 5; i++) {
+            lines.append("line ").append(i).append('\n');
+        }
+        String preview = NotesDao.getPreview(lines.toString());
+        assertEquals(NotesDao.PREVIEW_MAX_LINES - 1, countLineBreaks(preview));
+        assertTrue(preview.endsWith("line " + (NotesDao.PREVIEW_MAX_LINES - 1)));
+
+        assertEquals(NotesDao.PREVIEW_MAX_LENGTH, NotesDao.getPreview(createText(NotesDao.PREVIEW_MAX_LENGTH * 2)).length());
+    }
+
+    @Test
+    public void listPage_readsPreviewOnly() throws Exception {
+        String text = createText(NotesDao.PREVIEW_MAX_LENGTH + 100);
+        notesDao.addNote(new Note(1000, text, false, 2, LIST_ID));
+        notesDao.addNote(new Note(1000, "short", false, 2, LIST_ID));
+
+        for (Note note : notesDao.getNotesFromListPage(LIST_ID, null, 10)) {
+            if (note.text.equals("short")) {
+                assertTrue(note.hasFullText());
+            } else {
+                assertFalse(note.hasFullText());
+                assertEquals(NotesDao.getPreview(text), note.text);
+                assertEquals(text, notesDao.getFullText(note));
+            }
+        }
+    }
+
+    @Test
+    public void updatedText_updatesPreview() throws Exception {
+        Note note = new Note(1000, createText(NotesDao.PREVIEW_MAX_LENGTH * 2), false, 2, LIST_ID);
+        notesDao.addNote(note);
+        note.setText("edited");
+        notesDao.updateNote(note);
+
+        Note savedNote = notesDao.getNotesFromListPage(LIST_ID, null, 10).get(0);
+        assertTrue(savedNote.hasFullText());
+        assertEquals("edited", savedNote.text);
+    }
+
+    private int countLineBreaks(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String createText(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + (i % 26)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading notes page by page, forwards and backwards, gives the same notes in the same order as reading them at once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotesPagingTest {
+
+    private static final int LIST_ID = 1;
+    private static final int PAGE_SIZE = 20;
+
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+
+    @Before
+    public void createDb() throws Exception {
+        db = SQLiteDatabase.create(null);  // in-memory
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+
+        for (int i = 0; i < 230; i++) {
+            long modificationTime = 1000 + (i % 7);  // many notes share modification time
+            int priorityId = (i % 3) + 1;
+            notesDao.addNote(new Note(modificationTime, "note " + i, false, priorityId, LIST_ID));
+            notesDao.addNote(new Note(modificationTime, "other list " + i, false, priorityId, LIST_ID + 1));
+            if (i % 2 == 0) {
+                notesDao.addNote(new Note(modificationTime, "trash " + i, true, priorityId, LIST_ID));
+            }
+        }
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void listPages_matchWholeList() throws Exception {
+        List<Integer> expected = getIds(notesDao.getAllNotesFromList(new NotesList(LIST_ID)));
+
+        List<Integer> forward = new ArrayList<>();
+        NoteKey key = null;
+        ArrayList<Note> page;
+        do {
+            page = notesDao.getNotesFromListPage(LIST_ID, key, PAGE_SIZE);
+            forward.addAll(getIds(page));
+            if (!page.isEmpty()) {
+                key = NoteKey.of(page.get(page.size() - 1));
+            }
+        } while (page.size() == PAGE_SIZE);
+        assertEquals(expected, forward);
+
+        List<Integer> backward = new ArrayList<>();
+        key = NoteKey.of(notesDao.getNoteById(expected.get(expected.size() - 1)));
+        backward.add(key.noteId);
+        do {
+            page = notesDao.getNotesFromListPageBefore(LIST_ID, key, PAGE_SIZE);
+            backward.addAll(0, getIds(page));
+            if (!page.isEmpty()) {
+                key = NoteKey.of(page.get(0));
+            }
+        } while (page.size() == PAGE_SIZE);
+        assertEquals(expected, backward);
+    }
+
+    @Test
+    public void trashPages_matchWholeTrash() throws Exception {
+        List<Integer> expected = getIds(notesDao.getAllNotesFromTrash());
+
+        List<Integer> forward = new ArrayList<>();
+        NoteKey key = null;
+        ArrayList<Note> page;
+        do {
+            page = notesDao.getNotesFromTrashPage(key, PAGE_SIZE);
+            forward.addAll(getIds(page));
+            if (!page.isEmpty()) {
+                key = NoteKey.of(page.get(page.size() - 1));
+            }
+        } while (page.size() == PAGE_SIZE);
+        assertEquals(expected, forward);
+
+        List<Integer> backward = new ArrayList<>();
+        key = NoteKey.of(notesDao.getNoteById(expected.get(expected.size() - 1)));
+        backward.add(key.noteId);
+        do {
+            page = notesDao.getNotesFromTrashPageBefore(key, PAGE_SIZE);
+            backward.addAll(0, getIds(page));
+            if (!page.isEmpty()) {
+                key = NoteKey.of(page.get(0));
+            }
+        } while (page.size() == PAGE_SIZE);
+        assertEquals(expected, backward);
+    }
+
+    private List<Integer> getIds(List<Note> notes) {
+        List<Integer> ids = new ArrayList<>();
+        for (Note note : notes) {
+            ids.add(note.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,91 @@
+package com.anshmidt.easynote.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that note list queries are served by the indexes created in NotesDao, without sorting.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotesQueryPlanTest {
+
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+
+    @Before
+    public void createDb() throws Exception {
+        db = SQLiteDatabase.create(null);  // in-memory
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void notesFromListQuery_usesListOrderIndex() throws Exception {
+        String plan = explain(notesDao.getAllNotesFromListQuery(), new String[] { "1" });
+        assertTrue(plan, plan.contains(NotesDao.INDEX_LIST_ORDER));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void notesFromTrashQuery_usesTrashOrderIndex() throws Exception {
+        String plan = explain(notesDao.getAllNotesFromTrashQuery(), null);
+        assertTrue(plan, plan.contains(NotesDao.INDEX_TRASH_ORDER));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void migrationFromVersion2_createsIndexes() throws Exception {
+        notesDao.drop(db);
+        db.execSQL("CREATE TABLE " + NotesDao.NOTES_TABLE_NAME + " ("  // notes table as it was in version 2
+                + NotesDao.KEY_NOTE_ID + " INTEGER PRIMARY KEY, "
+                + NotesDao.KEY_MODIFIED_AT + " INTEGER, "
+                + NotesDao.KEY_TEXT + " TEXT, "
+                + NotesDao.KEY_IN_TRASH + " INTEGER, "
+                + NotesDao.KEY_PRIORITY_ID + " INTEGER, "
+                + NotesDao.KEY_LIST_ID + " INTEGER)");
+
+        Migrations.run(db, 2, 4, notesDao, new ListsDao(db), new PriorityDao(db), new NotesSearchDao(db));
+
+        List<String> indexNames = getIndexNames();
+        assertTrue(indexNames.contains(NotesDao.INDEX_LIST_ORDER));
+        assertTrue(indexNames.contains(NotesDao.INDEX_TRASH_ORDER));
+    }
+
+    private String explain(String query, String[] args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, args);
+        StringBuilder plan = new StringBuilder();
+        int detailColumn = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detailColumn)).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
+
+    private List<String> getIndexNames() {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ?",
+                new String[] { NotesDao.NOTES_TABLE_NAME });
+        List<String> names = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            names.add(cursor.getString(0));
+        }
+        cursor.close();
+        return names;
+    }
+}
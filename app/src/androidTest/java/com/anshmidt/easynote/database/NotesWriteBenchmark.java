@@ -0,0 +1,140 @@
+package com.anshmidt.easynote.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-call cost of note writes: ContentValues + db.insert/db.update (how NotesDao used to write)
+ * against the compiled statements NotesDao now takes from StatementCache. Results are printed to logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotesWriteBenchmark {
+
+    private static final int WARMUP_CALLS = 200;
+    private static final int MEASURED_CALLS = 2000;
+    private final String LOG_TAG = NotesWriteBenchmark.class.getSimpleName();
+
+    private SQLiteDatabase db;
+    private StatementCache statementCache;
+    private NotesDao notesDao;
+    private int callNumber = 0;
+
+    @Before
+    public void createDb() throws Exception {
+        db = SQLiteDatabase.create(null);
+        statementCache = new StatementCache(db);
+        notesDao = new NotesDao(db, statementCache, new DimensionCache(db));
+        DatabaseHelper.createTables(db);
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        statementCache.close();
+        db.close();
+    }
+
+    @Test
+    public void insert() throws Exception {
+        long contentValuesNs = measure(new Runnable() {
+            @Override
+            public void run() {
+                db.insert(NotesDao.NOTES_TABLE_NAME, null, toContentValues(createNote()));
+            }
+        });
+        final SQLiteStatement insertStatement = statementCache.get(NotesDao.INSERT_NOTE_SQL);
+        long statementNs = measure(new Runnable() {
+            @Override
+            public void run() {
+                Note note = createNote();
+                insertStatement.bindLong(1, note.modificationTime);
+                insertStatement.bindString(2, note.text);
+                insertStatement.bindLong(3, note.text.length());
+                insertStatement.bindString(4, NotesDao.getPreview(note.text));
+                insertStatement.bindLong(5, 0);
+                insertStatement.bindLong(6, note.priority.id);
+                insertStatement.bindLong(7, note.list.id);
+                insertStatement.executeInsert();
+            }
+        });
+        report("insert", contentValuesNs, statementNs);
+    }
+
+    @Test
+    public void update() throws Exception {
+        final Note note = createNote();
+        notesDao.addNote(note);
+        long contentValuesNs = measure(new Runnable() {
+            @Override
+            public void run() {
+                note.text = "benchmark note " + (++callNumber);
+                db.update(NotesDao.NOTES_TABLE_NAME, toContentValues(note), NotesDao.KEY_NOTE_ID + " = ?",
+                        new String[] { String.valueOf(note.id) });
+            }
+        });
+        final SQLiteStatement updateStatement = statementCache.get(NotesDao.UPDATE_NOTE_SQL);
+        long statementNs = measure(new Runnable() {
+            @Override
+            public void run() {
+                note.text = "benchmark note " + (++callNumber);
+                updateStatement.bindLong(1, note.modificationTime);
+                updateStatement.bindString(2, note.text);
+                updateStatement.bindLong(3, note.text.length());
+                updateStatement.bindString(4, NotesDao.getPreview(note.text));
+                updateStatement.bindLong(5, 0);
+                updateStatement.bindLong(6, note.priority.id);
+                updateStatement.bindLong(7, note.list.id);
+                updateStatement.bindLong(8, note.id);
+                updateStatement.executeUpdateDelete();
+            }
+        });
+        report("update", contentValuesNs, statementNs);
+    }
+
+    private long measure(Runnable call) {  // average ns per call, each call in its own transaction like in the app
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run();
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / MEASURED_CALLS;
+    }
+
+    private void report(String operation, long contentValuesNs, long statementNs) {
+        Log.i(LOG_TAG, operation + ": ContentValues " + contentValuesNs + " ns/call, compiled statement "
+                + statementNs + " ns/call");
+        assertTrue(contentValuesNs > 0 && statementNs > 0);
+    }
+
+    private Note createNote() {
+        return new Note(0, System.currentTimeMillis(), "benchmark note", false, new Priority(2), new NotesList(1));
+    }
+
+    private ContentValues toContentValues(Note note) {
+        ContentValues values = new ContentValues();
+        values.put(NotesDao.KEY_MODIFIED_AT, note.modificationTime);
+        values.put(NotesDao.KEY_TEXT, note.text);
+        values.put(NotesDao.KEY_TEXT_LENGTH, note.text.length());
+        values.put(NotesDao.KEY_PREVIEW, NotesDao.getPreview(note.text));
+        values.put(NotesDao.KEY_IN_TRASH, note.inTrash);
+        values.put(NotesDao.KEY_PRIORITY_ID, note.priority.id);
+        values.put(NotesDao.KEY_LIST_ID, note.list.id);
+        return values;
+    }
+}
@@ -0,0 +1,85 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.anshmidt.easynote.Note;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * In WAL mode a read doesn't wait for a write transaction and sees the last committed state.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WalReadSnapshotTest {
+
+    private static final int LIST_ID = 1;
+    private static final int TRASH_NOTES_COUNT = 50;
+
+    private File dbFile;
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+
+    @Before
+    public void createDb() throws Exception {
+        dbFile = InstrumentationRegistry.getTargetContext().getDatabasePath("wal_read_snapshot_test");
+        SQLiteDatabase.deleteDatabase(dbFile);
+        dbFile.getParentFile().mkdirs();
+        db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);  // WAL needs a file, in-memory db can't use it
+        db.enableWriteAheadLogging();
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+        for (int i = 0; i < TRASH_NOTES_COUNT; i++) {
+            notesDao.addNote(new Note(1000 + i, "note " + i, true, 2, LIST_ID));
+        }
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+        SQLiteDatabase.deleteDatabase(dbFile);
+    }
+
+    @Test
+    public void trashListing_doesNotWaitForPurge() throws Exception {
+        final CountDownLatch purged = new CountDownLatch(1);
+        final CountDownLatch listed = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                db.beginTransactionNonExclusive();
+                try {
+                    notesDao.deleteTrashNotes();
+                    purged.countDown();
+                    listed.await(5, TimeUnit.SECONDS);  // transaction stays open while trash is read
+                    db.setTransactionSuccessful();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(purged.await(5, TimeUnit.SECONDS));
+
+        long startMs = System.currentTimeMillis();
+        int trashNotesCount = notesDao.getAllNotesFromTrash().size();
+        listed.countDown();
+        assertTrue(System.currentTimeMillis() - startMs < 1000);
+        assertEquals(TRASH_NOTES_COUNT, trashNotesCount);  // purge isn't committed yet
+
+        writer.join();
+        assertEquals(0, notesDao.getAllNotesFromTrash().size());
+    }
+}
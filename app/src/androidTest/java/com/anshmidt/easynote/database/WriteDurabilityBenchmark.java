@@ -0,0 +1,116 @@
+package com.anshmidt.easynote.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes per second and p99 commit latency of note updates under each DurabilityPolicy tier,
+ * on a WAL db file like the app's. Results are printed to logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WriteDurabilityBenchmark {
+
+    private static final int WARMUP_COMMITS = 20;
+    private static final int MEASURED_WRITES = 1000;
+    private static final int GROUP_SIZE = 10;  // saves of a typing burst committed together
+    private final String LOG_TAG = WriteDurabilityBenchmark.class.getSimpleName();
+
+    private File dbFile;
+    private SQLiteDatabase db;
+    private NotesDao notesDao;
+    private DurabilityPolicy durabilityPolicy;
+    private Note[] notes;
+    private int callNumber = 0;
+
+    @Before
+    public void createDb() throws Exception {
+        dbFile = InstrumentationRegistry.getTargetContext().getDatabasePath("write_durability_benchmark");
+        SQLiteDatabase.deleteDatabase(dbFile);
+        dbFile.getParentFile().mkdirs();
+        db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+        db.enableWriteAheadLogging();
+        notesDao = new NotesDao(db);
+        DatabaseHelper.createTables(db);
+        durabilityPolicy = new DurabilityPolicy();
+        notes = new Note[GROUP_SIZE];
+        for (int i = 0; i < notes.length; i++) {
+            notes[i] = new Note(0, System.currentTimeMillis(), "benchmark note", false, new Priority(2), new NotesList(1));
+            notesDao.addNote(notes[i]);
+        }
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        db.close();
+        SQLiteDatabase.deleteDatabase(dbFile);
+    }
+
+    @Test
+    public void structuralWrites() throws Exception {
+        measure("structural, FULL, commit per write", DurabilityPolicy.STRUCTURAL, 1);
+    }
+
+    @Test
+    public void autosaveWrites() throws Exception {
+        measure("autosave, NORMAL, commit per write", DurabilityPolicy.AUTOSAVE, 1);
+        measure("autosave, NORMAL, group commit of " + GROUP_SIZE, DurabilityPolicy.AUTOSAVE, GROUP_SIZE);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        cursor.moveToFirst();  // query runs only when cursor is read
+        cursor.close();
+        Log.i(LOG_TAG, "checkpoint after autosave writes: " + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + " us");
+    }
+
+    private void measure(String tierName, int tier, int writesPerCommit) {
+        for (int i = 0; i < WARMUP_COMMITS; i++) {
+            commit(tier, writesPerCommit);
+        }
+        int commitsCount = MEASURED_WRITES / writesPerCommit;
+        long[] commitNs = new long[commitsCount];
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < commitsCount; i++) {
+            long commitStart = SystemClock.elapsedRealtimeNanos();
+            commit(tier, writesPerCommit);
+            commitNs[i] = SystemClock.elapsedRealtimeNanos() - commitStart;
+        }
+        long totalNs = SystemClock.elapsedRealtimeNanos() - start;
+        Arrays.sort(commitNs);
+        long writesPerSecond = MEASURED_WRITES * 1000000000L / totalNs;
+        long p99Us = commitNs[(int) Math.ceil(commitsCount * 0.99) - 1] / 1000;  // a write waits for its whole commit
+        Log.i(LOG_TAG, tierName + ": " + writesPerSecond + " writes/s, p99 latency " + p99Us + " us");
+        assertTrue(writesPerSecond > 0);
+    }
+
+    private void commit(int tier, int writesCount) {
+        durabilityPolicy.beginTransaction(db, tier);
+        try {
+            for (int i = 0; i < writesCount; i++) {
+                Note note = notes[i % notes.length];
+                note.setText("benchmark note " + (++callNumber));
+                notesDao.updateNote(note);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
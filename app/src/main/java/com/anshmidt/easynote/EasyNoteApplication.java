@@ -1,6 +1,7 @@
 package com.anshmidt.easynote;
 
 import android.app.Application;
+import android.content.res.Configuration;
 import android.util.Log;
 
 import java.util.Timer;
@@ -16,6 +17,18 @@ public class EasyNoteApplication extends Application {
     public boolean wasInBackground;
     private final long MAX_ACTIVITY_TRANSITION_TIME_MS = 10000;
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PriorityInfo.getInstance(this);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        PriorityInfo.onConfigurationChanged(this);  // priority names depend on locale
+    }
+
     public void startActivityTransitionTimer() {
         this.activityTransitionTimer = new Timer();
         this.activityTransitionTimerTask = new TimerTask() {
@@ -1,6 +1,7 @@
 package com.anshmidt.easynote;
 
 import android.content.Context;
+import android.text.TextUtils;
 import android.util.Log;
 
 /**
@@ -8,6 +9,14 @@ import android.util.Log;
  */
 
 public class Note {
+
+    // fields changed since the note was read from db or saved last time, see setters
+    public static final int FIELD_TEXT = 1;
+    public static final int FIELD_PRIORITY = 1 << 1;
+    public static final int FIELD_LIST = 1 << 2;
+    public static final int FIELD_IN_TRASH = 1 << 3;
+    public static final int ALL_FIELDS = FIELD_TEXT | FIELD_PRIORITY | FIELD_LIST | FIELD_IN_TRASH;
+
     public int id;
     public String text;
     //private int priorityId;
@@ -19,14 +28,24 @@ public class Note {
 //    public String listName;
     public long modificationTime;  //ms
     public boolean inTrash = false;
+    public int textLength;  // of the full text; text holds only its beginning if the body wasn't loaded, see hasFullText()
+    private int changedFields = 0;
+    // while FIELD_TEXT is changed: text before changedTextStart and the last unchangedTextSuffixLength chars are as saved
+    private int changedTextStart = Integer.MAX_VALUE;
+    private int unchangedTextSuffixLength = Integer.MAX_VALUE;
 
     //public final int DEFAULT_PRIORITY_ID = 2;  //NORMAL
     private final String LOG_TAG = Note.class.getSimpleName();
 
     public Note(int id, long modificationTime, String text, boolean inTrash, Priority priority, NotesList list) {  // for getAllNotes in DbHelper
+        this(id, modificationTime, text, getLength(text), inTrash, priority, list);
+    }
+
+    public Note(int id, long modificationTime, String text, int textLength, boolean inTrash, Priority priority, NotesList list) {
         this.id = id;
         this.modificationTime = modificationTime;
         this.text = text;
+        this.textLength = textLength;
         this.inTrash = inTrash;
         this.priority = priority;
         this.list = list;
@@ -35,6 +54,7 @@ public class Note {
     public Note(long modificationTime, String text, boolean inTrash, int priorityId, int listId) {  // for DefaultData
         this.modificationTime = modificationTime;
         this.text = text;
+        this.textLength = getLength(text);
         this.inTrash = inTrash;
         this.priority = new Priority(priorityId);
         this.list = new NotesList(listId);
@@ -42,8 +62,8 @@ public class Note {
 
     public Note(String text, Context context) {  // for adding new note in Activity
         this.text = text;
-        PriorityInfo priorityInfo = new PriorityInfo(context);
-        this.priority = priorityInfo.DEFAULT;
+        this.textLength = getLength(text);
+        this.priority = PriorityInfo.getInstance(context).DEFAULT;
         this.modificationTime = System.currentTimeMillis();
     }
 
@@ -52,6 +72,118 @@ public class Note {
     }
 
 
+    // text, priority, list and inTrash have to be changed through setters, so that only changed columns are saved
+
+    public synchronized void setText(String text) {
+        setText(text, 0, 0);  // where it has changed is unknown
+    }
+
+    /**
+     * For an edit which is known to change only chars from changeStart to the last unchangedSuffixLength ones,
+     * so only the part of a long text around them is written to db.
+     */
+    public synchronized void setText(String text, int changeStart, int unchangedSuffixLength) {
+        if (!TextUtils.equals(this.text, text)) {
+            changedFields |= FIELD_TEXT;
+            changedTextStart = Math.min(changedTextStart, changeStart);
+            unchangedTextSuffixLength = Math.min(unchangedTextSuffixLength, unchangedSuffixLength);
+        }
+        this.text = text;
+        this.textLength = getLength(text);
+    }
+
+    public synchronized int getChangedTextStart() {
+        return changedTextStart;
+    }
+
+    public synchronized int getUnchangedTextSuffixLength() {
+        return unchangedTextSuffixLength;
+    }
+
+    /**
+     * False if only the beginning of a long text was read from db. Such text mustn't be edited or saved,
+     * the full one has to be loaded first, see setLoadedText().
+     */
+    public synchronized boolean hasFullText() {
+        return getLength(text) == textLength;
+    }
+
+    public synchronized void setLoadedText(String fullText) {  //doesn't count as a change
+        this.text = fullText;
+        this.textLength = getLength(fullText);
+        forgetChangedTextRange();
+    }
+
+    /**
+     * Takes values of another instance of this note, e.g. one changed in another activity. Doesn't count as a change.
+     */
+    public synchronized void copyFrom(Note note) {
+        if (note.hasFullText()) {
+            this.text = note.text;
+            this.textLength = note.textLength;
+            forgetChangedTextRange();
+        }
+        this.priority = note.priority;
+        this.list = note.list;
+        this.inTrash = note.inTrash;
+        this.modificationTime = note.modificationTime;
+    }
+
+    private static int getLength(String text) {
+        return (text == null) ? 0 : text.length();
+    }
+
+    public synchronized void setPriority(Priority priority) {
+        if ((this.priority == null) || !this.priority.equals(priority)) {
+            changedFields |= FIELD_PRIORITY;
+        }
+        this.priority = priority;
+    }
+
+    public synchronized void setList(NotesList list) {
+        if ((this.list == null) || (list == null) || (this.list.id != list.id)) {
+            changedFields |= FIELD_LIST;
+        }
+        this.list = list;
+    }
+
+    public synchronized void setInTrash(boolean inTrash) {
+        if (this.inTrash != inTrash) {
+            changedFields |= FIELD_IN_TRASH;
+        }
+        this.inTrash = inTrash;
+    }
+
+    public synchronized boolean hasChanges() {
+        return changedFields != 0;
+    }
+
+    /**
+     * Returns changed fields and marks them as saved. Changes made after this call will be returned next time,
+     * so a note edited while it's being saved isn't lost.
+     */
+    public synchronized int takeChangedFields() {
+        int fields = changedFields;
+        changedFields = 0;
+        changedTextStart = Integer.MAX_VALUE;
+        unchangedTextSuffixLength = Integer.MAX_VALUE;
+        return fields;
+    }
+
+    public synchronized void markChanged(int fields) {  //e.g. when saving has failed
+        changedFields |= fields;
+        if ((fields & FIELD_TEXT) != 0) {
+            forgetChangedTextRange();
+        }
+    }
+
+    private void forgetChangedTextRange() {  //pending text change is written whole, it may not be based on the saved text
+        if ((changedFields & FIELD_TEXT) != 0) {
+            changedTextStart = 0;
+            unchangedTextSuffixLength = 0;
+        }
+    }
+
     public void printContentToLog() {
         Log.d(LOG_TAG, "id = '" + id + "', priority = '" + priority.name +
                 "', modificationTime = '" + modificationTime +
@@ -0,0 +1,121 @@
+package com.anshmidt.easynote;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Write-behind saving of notes edited in EditNoteActivity.
+ * Edits are coalesced per note id and written to db after a pause in typing,
+ * or immediately when flush() is called (focus loss, onPause).
+ * Typed text is collected in a NoteTextBuffer and put into note.text only on flush.
+ */
+
+public class NoteAutosaver {
+
+    public static final long DEFAULT_DEBOUNCE_DELAY_MS = 700;
+
+    private final NotesRepository notesRepository;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<Integer, Note> pendingNotes = new LinkedHashMap<>();
+    private final SparseArray<NoteTextBuffer> textBuffers = new SparseArray<>();  // by note id
+    private long debounceDelayMs = DEFAULT_DEBOUNCE_DELAY_MS;
+    private final String LOG_TAG = NoteAutosaver.class.getSimpleName();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public NoteAutosaver(NotesRepository notesRepository) {
+        this.notesRepository = notesRepository;
+    }
+
+    public void setDebounceDelay(long debounceDelayMs) {
+        this.debounceDelayMs = debounceDelayMs;
+    }
+
+    public void scheduleSave(Note note) {
+        pendingNotes.put(note.id, note);
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, debounceDelayMs);
+    }
+
+    /**
+     * Takes a change reported by TextWatcher.onTextChanged, without copying the whole text.
+     */
+    public void onTextChanged(Note note, CharSequence text, int start, int before, int count) {
+        NoteTextBuffer textBuffer = textBuffers.get(note.id);
+        if (textBuffer == null) {
+            textBuffer = new NoteTextBuffer(note.text);
+            textBuffers.put(note.id, textBuffer);
+        }
+        if (!textBuffer.applyChange(text, start, before, count) || (textBuffer.length() != text.length())) {
+            Log.d(LOG_TAG, "Text buffer of note " + note.id + " is out of sync, recreating it");
+            textBuffer = new NoteTextBuffer(text.toString());
+            textBuffers.put(note.id, textBuffer);
+        }
+        scheduleSave(note);
+    }
+
+    /**
+     * Puts typed text into note.text, for code that is going to read it before the note is saved.
+     */
+    public void applyTypedText(Note note) {
+        NoteTextBuffer textBuffer = textBuffers.get(note.id);
+        if (textBuffer != null) {
+            if (textBuffer.isBasedOn(note.text)) {  //otherwise note.text was replaced meanwhile, e.g. by copyFrom()
+                note.setText(textBuffer.toString(), textBuffer.getChangeStart(), textBuffer.getUnchangedSuffixLength());
+            } else {
+                note.setText(textBuffer.toString());
+            }
+            textBuffers.remove(note.id);
+        }
+    }
+
+    public boolean hasPendingEdits() {
+        return !pendingNotes.isEmpty();
+    }
+
+    /**
+     * Queues all pending edits to be written to db in one transaction. Safe to call when nothing is pending.
+     * Requests made to AsyncDatabaseHelper or NotesRepository after this call will see the edits.
+     */
+    public void flush() {
+        ArrayList<Note> notesToSave = takePendingNotes();
+        if (notesToSave != null) {
+            notesRepository.updateNotes(notesToSave);
+        }
+    }
+
+    private ArrayList<Note> takePendingNotes() {
+        handler.removeCallbacks(flushRunnable);
+        if (pendingNotes.isEmpty()) {
+            return null;
+        }
+        ArrayList<Note> notesToSave = new ArrayList<>(pendingNotes.values());
+        pendingNotes.clear();
+        for (Note note : notesToSave) {
+            applyTypedText(note);
+        }
+        Log.d(LOG_TAG, "Flushing " + notesToSave.size() + " pending note(s)");
+        return notesToSave;
+    }
+
+    /**
+     * Forgets a pending edit, e.g. when the note is deleted before it was saved.
+     */
+    public void discard(int noteId) {
+        pendingNotes.remove(noteId);
+        textBuffers.remove(noteId);
+        if (pendingNotes.isEmpty()) {
+            handler.removeCallbacks(flushRunnable);
+        }
+    }
+}
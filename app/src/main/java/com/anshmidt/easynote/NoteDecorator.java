@@ -21,7 +21,7 @@ public class NoteDecorator {
 
     public void displayPriority(View view, Priority priority) {
         if (view instanceof TextView) {
-            PriorityInfo priorityInfo = new PriorityInfo(context);
+            PriorityInfo priorityInfo = PriorityInfo.getInstance(context);
             TextView textview = (TextView) view;
 
             if (priority.equals(priorityInfo.IMPORTANT)) {
@@ -0,0 +1,97 @@
+package com.anshmidt.easynote;
+
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.util.List;
+
+/**
+ * Position of every displayed note by its id, and number of displayed notes by priority, for NotesAdapter.
+ * It's kept up to date as rows are added, removed or moved: counts are adjusted and only positions
+ * after the changed place are shifted, instead of rebuilding the whole index.
+ * Each note's priority is remembered as it was counted, since Note.priority may be changed in place.
+ */
+
+public class NotePositionIndex {
+
+    private static class Entry {
+        int position;
+        int priorityId;
+
+        Entry(int position, int priorityId) {
+            this.position = position;
+            this.priorityId = priorityId;
+        }
+    }
+
+    private final SparseArray<Entry> entriesById = new SparseArray<>();
+    private final SparseIntArray countsByPriorityId = new SparseIntArray();
+
+    public void rebuild(List<Note> notes) {
+        entriesById.clear();
+        countsByPriorityId.clear();
+        onInserted(notes, 0, notes.size());
+    }
+
+    public int getPosition(int noteId) {  //-1 if the note isn't displayed
+        Entry entry = entriesById.get(noteId);
+        return (entry == null) ? -1 : entry.position;
+    }
+
+    public int getCount(int priorityId) {
+        return countsByPriorityId.get(priorityId);
+    }
+
+    /**
+     * Notes are already inserted, count of them starting at position.
+     */
+    public void onInserted(List<Note> notes, int position, int count) {
+        for (int i = position; i < position + count; i++) {
+            Note note = notes.get(i);
+            entriesById.put(note.id, new Entry(i, note.priority.id));
+            addToCount(note.priority.id, 1);
+        }
+        updatePositions(notes, position + count, notes.size() - 1);
+    }
+
+    /**
+     * Notes are already removed; they were at position.
+     */
+    public void onRemoved(List<Note> notes, int position, List<Note> removedNotes) {
+        for (Note removedNote : removedNotes) {
+            Entry entry = entriesById.get(removedNote.id);
+            if (entry != null) {
+                entriesById.remove(removedNote.id);
+                addToCount(entry.priorityId, -1);
+            }
+        }
+        updatePositions(notes, position, notes.size() - 1);
+    }
+
+    /**
+     * A note is already moved, e.g. after its priority has changed; only rows between the two places have shifted.
+     */
+    public void onMoved(List<Note> notes, int fromPosition, int toPosition) {
+        Note movedNote = notes.get(toPosition);
+        Entry entry = entriesById.get(movedNote.id);
+        if ((entry != null) && (entry.priorityId != movedNote.priority.id)) {
+            addToCount(entry.priorityId, -1);
+            addToCount(movedNote.priority.id, 1);
+            entry.priorityId = movedNote.priority.id;
+        }
+        updatePositions(notes, Math.min(fromPosition, toPosition), Math.max(fromPosition, toPosition));
+    }
+
+    private void updatePositions(List<Note> notes, int fromPosition, int toPosition) {
+        for (int i = fromPosition; i <= toPosition; i++) {
+            Entry entry = entriesById.get(notes.get(i).id);
+            if (entry != null) {
+                entry.position = i;
+            }
+        }
+    }
+
+    private void addToCount(int priorityId, int delta) {
+        countsByPriorityId.put(priorityId, getCount(priorityId) + delta);
+    }
+}
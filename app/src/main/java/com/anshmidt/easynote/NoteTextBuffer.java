@@ -0,0 +1,137 @@
+package com.anshmidt.easynote;
+
+import java.util.ArrayList;
+
+/**
+ * Text of a note being edited, kept as a piece table: the text it started with, an append-only buffer
+ * of typed characters, and a list of pieces pointing into them. An edit costs as much as the typed text,
+ * not as the whole note; the String is built only when the note is saved.
+ */
+
+public class NoteTextBuffer {
+
+    private static class Piece {
+        final boolean inAdded;  // otherwise in original
+        int start;
+        int length;
+
+        Piece(boolean inAdded, int start, int length) {
+            this.inAdded = inAdded;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    private final String original;
+    private final StringBuilder added = new StringBuilder();
+    private final ArrayList<Piece> pieces = new ArrayList<>();
+    private int length;
+
+    public NoteTextBuffer(String text) {
+        original = text == null ? "" : text;
+        length = original.length();
+        if (length > 0) {
+            pieces.add(new Piece(false, 0, length));
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Applies a change reported by TextWatcher.onTextChanged: 'before' chars at 'start' were replaced
+     * with 'count' chars, which are now in 'text' at 'start'. Returns false if the change doesn't fit this buffer,
+     * i.e. the buffer is out of sync with the text and has to be recreated.
+     */
+    public boolean applyChange(CharSequence text, int start, int before, int count) {
+        if ((start < 0) || (before < 0) || (count < 0) || (start + before > length) || (start + count > text.length())) {
+            return false;
+        }
+        if (before > 0) {
+            int from = splitAt(start);
+            int to = splitAt(start + before);
+            pieces.subList(from, to).clear();
+            length -= before;
+        }
+        if (count > 0) {
+            int index = splitAt(start);
+            Piece previous = index > 0 ? pieces.get(index - 1) : null;
+            if ((previous != null) && previous.inAdded && (previous.start + previous.length == added.length())) {
+                previous.length += count;  // typing goes on at the same place
+            } else {
+                pieces.add(index, new Piece(true, added.length(), count));
+            }
+            added.append(text, start, start + count);
+            length += count;
+        }
+        return true;
+    }
+
+    /**
+     * Makes a piece start at the position, splitting the piece which contains it. Returns index of that piece.
+     */
+    private int splitAt(int position) {
+        int pieceStart = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            if (position == pieceStart) {
+                return i;
+            }
+            if (position < pieceStart + piece.length) {
+                int headLength = position - pieceStart;
+                pieces.add(i + 1, new Piece(piece.inAdded, piece.start + headLength, piece.length - headLength));
+                piece.length = headLength;
+                return i + 1;
+            }
+            pieceStart += piece.length;
+        }
+        return pieces.size();
+    }
+
+    public boolean isBasedOn(String text) {  //the same instance it was created from
+        return original == ((text == null) ? "" : text);
+    }
+
+    /**
+     * Position of the first char that differs from the original text; length() if the text only lost its end or is the same.
+     */
+    public int getChangeStart() {
+        int position = 0;
+        for (Piece piece : pieces) {
+            if (piece.inAdded || (piece.start != position)) {
+                return position;
+            }
+            position += piece.length;
+        }
+        return position;
+    }
+
+    /**
+     * Number of chars at the end which are the same as at the end of the original text.
+     */
+    public int getUnchangedSuffixLength() {
+        int suffixLength = 0;
+        for (int i = pieces.size() - 1; i >= 0; i--) {
+            Piece piece = pieces.get(i);
+            if (piece.inAdded || (original.length() - (piece.start + piece.length) != suffixLength)) {
+                break;
+            }
+            suffixLength += piece.length;
+        }
+        return suffixLength;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length);
+        for (Piece piece : pieces) {
+            if (piece.inAdded) {
+                text.append(added, piece.start, piece.start + piece.length);
+            } else {
+                text.append(original, piece.start, piece.start + piece.length);
+            }
+        }
+        return text.toString();
+    }
+}
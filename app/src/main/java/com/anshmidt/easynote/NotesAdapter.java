@@ -6,11 +6,17 @@ package com.anshmidt.easynote;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.app.FragmentManager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.text.Editable;
+import android.text.TextUtils;
+import android.util.LruCache;
 import android.text.TextWatcher;
+import android.text.method.KeyListener;
 import android.util.Log;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
@@ -26,21 +32,41 @@ import com.anshmidt.easynote.activities.BaseActivity;
 import com.anshmidt.easynote.activities.EditNoteActivity;
 import com.anshmidt.easynote.activities.MainActivity;
 import com.anshmidt.easynote.activities.TrashActivity;
-import com.anshmidt.easynote.database.DatabaseHelper;
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
+import com.anshmidt.easynote.database.NotesSearchDao;
 import com.anshmidt.easynote.dialogs.BottomSheetFragment;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHolder> {
 
     private Context context;
     private View contentView;
-    private DatabaseHelper databaseHelper;
+    private AsyncDatabaseHelper asyncDatabaseHelper;
+    private AsyncDatabaseHelper.Request searchDbRequest;
+    private AsyncDatabaseHelper.Request fullTextRequest;
+    private int fullTextNoteId = -1;  // note whose body is being loaded
+    private String lastSearchRequest = "";  // the one whose results were displayed last
+    private ArrayList<Note> lastSearchResults;
+    private final LruCache<String, int[]> searchResultIdsCache = new LruCache<>(SEARCH_CACHE_SIZE);
     private NoteDecorator noteDecorator;
     private PriorityInfo priorityInfo;
+    private NoteAutosaver noteAutosaver;
     public ArrayList<Note> notesList;
+    private ArrayList<RowState> displayedRows;  // what rows show now, for diffing
+    private int notesUpdateGeneration = 0;
+    private int localChangesCount = 0;  // add() and remove() calls, they make a diff in progress outdated
+    // kept up to date by add(), remove() and moves; rebuilt on first lookup after notesList is replaced
+    private final NotePositionIndex positionIndex = new NotePositionIndex();
+    private boolean positionIndexStale = true;
+    private final NotesOrdering notesOrdering;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private int selectedNotePosition = -1;
     public int longPressedNotePosition = -1;
     private final String LOG_TAG = NotesAdapter.class.getSimpleName();
@@ -53,10 +79,43 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
 
     public final int TRASH_CONTEXT_MENU_ITEM_PUT_BACK_ID = 1;
 
+    private static final int SEARCH_CACHE_SIZE = 16;  // search requests
+
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "EasyNote-diff");
+        }
+    });
+
+    /**
+     * What a row displays, copied from the note. Notes are edited in place,
+     * so they can't be compared with themselves to find out what has changed.
+     */
+    private static class RowState {
+        final int noteId;
+        final String text;
+        final int priorityId;
+        final String listName;
+
+        RowState(Note note) {
+            noteId = note.id;
+            text = note.text;
+            priorityId = note.priority.id;
+            listName = note.list == null ? null : note.list.name;
+        }
+
+        boolean hasSameContent(RowState other) {
+            return (priorityId == other.priorityId) && TextUtils.equals(text, other.text)
+                    && TextUtils.equals(listName, other.listName);
+        }
+    }
+
     public class NoteViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnFocusChangeListener, View.OnCreateContextMenuListener {
         TextView noteTextView;
         TextView listNameTextView;
         EditText noteEditText;
+        KeyListener noteKeyListener;  // EditText's own one, removed while the note body isn't loaded
         ImageButton moreButton;
         InputMethodManager imm;
 
@@ -72,6 +131,7 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
             if (context instanceof EditNoteActivity) {
                 imm = (InputMethodManager) context.getSystemService(Context.INPUT_METHOD_SERVICE);
                 noteEditText = (EditText) itemView.findViewById(R.id.note_edittext);
+                noteKeyListener = noteEditText.getKeyListener();
 
                 moreButton.setOnClickListener(new View.OnClickListener() {
                     @Override
@@ -92,13 +152,14 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
                     public void onTextChanged(CharSequence s, int start, int before, int count) {
                         // it's also happens when activity starts
                         //I have to check if text has actually changed
-                        String newText = s.toString();
                         if (noteEditText.hasFocus()) {
                             Note selectedNote = notesList.get(selectedNotePosition);
-                            selectedNote.text = newText;
-                            notesList.get(selectedNotePosition).text = newText;
+                            if (!selectedNote.hasFullText()) {  //only the beginning is displayed, body is being loaded
+                                return;
+                            }
                             selectedNote.modificationTime = System.currentTimeMillis();
-                            databaseHelper.updateNote(selectedNote);
+                            //only the change is kept; note.text is updated and written to db when user stops typing
+                            noteAutosaver.onTextChanged(selectedNote, s, start, before, count);
                         }
                     }
 
@@ -152,6 +213,7 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
                     Log.i(LOG_TAG, "onFocusChange: selected item: position: " + selectedNotePosition + ", id in database: " + getNoteDbId(selectedNotePosition));
 
                     moreButton.setVisibility(View.VISIBLE);
+                    loadFullTextIfNeeded(getNote(selectedNotePosition));
 
                     if (noteEditText.getText().toString().equals("")) {
                         noteEditText.setHint(context.getString(R.string.new_note_hint));
@@ -160,6 +222,7 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
                 } else {
                     int height = noteEditText.getHeight();
                     Log.d(LOG_TAG, "height: " + height);
+                    noteAutosaver.flush();
                     if (noteEditText.getText().toString().equals("")) {
                         noteEditText.setHint("");
                     }
@@ -168,6 +231,16 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
             }
         }
 
+        void setEditable(boolean editable) {  //keeps the row focusable and selectable
+            KeyListener keyListener = editable ? noteKeyListener : null;
+            if (noteEditText.getKeyListener() != keyListener) {
+                noteEditText.setKeyListener(keyListener);
+                if (noteEditText.hasFocus()) {
+                    imm.restartInput(noteEditText);
+                }
+            }
+        }
+
         @Override
         public void onCreateContextMenu(ContextMenu menu, View v, ContextMenu.ContextMenuInfo menuInfo) {
             if (context instanceof MainActivity) {
@@ -184,9 +257,18 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
     public NotesAdapter(ArrayList<Note> notesList, Context context){
         this.notesList = notesList;
         this.context = context;
-        databaseHelper = DatabaseHelper.getInstance(this.context);
+        asyncDatabaseHelper = AsyncDatabaseHelper.getInstance(this.context);
+        noteAutosaver = new NoteAutosaver(NotesRepository.getInstance(this.context));
         noteDecorator = new NoteDecorator(context);
-        priorityInfo = new PriorityInfo(context);
+        priorityInfo = PriorityInfo.getInstance(context);
+        displayedRows = toRowStates(notesList);
+        notesOrdering = NotesOrdering.of(context instanceof TrashActivity);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return notesList.get(position).id;
     }
 
     @Override
@@ -204,10 +286,17 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
 
         if (context instanceof EditNoteActivity) {
             noteView = noteViewHolder.noteEditText;
+            noteAutosaver.applyTypedText(notesList.get(i));  //row may be rebound while its note is being edited
+            noteViewHolder.setEditable(notesList.get(i).hasFullText());  //until the body is loaded on focus
         } else {
             noteView = noteViewHolder.noteTextView;
         }
-        noteView.setText(notesList.get(i).text);
+        Note note = notesList.get(i);
+        if ((context instanceof EditNoteActivity) || note.hasFullText()) {
+            noteView.setText(note.text);
+        } else {
+            noteView.setText(context.getString(R.string.note_preview, note.text));  //lists read only a preview
+        }
 
         listNameTextView = noteViewHolder.listNameTextView;
         setListNamesVisibility(listNameTextView);
@@ -250,6 +339,33 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         }
     }
 
+    /**
+     * Long notes are read from db only partly. The body is assembled when the note gets focus,
+     * editing is disabled until then.
+     */
+    private void loadFullTextIfNeeded(final Note note) {
+        if (note.hasFullText() || (fullTextNoteId == note.id)) {
+            return;
+        }
+        if (fullTextRequest != null) {
+            fullTextRequest.cancel();
+        }
+        fullTextNoteId = note.id;
+        fullTextRequest = asyncDatabaseHelper.getFullText(note, new AsyncDatabaseHelper.Callback<String>() {
+            @Override
+            public void onResult(String fullText) {
+                fullTextNoteId = -1;
+                fullTextRequest = null;
+                note.setLoadedText(fullText);
+                int position = getPosition(note);
+                if (position != -1) {
+                    displayedRows.set(position, new RowState(note));
+                    notifyItemChanged(position);
+                }
+            }
+        });
+    }
+
     public void setContentView(View contentView) {
         this.contentView = contentView;
     }
@@ -268,20 +384,176 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
     public void onItemClick(View view, int position) {
         Log.i(LOG_TAG, "onItemClick: You clicked item with position: " + position + ", id in database: " + getNoteDbId(position));
         if (context instanceof MainActivity){
-            ((MainActivity) context).openEditNoteActivity(position);
+            ((MainActivity) context).openEditNoteActivity(getNote(position).id);
         }
     }
 
     public void add(int position, Note item) {
         notesList.add(position, item);
+        displayedRows.add(position, new RowState(item));
+        localChangesCount++;
+        if (!positionIndexStale) {
+            positionIndex.onInserted(notesList, position, 1);
+        }
+        invalidateSearchCache();
         notifyItemInserted(position);
     }
 
     public void remove(int position) {
-        notesList.remove(position);
+        Note removedNote = notesList.remove(position);
+        displayedRows.remove(position);
+        localChangesCount++;
+        if (!positionIndexStale) {
+            positionIndex.onRemoved(notesList, position, Collections.singletonList(removedNote));
+        }
+        invalidateSearchCache();
         notifyItemRemoved(position);
     }
 
+    public void addNotes(int position, List<Note> notes) {  //for pages loaded by NotesPager
+        notesList.addAll(position, notes);
+        displayedRows.addAll(position, toRowStates(notes));
+        localChangesCount++;
+        if (!positionIndexStale) {
+            positionIndex.onInserted(notesList, position, notes.size());
+        }
+        notifyItemRangeInserted(position, notes.size());
+    }
+
+    public void removeNotes(int position, int count) {  //for pages dropped by NotesPager
+        List<Note> removedNotes = new ArrayList<>(notesList.subList(position, position + count));
+        notesList.subList(position, position + count).clear();
+        displayedRows.subList(position, position + count).clear();
+        localChangesCount++;
+        if (!positionIndexStale) {
+            positionIndex.onRemoved(notesList, position, removedNotes);
+        }
+        notifyItemRangeRemoved(position, count);
+    }
+
+    public void flushPendingEdits() {
+        noteAutosaver.flush();
+    }
+
+    public void setNotes(ArrayList<Note> notes) {
+        setNotes(notes, null);
+    }
+
+    /**
+     * Displays the notes with item animations instead of rebinding everything. Difference with what is
+     * displayed now is calculated in background; notesList is replaced only when it's ready,
+     * then onUpdated is called. If setNotes is called again meanwhile, this update is dropped.
+     */
+    public void setNotes(final ArrayList<Note> notes, final Runnable onUpdated) {
+        noteAutosaver.flush();  //so that rows are compared with typed text
+        final int generation = ++notesUpdateGeneration;
+        final int localChangesCountAtStart = localChangesCount;
+        final ArrayList<RowState> oldRows = new ArrayList<>(displayedRows);
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<RowState> newRows = toRowStates(notes);
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new RowsDiffCallback(oldRows, newRows));
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != notesUpdateGeneration) {
+                            return;  // newer notes are on the way
+                        }
+                        if (localChangesCountAtStart != localChangesCount) {
+                            setNotes(notes, onUpdated);  // rows were added or removed meanwhile, diff is outdated
+                            return;
+                        }
+                        applyNotes(notes, newRows, diffResult);
+                        if (onUpdated != null) {
+                            onUpdated.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void applyNotes(ArrayList<Note> notes, ArrayList<RowState> newRows, DiffUtil.DiffResult diffResult) {
+        int selectedNoteId = -1;
+        if ((selectedNotePosition >= 0) && (selectedNotePosition < notesList.size())) {
+            selectedNoteId = notesList.get(selectedNotePosition).id;
+        }
+        notesList = notes;
+        displayedRows = newRows;
+        positionIndexStale = true;
+        if (selectedNoteId != -1) {
+            selectedNotePosition = getPositionById(selectedNoteId);  // selected note could have been moved
+        }
+        diffResult.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Puts a displayed note to its place after its priority has changed: a binary search and one move
+     * instead of sorting all notes. Returns its new position, -1 if the note isn't displayed.
+     */
+    public int moveNoteToItsPlace(Note note) {
+        int position = getPosition(note);
+        if (position == -1) {
+            return -1;
+        }
+        int selectedNoteId = ((selectedNotePosition >= 0) && (selectedNotePosition < notesList.size()))
+                ? notesList.get(selectedNotePosition).id : -1;
+        int newPosition = notesOrdering.reposition(notesList, position);
+        displayedRows.remove(position);
+        displayedRows.add(newPosition, new RowState(note));
+        localChangesCount++;
+        if (!positionIndexStale) {
+            positionIndex.onMoved(notesList, position, newPosition);
+        }
+        if (selectedNoteId != -1) {
+            selectedNotePosition = getPositionById(selectedNoteId);
+        }
+        if (newPosition != position) {
+            notifyItemMoved(position, newPosition);
+        }
+        notifyItemChanged(newPosition);  // priority color
+        return newPosition;
+    }
+
+    private static ArrayList<RowState> toRowStates(List<Note> notes) {
+        ArrayList<RowState> rows = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            rows.add(new RowState(note));
+        }
+        return rows;
+    }
+
+    private static class RowsDiffCallback extends DiffUtil.Callback {
+        private final List<RowState> oldRows;
+        private final List<RowState> newRows;
+
+        RowsDiffCallback(List<RowState> oldRows, List<RowState> newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldRows.get(oldItemPosition).noteId == newRows.get(newItemPosition).noteId;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldRows.get(oldItemPosition).hasSameContent(newRows.get(newItemPosition));
+        }
+    }
+
     public Note getNote(int position) {
         return notesList.get(position);
     }
@@ -301,31 +573,108 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         return noteDbId;
     }
 
-    public int getPosition(Note note) {
-        return notesList.indexOf(note);
+    public int getPosition(Note note) {  //-1 if this instance isn't displayed, e.g. it was replaced by a reloaded one
+        int position = getPositionById(note.id);
+        return ((position != -1) && (notesList.get(position) == note)) ? position : -1;
     }
 
     public int getPositionById(int noteId) {
-        for (Note noteFromList : notesList) {
-            if (noteFromList.id == noteId) {
-                return getPosition(noteFromList);
-            }
+        updatePositionIndexIfNeeded();
+        return positionIndex.getPosition(noteId);
+    }
+
+    private void updatePositionIndexIfNeeded() {
+        if (positionIndexStale) {
+            positionIndex.rebuild(notesList);
+            positionIndexStale = false;
         }
-        return -1;
     }
 
-    public void filter(String searchRequest, boolean isSearchViewIconified) {  //isSearchViewIconified = is it collapsed
+    public int getNotesCount(Priority priority) {
+        updatePositionIndexIfNeeded();
+        return positionIndex.getCount(priority.id);
+    }
+
+    /**
+     * Displays notes found by the search request. Results of recent requests are remembered as note ids;
+     * if the request only extends the previous one, previous results are filtered in memory instead of querying db.
+     */
+    public void filter(final String searchRequest, boolean isSearchViewIconified) {  //isSearchViewIconified = is it collapsed
         if (! isSearchViewIconified) {
-            notesList.clear();
-            if (!searchRequest.isEmpty()) {
-                if (context instanceof TrashActivity) {
-                    notesList = databaseHelper.getSearchResultsFromTrash(searchRequest);
-                } else {
-                    notesList = databaseHelper.getSearchResultsFromAllLists(searchRequest);
+            if (noteAutosaver.hasPendingEdits()) {
+                invalidateSearchCache();  //edited notes may match other requests now
+            }
+            noteAutosaver.flush();
+            if (searchDbRequest != null) {
+                searchDbRequest.cancel();  //results of previous search request are not needed anymore
+            }
+            if (searchRequest.isEmpty()) {
+                lastSearchRequest = "";
+                lastSearchResults = null;
+                setNotes(new ArrayList<Note>());
+                return;
+            }
+
+            AsyncDatabaseHelper.Callback<ArrayList<Note>> onSearchResults = new AsyncDatabaseHelper.Callback<ArrayList<Note>>() {
+                @Override
+                public void onResult(ArrayList<Note> searchResults) {
+                    onSearchResults(searchRequest, searchResults);
                 }
+            };
+            boolean fromTrash = context instanceof TrashActivity;
+            int[] cachedResultIds = searchResultIdsCache.get(searchRequest);
+            if (cachedResultIds != null) {
+                searchDbRequest = asyncDatabaseHelper.getNotesByIds(cachedResultIds, fromTrash, onSearchResults);
+            } else if ((lastSearchResults != null) && searchRequest.startsWith(lastSearchRequest)
+                    && haveFullTexts(lastSearchResults)) {  //a preview may not contain the match
+                final ArrayList<Note> previousResults = new ArrayList<>(lastSearchResults);
+                searchDbRequest = asyncDatabaseHelper.executeRead(new Callable<ArrayList<Note>>() {
+                    @Override
+                    public ArrayList<Note> call() throws Exception {
+                        return narrowSearchResults(previousResults, searchRequest);
+                    }
+                }, onSearchResults);
+            } else {
+                searchDbRequest = asyncDatabaseHelper.getSearchResults(searchRequest, fromTrash, onSearchResults);
+            }
+        }
+    }
+
+    private void onSearchResults(String searchRequest, ArrayList<Note> searchResults) {
+        lastSearchRequest = searchRequest;
+        lastSearchResults = searchResults;
+        int[] resultIds = new int[searchResults.size()];
+        for (int i = 0; i < resultIds.length; i++) {
+            resultIds[i] = searchResults.get(i).id;
+        }
+        searchResultIdsCache.put(searchRequest, resultIds);
+        setNotes(searchResults);
+    }
+
+    private static ArrayList<Note> narrowSearchResults(ArrayList<Note> previousResults, String searchRequest) {
+        // every note matching the longer request matches the shorter one too, so nothing is missed
+        ArrayList<Note> results = new ArrayList<>();
+        for (Note note : previousResults) {
+            if (NotesSearchDao.matches(note.text, searchRequest)) {
+                results.add(note);
             }
-            notifyDataSetChanged();
         }
+        return results;
+    }
+
+    private static boolean haveFullTexts(List<Note> notes) {
+        for (Note note : notes) {
+            if (!note.hasFullText()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void invalidateSearchCache() {
+        searchResultIdsCache.evictAll();
+        lastSearchRequest = "";
+        lastSearchResults = null;
     }
 
     public void filterForEmptySearchRequest(boolean isSearchViewIconified) {
@@ -339,16 +688,13 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
 //    }
 
     public String getNoteText(int position) {
+        noteAutosaver.applyTypedText(notesList.get(position));
         return notesList.get(position).text;
     }
 
     public Note getNoteById(int noteId) {
-        for (Note note : notesList) {
-            if (noteId == note.id) {
-                return note;
-            }
-        }
-        return null;
+        int position = getPositionById(noteId);
+        return (position != -1) ? notesList.get(position) : null;
     }
 
     public String getSelectedItemText() {
@@ -396,40 +742,12 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         menu.add(0, TRASH_CONTEXT_MENU_ITEM_PUT_BACK_ID, 0, title);
     }
 
-    public int whereToAddNewNote() {
-        Log.d(LOG_TAG, "whereToAddNewNote: " + getImportantNotesCount());
-        return getImportantNotesCount();
-    }
-
-    private int getImportantNotesCount() {
-        int count = 0;
-        for (Note note : notesList) {
-            if (note.priority.equals(priorityInfo.IMPORTANT)) {
-                count++;
-            }
-        }
-        return count;
+    public int whereToAddNewNote() {  //right after important notes
+        return getNotesCount(priorityInfo.IMPORTANT);
     }
 
     public void sortNotes(ArrayList<Note> notesList) {
-        Collections.sort(notesList, new Comparator<Note>() {
-
-            public int compare(Note note1, Note note2) {
-                Integer priorityId1 = note1.priority.id;
-                Integer priorityId2 = note2.priority.id;
-                Long modTime1 = note1.modificationTime;
-                Long modTime2 = note2.modificationTime;
-
-                if (context instanceof TrashActivity) {
-                    return modTime2.compareTo(modTime1);
-                } else {
-                    if ( !(priorityId1.equals(priorityId2))) {
-                        return priorityId1.compareTo(priorityId2);
-                    }
-                    return modTime2.compareTo(modTime1);
-                }
-            }
-        });
+        Collections.sort(notesList, notesOrdering);
     }
 
     public void setListNamesVisibility(TextView listNameTextView) {
@@ -0,0 +1,73 @@
+package com.anshmidt.easynote;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Order of displayed notes, the same as in db (see NotesDao.LIST_ORDER and TRASH_ORDER).
+ * Compares primitive fields only, so sorting doesn't allocate. For a sorted list, a changed note
+ * is put to its place by binary search instead of sorting the whole list again.
+ */
+
+public abstract class NotesOrdering implements Comparator<Note> {
+
+    // priority, newest first, then id
+    public static final NotesOrdering LIST = new NotesOrdering() {
+        @Override
+        public int compare(Note note1, Note note2) {
+            if (note1.priority.id != note2.priority.id) {
+                return (note1.priority.id < note2.priority.id) ? -1 : 1;
+            }
+            return compareByTime(note1, note2);
+        }
+    };
+
+    // newest first, then id
+    public static final NotesOrdering TRASH = new NotesOrdering() {
+        @Override
+        public int compare(Note note1, Note note2) {
+            return compareByTime(note1, note2);
+        }
+    };
+
+    public static NotesOrdering of(boolean trash) {
+        return trash ? TRASH : LIST;
+    }
+
+    private static int compareByTime(Note note1, Note note2) {
+        if (note1.modificationTime != note2.modificationTime) {
+            return (note1.modificationTime > note2.modificationTime) ? -1 : 1;
+        }
+        if (note1.id != note2.id) {
+            return (note1.id < note2.id) ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Position the note should be inserted at, so that sorted notes stay sorted.
+     */
+    public int getInsertPosition(List<Note> sortedNotes, Note note) {
+        int low = 0;
+        int high = sortedNotes.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(sortedNotes.get(middle), note) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Moves a changed note to its place among the others, which have to be sorted. Returns its new position.
+     */
+    public int reposition(List<Note> notes, int position) {
+        Note note = notes.remove(position);
+        int newPosition = getInsertPosition(notes, note);
+        notes.add(newPosition, note);
+        return newPosition;
+    }
+}
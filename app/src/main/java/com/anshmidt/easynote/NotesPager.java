@@ -0,0 +1,244 @@
+package com.anshmidt.easynote;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
+import com.anshmidt.easynote.database.NoteKey;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Loads notes of a list or trash into NotesAdapter page by page, as the user scrolls.
+ * Adapter keeps a window of at most maxResidentPages pages: pages far from the screen are dropped
+ * and read again by key when the user scrolls back. Resident notes are always a continuous range of db order.
+ */
+
+public class NotesPager {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_MAX_RESIDENT_PAGES = 6;
+
+    private final AsyncDatabaseHelper asyncDatabaseHelper;
+    private final NotesAdapter notesAdapter;
+    private final LinearLayoutManager layoutManager;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int maxResidentPages = DEFAULT_MAX_RESIDENT_PAGES;
+
+    private boolean active = false;  // false while something else (e.g. search results) is displayed
+    private NotesList list;  // null for trash
+    private boolean reachedStart;
+    private boolean reachedEnd;
+    private AsyncDatabaseHelper.Request pageRequest;
+    private boolean refreshPending = false;  // notes changed in db while a page was being read
+    private boolean refreshing = false;  // refreshed notes are read but not displayed yet, so rows mustn't be added or dropped
+    private final String LOG_TAG = NotesPager.class.getSimpleName();
+
+    public NotesPager(AsyncDatabaseHelper asyncDatabaseHelper, NotesAdapter notesAdapter, LinearLayoutManager layoutManager) {
+        this.asyncDatabaseHelper = asyncDatabaseHelper;
+        this.notesAdapter = notesAdapter;
+        this.layoutManager = layoutManager;
+    }
+
+    public void setPageSize(int pageSize, int maxResidentPages) {
+        this.pageSize = pageSize;
+        this.maxResidentPages = maxResidentPages;
+    }
+
+    public void attachTo(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                loadPagesIfNeeded();
+            }
+        });
+    }
+
+    public void startList(NotesList list, Runnable onFirstPageDisplayed) {
+        start(list, onFirstPageDisplayed);
+    }
+
+    public void startTrash(Runnable onFirstPageDisplayed) {
+        start(null, onFirstPageDisplayed);
+    }
+
+    private void start(NotesList list, final Runnable onFirstPageDisplayed) {
+        stop();
+        this.list = list;
+        pageRequest = asyncDatabaseHelper.getNotesPage(list, null, false, pageSize, new AsyncDatabaseHelper.Callback<ArrayList<Note>>() {
+            @Override
+            public void onResult(ArrayList<Note> firstPage) {
+                pageRequest = null;
+                reachedStart = true;
+                reachedEnd = firstPage.size() < pageSize;
+                notesAdapter.setNotes(firstPage, new Runnable() {
+                    @Override
+                    public void run() {
+                        active = true;
+                        if (onFirstPageDisplayed != null) {
+                            onFirstPageDisplayed.run();
+                        }
+                        loadPagesIfNeeded();
+                    }
+                });
+            }
+        });
+    }
+
+    public void stop() {  // adapter is going to display something else
+        active = false;
+        refreshPending = false;
+        refreshing = false;
+        if (pageRequest != null) {
+            pageRequest.cancel();
+            pageRequest = null;
+        }
+    }
+
+    /**
+     * Called after a note has got a new place, e.g. its priority has changed. If it has ended up at the edge
+     * of the window, its real place may be on a page that is not loaded, so it's left to be read with that page.
+     * Returns false if the note was removed from adapter.
+     */
+    public boolean onNotePositionChanged(Note note) {
+        if (!active) {
+            return true;
+        }
+        int position = notesAdapter.getPosition(note);
+        if (((position == 0) && !reachedStart) || ((position == notesAdapter.getItemCount() - 1) && !reachedEnd)) {
+            notesAdapter.remove(position);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the resident notes again from the same place, e.g. when notes have been changed in db.
+     * Adapter updates only the rows that differ, so the scroll position is kept.
+     */
+    public void refresh() {
+        if ((pageRequest != null) || refreshing || !active) {
+            refreshPending = true;  // what is being read may be outdated too; start() drops it if something else is displayed
+            return;
+        }
+        int itemCount = notesAdapter.getItemCount();
+        final NoteKey from = (reachedStart || (itemCount == 0)) ? null : NoteKey.justBefore(notesAdapter.getNote(0));
+        final int limit = Math.max(itemCount, pageSize);
+        pageRequest = asyncDatabaseHelper.getNotesPage(list, from, false, limit, new AsyncDatabaseHelper.Callback<ArrayList<Note>>() {
+            @Override
+            public void onResult(final ArrayList<Note> notes) {
+                pageRequest = null;
+                refreshing = true;
+                notesAdapter.setNotes(notes, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!refreshing) {  // stopped meanwhile
+                            return;
+                        }
+                        refreshing = false;
+                        if (from == null) {
+                            reachedStart = true;
+                        }
+                        reachedEnd = notes.size() < limit;
+                        loadPagesIfNeeded();
+                    }
+                });
+            }
+        });
+    }
+
+    private void loadPagesIfNeeded() {
+        if (!active || (pageRequest != null) || refreshing) {
+            return;
+        }
+        if (refreshPending) {
+            refreshPending = false;
+            refresh();
+            return;
+        }
+        int prefetchDistance = pageSize / 2;
+        int itemCount = notesAdapter.getItemCount();
+        if (itemCount == 0) {
+            if (!reachedStart || !reachedEnd) {
+                loadNextPage();  // from the beginning
+            }
+        } else if (!reachedEnd && (layoutManager.findLastVisibleItemPosition() >= itemCount - 1 - prefetchDistance)) {
+            loadNextPage();
+        } else if (!reachedStart && (layoutManager.findFirstVisibleItemPosition() <= prefetchDistance)) {
+            loadPreviousPage();
+        }
+    }
+
+    private void loadNextPage() {
+        int itemCount = notesAdapter.getItemCount();
+        NoteKey after = null;
+        if (itemCount == 0) {
+            reachedStart = true;  // nothing is left in the window, so start from the beginning
+        } else {
+            after = NoteKey.of(notesAdapter.getNote(itemCount - 1));
+        }
+        pageRequest = asyncDatabaseHelper.getNotesPage(list, after, false, pageSize, new AsyncDatabaseHelper.Callback<ArrayList<Note>>() {
+            @Override
+            public void onResult(ArrayList<Note> page) {
+                pageRequest = null;
+                reachedEnd = page.size() < pageSize;
+                notesAdapter.addNotes(notesAdapter.getItemCount(), withoutResidentNotes(page));
+                dropPagesAtStart();
+                loadPagesIfNeeded();
+            }
+        });
+    }
+
+    private void loadPreviousPage() {
+        NoteKey before = NoteKey.of(notesAdapter.getNote(0));
+        pageRequest = asyncDatabaseHelper.getNotesPage(list, before, true, pageSize, new AsyncDatabaseHelper.Callback<ArrayList<Note>>() {
+            @Override
+            public void onResult(ArrayList<Note> page) {
+                pageRequest = null;
+                reachedStart = page.size() < pageSize;
+                notesAdapter.addNotes(0, withoutResidentNotes(page));
+                dropPagesAtEnd();
+                loadPagesIfNeeded();
+            }
+        });
+    }
+
+    private ArrayList<Note> withoutResidentNotes(ArrayList<Note> page) {  // e.g. a note added locally is already there
+        HashSet<Integer> residentIds = new HashSet<>();
+        for (Note note : notesAdapter.notesList) {
+            residentIds.add(note.id);
+        }
+        ArrayList<Note> newNotes = new ArrayList<>(page.size());
+        for (Note note : page) {
+            if (!residentIds.contains(note.id)) {
+                newNotes.add(note);
+            }
+        }
+        return newNotes;
+    }
+
+    private void dropPagesAtStart() {
+        int excess = notesAdapter.getItemCount() - pageSize * maxResidentPages;
+        int notNeeded = layoutManager.findFirstVisibleItemPosition() - pageSize;  // keep a page above the screen
+        int count = Math.min(excess, notNeeded);
+        if (count > 0) {
+            notesAdapter.removeNotes(0, count);
+            reachedStart = false;
+            Log.d(LOG_TAG, "Dropped " + count + " notes at start");
+        }
+    }
+
+    private void dropPagesAtEnd() {
+        int itemCount = notesAdapter.getItemCount();
+        int excess = itemCount - pageSize * maxResidentPages;
+        int notNeeded = itemCount - 1 - layoutManager.findLastVisibleItemPosition() - pageSize;  // keep a page below the screen
+        int count = Math.min(excess, notNeeded);
+        if (count > 0) {
+            notesAdapter.removeNotes(itemCount - count, count);
+            reachedEnd = false;
+            Log.d(LOG_TAG, "Dropped " + count + " notes at end");
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.anshmidt.easynote;
+
+import android.content.Context;
+
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * App-wide notes of lists recently opened in full, e.g. by EditNoteActivity, so activities share them instead of reading db again.
+ * Lists that MainActivity reads page by page aren't kept here.
+ * Note changes have to go through it: they are applied to the loaded notes in place and written to db
+ * through AsyncDatabaseHelper, which reports them to its InvalidationTracker. Everything here runs on the main thread.
+ */
+
+public class NotesRepository {
+
+    private static final int ALL_LISTS = -1;
+    private static final int MAX_LOADED_LISTS = 4;
+
+    private static NotesRepository notesRepositoryInstance;
+    private final AsyncDatabaseHelper asyncDatabaseHelper;
+    private final LinkedHashMap<Integer, ArrayList<Note>> notesByListId =
+            new LinkedHashMap<Integer, ArrayList<Note>>(MAX_LOADED_LISTS, 0.75f, true) {  // least recently used goes first
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ArrayList<Note>> eldest) {
+            if (size() > MAX_LOADED_LISTS) {
+                unindexNotes(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    private final HashMap<Integer, Integer> listIdByNoteId = new HashMap<>();  // of loaded notes, to find them without scanning every list
+    private int changesCount = 0;  // lists read before a change are not kept
+
+    private NotesRepository(AsyncDatabaseHelper asyncDatabaseHelper) {
+        this.asyncDatabaseHelper = asyncDatabaseHelper;
+    }
+
+    public static synchronized NotesRepository getInstance(Context context) {
+        if (notesRepositoryInstance == null) {
+            notesRepositoryInstance = new NotesRepository(AsyncDatabaseHelper.getInstance(context));
+        }
+        return notesRepositoryInstance;
+    }
+
+    /**
+     * Gives a copy of the list of loaded notes; the notes themselves are shared. If the list is loaded,
+     * callback is called right away and null is returned, otherwise it's read from db.
+     */
+    public AsyncDatabaseHelper.Request getNotesOfList(NotesList list, AsyncDatabaseHelper.Callback<ArrayList<Note>> callback) {
+        ArrayList<Note> loadedNotes = notesByListId.get(list.id);
+        if (loadedNotes != null) {
+            callback.onResult(new ArrayList<>(loadedNotes));
+            return null;
+        }
+        return loadList(list, callback);
+    }
+
+    private AsyncDatabaseHelper.Request loadList(final NotesList list, final AsyncDatabaseHelper.Callback<ArrayList<Note>> callback) {
+        final int changesCountAtStart = changesCount;
+        final boolean writesPendingAtStart = asyncDatabaseHelper.hasPendingWrites();  //reads don't wait for them
+        return asyncDatabaseHelper.getAllNotesFromList(list, new AsyncDatabaseHelper.Callback<ArrayList<Note>>() {
+            @Override
+            public void onResult(ArrayList<Note> notes) {
+                if ((changesCount == changesCountAtStart) && !writesPendingAtStart) {
+                    ArrayList<Note> loadedNotes = notesByListId.get(list.id);
+                    if (loadedNotes == null) {
+                        putLoadedList(list.id, notes);
+                    } else {
+                        notes = loadedNotes;  //loaded by another request, its notes may be displayed already
+                    }
+                }
+                callback.onResult(new ArrayList<>(notes));
+            }
+        });
+    }
+
+    public void addNote(final Note note, final AsyncDatabaseHelper.Callback<Note> callback) {  //callback gets the note once note.id is known
+        asyncDatabaseHelper.addNote(note, new AsyncDatabaseHelper.Callback<Integer>() {
+            @Override
+            public void onResult(Integer noteId) {
+                onNoteChanged(note);
+                callback.onResult(note);
+            }
+        });
+    }
+
+    public void changePriority(Note note, Priority priority) {
+        note.setPriority(priority);
+        asyncDatabaseHelper.updateNote(note);
+        onNoteChanged(note);
+    }
+
+    public void moveNoteToTrash(Note note) {
+        note.setInTrash(true);
+        note.modificationTime = System.currentTimeMillis();
+        asyncDatabaseHelper.updateNote(note);
+        onNoteChanged(note);
+    }
+
+    public void moveNoteToAnotherList(Note note, NotesList destinationList) {
+        note.setList(destinationList);  // note.list may be shared with other notes, so it's not modified
+        note.modificationTime = System.currentTimeMillis();
+        asyncDatabaseHelper.updateNote(note);
+        onNoteChanged(note);
+    }
+
+    public void putNoteBackFromTrash(Note note) {  //its list is restored on db thread, so it's read again
+        note.setInTrash(false);
+        note.modificationTime = System.currentTimeMillis();
+        asyncDatabaseHelper.putNoteBackFromTrash(note);
+        onListsChanged(note.list.id);
+    }
+
+    public void updateNotes(Collection<Note> notes) {  //for autosave, notes are saved as they are
+        asyncDatabaseHelper.updateNotes(notes);
+        onNotesSaved(notes);
+    }
+
+    public void moveListToTrash(NotesList list) {
+        asyncDatabaseHelper.moveListToTrash(list);
+        onListsChanged(list.id);
+    }
+
+    public void emptyTrash(AsyncDatabaseHelper.Callback<Integer> callback) {  //trash isn't kept here
+        asyncDatabaseHelper.emptyTrash(callback);
+    }
+
+    public void deleteAllEmptyNotes() {
+        asyncDatabaseHelper.deleteAllEmptyNotes();
+        onListsChanged(ALL_LISTS);
+    }
+
+    private void onNotesSaved(Collection<Note> notes) {
+        for (Note note : notes) {
+            onNoteChanged(note);
+        }
+    }
+
+    /**
+     * Puts the note to its place among loaded notes. If another instance of the note is loaded,
+     * that instance takes the values, so notes displayed elsewhere are updated too.
+     */
+    private void onNoteChanged(Note note) {
+        changesCount++;
+        Note loadedNote = removeLoadedNote(note.id);
+        if (loadedNote == null) {
+            loadedNote = note;
+        } else if (loadedNote != note) {
+            loadedNote.copyFrom(note);
+        }
+        int listId = note.list.id;
+        ArrayList<Note> loadedNotes = notesByListId.get(listId);
+        if ((loadedNotes != null) && !note.inTrash) {
+            if (loadedNote.hasFullText()) {
+                loadedNotes.add(NotesOrdering.LIST.getInsertPosition(loadedNotes, loadedNote), loadedNote);
+                listIdByNoteId.put(loadedNote.id, listId);
+            } else {
+                removeLoadedList(listId);  //loaded lists hold full texts, so it's read again
+            }
+        }
+    }
+
+    private Note removeLoadedNote(int noteId) {  //only the list it was loaded in is scanned
+        Integer listId = listIdByNoteId.remove(noteId);
+        if (listId == null) {
+            return null;
+        }
+        ArrayList<Note> loadedNotes = notesByListId.get(listId);
+        for (int i = 0; i < loadedNotes.size(); i++) {
+            if (loadedNotes.get(i).id == noteId) {
+                return loadedNotes.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private void putLoadedList(int listId, ArrayList<Note> notes) {
+        notesByListId.put(listId, notes);
+        for (Note note : notes) {
+            listIdByNoteId.put(note.id, listId);
+        }
+    }
+
+    private void removeLoadedList(int listId) {
+        ArrayList<Note> loadedNotes = notesByListId.remove(listId);
+        if (loadedNotes != null) {
+            unindexNotes(loadedNotes);
+        }
+    }
+
+    private void unindexNotes(ArrayList<Note> notes) {
+        for (Note note : notes) {
+            listIdByNoteId.remove(note.id);
+        }
+    }
+
+    private void onListsChanged(int listId) {  //changed in db directly, so loaded notes are dropped
+        changesCount++;
+        if (listId == ALL_LISTS) {
+            notesByListId.clear();
+            listIdByNoteId.clear();
+        } else {
+            removeLoadedList(listId);
+        }
+    }
+}
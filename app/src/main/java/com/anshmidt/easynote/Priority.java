@@ -1,16 +1,12 @@
 package com.anshmidt.easynote;
 
-import android.content.Context;
-
-import java.util.ArrayList;
-
 /**
  * Created by Ilya Anshmidt on 10.02.2018.
  */
 
 public class Priority {
-    public String name;
-    public int id;
+    public final String name;
+    public final int id;
 
     public Priority(int id, String name) {
         this.name = name;
@@ -19,24 +15,19 @@ public class Priority {
 
     public Priority(int id) {
         this.id = id;
-    }
-
-    public Priority(String name, Context context) {
-        this.name = name;
-        this.id = new PriorityInfo(context).getIdByName(name);
+        this.name = null;
     }
 
     @Override
-    public boolean equals(Object obj) {
+    public boolean equals(Object obj) {  // names are localized, so only id matters
         if ( !(obj instanceof Priority)) {
             return false;
         }
-        Priority priority2 = (Priority) obj;
+        return ((Priority) obj).id == this.id;
+    }
 
-        if ((priority2.id == this.id) && (priority2.name.equals(this.name))) {
-            return true;
-        } else {
-            return false;
-        }
+    @Override
+    public int hashCode() {
+        return id;
     }
 }
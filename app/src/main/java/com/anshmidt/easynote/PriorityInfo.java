@@ -1,45 +1,115 @@
 package com.anshmidt.easynote;
 
 import android.content.Context;
+import android.support.v4.os.ConfigurationCompat;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Created by Ilya Anshmidt on 10.02.2018.
  */
 
+/**
+ * Process-wide registry of priorities. There is one Priority instance per id, so notes can share them
+ * and lookup by id is an array access. The instance is replaced only when the locale changes,
+ * because priority names are localized strings.
+ */
 public class PriorityInfo {
 
-    //private ArrayList<Priority> priorities = new ArrayList<>();
+    private static volatile PriorityInfo priorityInfoInstance;
 
-    public Priority IMPORTANT;
-    public Priority NORMAL;
-    public Priority MINOR;
+    // ids in priority table, also used in exported notes
+    public static final int IMPORTANT_ID = 1;
+    public static final int NORMAL_ID = 2;
+    public static final int MINOR_ID = 3;
 
-    public Priority DEFAULT;
+    public final Priority IMPORTANT;
+    public final Priority NORMAL;
+    public final Priority MINOR;
 
-    private ArrayList<Priority> priorities = new ArrayList<>();
+    public final Priority DEFAULT;
 
+    private final Priority[] prioritiesById;
+    private final List<Priority> priorities;
+    private final Locale locale;
 
 
-    public PriorityInfo(Context context) {
-        IMPORTANT = new Priority(1, context.getString(R.string.note_priority_important));
-        NORMAL = new Priority(2, context.getString(R.string.note_priority_normal));
-        MINOR = new Priority(3, context.getString(R.string.note_priority_minor));
+    private PriorityInfo(Context context) {
+        IMPORTANT = new Priority(IMPORTANT_ID, context.getString(R.string.note_priority_important));
+        NORMAL = new Priority(NORMAL_ID, context.getString(R.string.note_priority_normal));
+        MINOR = new Priority(MINOR_ID, context.getString(R.string.note_priority_minor));
         DEFAULT = NORMAL;
 
-        priorities.add(IMPORTANT);
-        priorities.add(NORMAL);
-        priorities.add(MINOR);
+        prioritiesById = new Priority[] {null, IMPORTANT, NORMAL, MINOR};
+        ArrayList<Priority> allPriorities = new ArrayList<>();
+        allPriorities.add(IMPORTANT);
+        allPriorities.add(NORMAL);
+        allPriorities.add(MINOR);
+        priorities = Collections.unmodifiableList(allPriorities);
+        locale = getLocale(context);
     }
 
-    public int getIdByName(String name) {
+    private static Locale getLocale(Context context) {
+        return ConfigurationCompat.getLocales(context.getResources().getConfiguration()).get(0);
+    }
+
+    public static PriorityInfo getInstance(Context context) {
+        PriorityInfo instance = priorityInfoInstance;
+        if (instance == null) {
+            synchronized (PriorityInfo.class) {
+                if (priorityInfoInstance == null) {
+                    priorityInfoInstance = new PriorityInfo(context.getApplicationContext());
+                }
+                instance = priorityInfoInstance;
+            }
+        }
+        return instance;
+    }
+
+    public static PriorityInfo getInstance() {  // for code without context; EasyNoteApplication creates the instance on start
+        PriorityInfo instance = priorityInfoInstance;
+        if (instance == null) {
+            throw new IllegalStateException("PriorityInfo is not initialized");
+        }
+        return instance;
+    }
+
+    public static synchronized void onConfigurationChanged(Context context) {
+        Locale newLocale = getLocale(context);
+        if ((priorityInfoInstance == null) || (!newLocale.equals(priorityInfoInstance.locale))) {
+            priorityInfoInstance = new PriorityInfo(context.getApplicationContext());
+        }
+    }
+
+    public Priority getPriority(int id) {  // null if there is no such priority
+        if ((id <= 0) || (id >= prioritiesById.length)) {
+            return null;
+        }
+        return prioritiesById[id];
+    }
+
+    public Priority getPriorityByName(String name) {
         for (Priority priority : priorities) {
             if (priority.name.equals(name)) {
-                return priority.id;
+                return priority;
             }
         }
-        return 0;
+        return null;
+    }
+
+    public int getIdByName(String name) {
+        Priority priority = getPriorityByName(name);
+        if (priority == null) {
+            return 0;
+        }
+        return priority.id;
+    }
+
+    public List<Priority> getAllPriorities() {  //most important first
+        return priorities;
     }
 
 
@@ -1,6 +1,8 @@
 package com.anshmidt.easynote;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.view.MenuItemCompat;
 import android.support.v7.widget.SearchView;
 import android.util.Log;
@@ -29,6 +31,16 @@ public class SearchController {
     public String searchRequest = "";
     private Menu menu;
     private NotesAdapter notesAdapter;
+    public static final long DEFAULT_SEARCH_DEBOUNCE_DELAY_MS = 300;
+    private long searchDebounceDelayMs = DEFAULT_SEARCH_DEBOUNCE_DELAY_MS;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            notesAdapter.filter(searchRequest, searchViewIconified);
+        }
+    };
 
 //    public SearchController() {
 //
@@ -43,6 +55,20 @@ public class SearchController {
         this.notesAdapter = notesAdapter;
     }
 
+    public void setSearchDebounceDelay(long searchDebounceDelayMs) {
+        this.searchDebounceDelayMs = searchDebounceDelayMs;
+    }
+
+    private void searchNow() {
+        handler.removeCallbacks(searchRunnable);
+        searchRunnable.run();
+    }
+
+    private void searchAfterTypingPause() {  //one query per pause instead of one per character
+        handler.removeCallbacks(searchRunnable);
+        handler.postDelayed(searchRunnable, searchDebounceDelayMs);
+    }
+
     public void setOnSearchViewExpandListener(OnSearchViewExpandListener onSearchViewExpandListener) {
         this.onSearchViewExpandListener = onSearchViewExpandListener;
     }
@@ -55,7 +81,7 @@ public class SearchController {
             @Override
             public boolean onQueryTextSubmit(String enteredSearchRequest) {
                 searchRequest = enteredSearchRequest;
-                notesAdapter.filter(enteredSearchRequest, searchViewIconified);
+                searchNow();
 //                setSearchRequest(searchRequest);
                 return false;
             }
@@ -63,7 +89,11 @@ public class SearchController {
             @Override
             public boolean onQueryTextChange(String enteredSearchRequest) {
                 searchRequest = enteredSearchRequest;
-                notesAdapter.filter(enteredSearchRequest, searchViewIconified);
+                if (enteredSearchRequest.isEmpty()) {
+                    searchNow();  //clearing results is cheap
+                } else {
+                    searchAfterTypingPause();
+                }
 //                if (! searchRequest.equals("")) {
 //                    notesAdapter.filter(searchRequest);
 //                }
@@ -79,6 +109,7 @@ public class SearchController {
             @Override
             public void onClick(View v) {
                 searchRequest = "";
+                handler.removeCallbacks(searchRunnable);
                 notesAdapter.filterForEmptySearchRequest(searchViewIconified);
                 searchField = (EditText) searchView.findViewById(R.id.search_src_text);
                 searchField.setText("");
@@ -97,7 +128,7 @@ public class SearchController {
 
     public void displayResultsIfNeeded() {
         if (searchRequest != null) {
-            notesAdapter.filter(searchRequest, searchViewIconified);
+            searchNow();
         }
     }
 
@@ -118,6 +149,8 @@ public class SearchController {
             @Override
             public boolean onMenuItemActionCollapse(MenuItem item) {
                 setMenuItemsVisibility(menu, item, true);
+                handler.removeCallbacks(searchRunnable);
+                notesAdapter.invalidateSearchCache();  //notes may be changed before next search
                 searchRequest = "";
                 searchViewIconified = true;
                 if (onSearchViewExpandListener != null) {
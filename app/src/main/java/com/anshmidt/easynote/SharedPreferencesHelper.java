@@ -7,7 +7,6 @@ import android.net.Uri;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
-import com.anshmidt.easynote.database.DatabaseHelper;
 
 import java.util.Calendar;
 import java.util.Map;
@@ -44,12 +43,6 @@ public class SharedPreferencesHelper {
         return preferences.getInt(KEY_LAST_OPENED_LIST, DEFAULT_LAST_OPENED_LIST);
     }
 
-    public String getLastOpenedListName() {
-        int lastOpenedListId = getLastOpenedListId();
-        DatabaseHelper databaseHelper = DatabaseHelper.getInstance(context);
-        return databaseHelper.getListNameById(lastOpenedListId);
-    }
-
 
 
     public void printAll() {
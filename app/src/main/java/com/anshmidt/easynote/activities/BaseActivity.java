@@ -5,8 +5,10 @@ import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
 import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
@@ -24,23 +26,42 @@ import android.widget.Toast;
 
 import com.anshmidt.easynote.EasyNoteApplication;
 import com.anshmidt.easynote.NotesAdapter;
-import com.anshmidt.easynote.NotesFormatter;
 import com.anshmidt.easynote.Priority;
 import com.anshmidt.easynote.PriorityInfo;
 import com.anshmidt.easynote.SearchController;
+import com.anshmidt.easynote.backup.SnapshotBackup;
 import com.anshmidt.easynote.dialogs.BottomSheetFragment;
 import com.anshmidt.easynote.dialogs.ConfirmationDialogFragment;
 import com.anshmidt.easynote.dialogs.MoveNoteDialogFragment;
+import com.anshmidt.easynote.dialogs.RestoreBackupDialogFragment;
 import com.anshmidt.easynote.list_names_spinner.ListNamesSpinnerController;
 import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.NotesPager;
+import com.anshmidt.easynote.NotesRepository;
 import com.anshmidt.easynote.dialogs.RenameListDialogFragment;
 import com.anshmidt.easynote.SharedPreferencesHelper;
-import com.anshmidt.easynote.database.DatabaseHelper;
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
+import com.anshmidt.easynote.database.InvalidationTracker;
+import com.anshmidt.easynote.database.ListsDao;
+import com.anshmidt.easynote.database.NotesDao;
+import com.anshmidt.easynote.database.PriorityDao;
+import com.anshmidt.easynote.export.NotesExporter;
 import com.anshmidt.easynote.Note;
 import com.anshmidt.easynote.R;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Ilya Anshmidt on 04.09.2017.
@@ -52,16 +73,31 @@ public abstract class BaseActivity extends AppCompatActivity
         ConfirmationDialogFragment.ConfirmationDialogListener,
         SearchController.OnSearchViewExpandListener,
         BottomSheetFragment.BottomSheetListener,
-        MoveNoteDialogFragment.MoveNoteDialogListener
+        MoveNoteDialogFragment.MoveNoteDialogListener,
+        RestoreBackupDialogFragment.RestoreBackupDialogListener
 {
 
     private final String LOG_TAG = BaseActivity.class.getSimpleName();
     protected RecyclerView rv;
     protected LinearLayoutManager llm;
     private NotesAdapter notesAdapter;
-    private DatabaseHelper databaseHelper;
+    private AsyncDatabaseHelper asyncDatabaseHelper;
+    private AsyncDatabaseHelper.Request notesLoadRequest;
+    protected NotesRepository notesRepository;
+    protected NotesPager notesPager;  //null if all notes of the list are loaded at once
+    private boolean resumed = false;
+    private boolean notesChangedWhileHidden = false;  //in another activity
+    private final InvalidationTracker.Observer notesObserver = new InvalidationTracker.Observer(
+            NotesDao.NOTES_TABLE_NAME, ListsDao.LISTS_TABLE_NAME, PriorityDao.PRIORITY_TABLE_NAME) {
+        @Override
+        public void onInvalidated(Set<String> changedTables) {
+            onNotesInvalidated();
+        }
+    };
     public final static String KEY_INTENT_SEARCH_REQUEST = "searchRequest";
-    public final static String KEY_INTENT_ITEM_POSITION = "itemPosition";
+    public final static String KEY_INTENT_NOTE_ID = "noteId";
+    private final static int REQUEST_CODE_EXPORT = 100;  // + format, see NotesExporter
+    private final static int REQUEST_CODE_IMPORT = 200;
 //    public SearchView searchView;
 //    private boolean searchViewIconified = true;
 //    ImageView clearSearchButton;
@@ -84,7 +120,9 @@ public abstract class BaseActivity extends AppCompatActivity
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         searchController = new SearchController();
-        databaseHelper = DatabaseHelper.getInstance(BaseActivity.this);
+        asyncDatabaseHelper = AsyncDatabaseHelper.getInstance(BaseActivity.this);
+        notesRepository = NotesRepository.getInstance(BaseActivity.this);
+        asyncDatabaseHelper.getInvalidationTracker().addObserver(notesObserver);
         sharPrefHelper = new SharedPreferencesHelper(BaseActivity.this);
         toolbar = (Toolbar) findViewById(R.id.toolbar_main);
         setSupportActionBar(toolbar);
@@ -94,7 +132,7 @@ public abstract class BaseActivity extends AppCompatActivity
         listNamesSpinner = (Spinner) findViewById(R.id.list_spinner);
 
         listNamesSpinnerController = new ListNamesSpinnerController(listNamesSpinner, BaseActivity.this);
-        listNamesSpinnerController.init(databaseHelper.getAllListNames());
+        listNamesSpinnerController.init();
         listNamesSpinnerController.setListSelectedListener(this);
 
         addNoteButton = (FloatingActionButton) findViewById(R.id.add_note_button);
@@ -218,14 +256,55 @@ public abstract class BaseActivity extends AppCompatActivity
 
     @Override
     public void onListSelected() {
-        NotesList currentList = listNamesSpinnerController.getCurrentList();
-        notesAdapter.notesList = databaseHelper.getAllNotesFromList(currentList);
-        notesAdapter.notifyDataSetChanged();
+        loadNotesOfCurrentList();
         if (!addNoteButton.isShown()) {
             addNoteButton.show();
         }
     }
 
+    protected void loadNotesOfCurrentList() {
+        notesAdapter.flushPendingEdits();
+        if (notesLoadRequest != null) {
+            notesLoadRequest.cancel();  //e.g. user switched lists before previous one was loaded
+        }
+        final NotesList currentList = listNamesSpinnerController.getCurrentList();
+        if (notesPager != null) {
+            notesPager.startList(currentList, new Runnable() {
+                @Override
+                public void run() {
+                    onNotesLoaded();
+                }
+            });
+            return;
+        }
+        notesLoadRequest = notesRepository.getNotesOfList(currentList, new AsyncDatabaseHelper.Callback<ArrayList<Note>>() {
+            @Override
+            public void onResult(ArrayList<Note> notes) {
+                notesAdapter.setNotes(notes, new Runnable() {
+                    @Override
+                    public void run() {
+                        onNotesLoaded();
+                    }
+                });
+            }
+        });
+    }
+
+    protected void onNotesLoaded() {
+    }
+
+    protected void onNotesInvalidated() {  //notes were written to db, here or in another activity
+        if (notesAdapter != null) {
+            notesAdapter.invalidateSearchCache();
+        }
+        if (!resumed) {
+            notesChangedWhileHidden = true;
+        } else if (notesPager != null) {
+            notesPager.refresh();  //rows that haven't changed stay as they are
+        }
+        //without pager, notes of the list are shared with NotesRepository and are changed in place
+    }
+
     @Override
     public void onSearchViewCollapsed() {
         onListSelected();
@@ -234,6 +313,9 @@ public abstract class BaseActivity extends AppCompatActivity
 
     @Override
     public void onSearchViewExpanded() {
+        if (notesPager != null) {
+            notesPager.stop();  //search results are displayed instead
+        }
         addNoteButton.hide();
     }
 
@@ -283,7 +365,7 @@ public abstract class BaseActivity extends AppCompatActivity
 //                }
 //                Note newNote = new Note("", BaseActivity.this);
 //                newNote.list = listNamesSpinnerController.getCurrentList();
-//                newNote.id = databaseHelper.addNote(newNote);
+//                newNote.id = asyncDatabaseHelper.addNote(newNote);
 //
 //                notesAdapter.add(newNotePosition, newNote);
 //                rv = (RecyclerView)findViewById(R.id.recyclerView);
@@ -294,7 +376,7 @@ public abstract class BaseActivity extends AppCompatActivity
             case R.id.action_rename_list: {
                 RenameListDialogFragment renameListDialogFragment = new RenameListDialogFragment();
                 Bundle currentListBundle = new Bundle();
-                currentListBundle.putString(renameListDialogFragment.KEY_CURRENT_LIST_NAME, sharPrefHelper.getLastOpenedListName());
+                currentListBundle.putString(renameListDialogFragment.KEY_CURRENT_LIST_NAME, listNamesSpinnerController.getCurrentList().name);
                 renameListDialogFragment.setArguments(currentListBundle);
                 FragmentManager manager = getFragmentManager();
                 renameListDialogFragment.show(manager, renameListDialogFragment.FRAGMENT_TAG);
@@ -303,7 +385,7 @@ public abstract class BaseActivity extends AppCompatActivity
             case R.id.action_delete_list: {
                 ConfirmationDialogFragment confirmationDialogFragment = new ConfirmationDialogFragment();
                 Bundle currentListBundle = new Bundle();
-                currentListBundle.putString(confirmationDialogFragment.KEY_CURRENT_LIST_NAME, sharPrefHelper.getLastOpenedListName());
+                currentListBundle.putString(confirmationDialogFragment.KEY_CURRENT_LIST_NAME, listNamesSpinnerController.getCurrentList().name);
                 confirmationDialogFragment.setArguments(currentListBundle);
                 FragmentManager manager = getFragmentManager();
                 confirmationDialogFragment.show(manager, confirmationDialogFragment.FRAGMENT_TAG);
@@ -314,15 +396,59 @@ public abstract class BaseActivity extends AppCompatActivity
                 break;
             }
             case R.id.action_copy_list_to_clipboard: {
-                NotesFormatter notesFormatter = new NotesFormatter(BaseActivity.this);
-                String textToCopy = notesFormatter.notesOfOneListToString(notesAdapter.notesList);
-
-                ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
-                ClipData clip = ClipData.newPlainText(null, textToCopy);
-                clipboard.setPrimaryClip(clip);
-
-                String toastMessage = getString(R.string.list_copied_to_clipboard_toast, listNamesSpinnerController.getCurrentList().name);
-                Toast.makeText(BaseActivity.this, toastMessage, Toast.LENGTH_LONG).show();
+                final NotesList currentList = listNamesSpinnerController.getCurrentList();
+                flushPendingEditsThen(new Runnable() {
+                    @Override
+                    public void run() {
+                        copyListToClipboard(currentList);
+                    }
+                });
+                break;
+            }
+            case R.id.action_export_text: {
+                startExport(NotesExporter.FORMAT_TEXT);
+                break;
+            }
+            case R.id.action_export_markdown: {
+                startExport(NotesExporter.FORMAT_MARKDOWN);
+                break;
+            }
+            case R.id.action_export_csv: {
+                startExport(NotesExporter.FORMAT_CSV);
+                break;
+            }
+            case R.id.action_export_json: {
+                startExport(NotesExporter.FORMAT_JSON);
+                break;
+            }
+            case R.id.action_backup_notes: {
+                flushPendingEditsThen(new Runnable() {
+                    @Override
+                    public void run() {
+                        backupNotes();
+                    }
+                });
+                break;
+            }
+            case R.id.action_restore_backup: {
+                File snapshotFile = SnapshotBackup.getSnapshotFile(this);
+                if (!snapshotFile.exists()) {
+                    Toast.makeText(BaseActivity.this, getString(R.string.no_backup_toast), Toast.LENGTH_LONG).show();
+                    break;
+                }
+                RestoreBackupDialogFragment restoreBackupDialogFragment = new RestoreBackupDialogFragment();
+                Bundle backupBundle = new Bundle();
+                backupBundle.putLong(RestoreBackupDialogFragment.KEY_BACKUP_TIME, SnapshotBackup.getLastBackupTime(snapshotFile));
+                restoreBackupDialogFragment.setArguments(backupBundle);
+                restoreBackupDialogFragment.show(getFragmentManager(), RestoreBackupDialogFragment.FRAGMENT_TAG);
+                break;
+            }
+            case R.id.action_import_notes: {
+                Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                intent.setType("*/*");
+                intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[] { "text/*", "application/json" });
+                startActivityForResult(intent, REQUEST_CODE_IMPORT);
                 break;
             }
 //            case R.id.action_recreate_db: {  //for debug purposes only
@@ -350,9 +476,153 @@ public abstract class BaseActivity extends AppCompatActivity
 
 
 
-    public void openEditNoteActivity(final int itemPosition) {
+    private void startExport(int format) {  //user picks the file, see onActivityResult()
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(NotesExporter.getMimeType(format));
+        intent.putExtra(Intent.EXTRA_TITLE, getString(R.string.app_name) + "." + NotesExporter.getFileExtension(format));
+        startActivityForResult(intent, REQUEST_CODE_EXPORT + format);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if ((resultCode != RESULT_OK) || (data == null) || (data.getData() == null)) {
+            return;
+        }
+        if (requestCode == REQUEST_CODE_IMPORT) {
+            importNotes(data.getData());
+            return;
+        }
+        int format = requestCode - REQUEST_CODE_EXPORT;
+        if ((format >= NotesExporter.FORMAT_TEXT) && (format <= NotesExporter.FORMAT_JSON)) {
+            exportNotes(format, data.getData());
+        }
+    }
+
+    /**
+     * Reads don't wait for queued writes, so pending edits are saved first; runnable is called when they are in db.
+     */
+    private void flushPendingEditsThen(Runnable runnable) {
+        notesAdapter.flushPendingEdits();
+        asyncDatabaseHelper.runAfterPendingWrites(runnable);
+    }
+
+    private void copyListToClipboard(final NotesList list) {  //adapter may hold only some pages of the list
+        final StringWriter listText = new StringWriter();
+        asyncDatabaseHelper.exportNotes(NotesExporter.SCOPE_LIST, list, NotesExporter.FORMAT_TEXT, listText, new AsyncDatabaseHelper.Callback<Integer>() {
+            @Override
+            public void onResult(Integer exportedCount) {
+                ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+                ClipData clip = ClipData.newPlainText(null, listText.toString());
+                clipboard.setPrimaryClip(clip);
+
+                String toastMessage = getString(R.string.list_copied_to_clipboard_toast, list.name);
+                Toast.makeText(BaseActivity.this, toastMessage, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private void backupNotes() {
+        asyncDatabaseHelper.backupSnapshot(SnapshotBackup.getSnapshotFile(this), new AsyncDatabaseHelper.Callback<Integer>() {
+            @Override
+            public void onResult(Integer notesCount) {
+                String toastMessage = (notesCount >= 0) ? getString(R.string.notes_backed_up_toast, notesCount)
+                        : getString(R.string.notes_backup_failed_toast);
+                Toast.makeText(BaseActivity.this, toastMessage, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private void exportNotes(final int format, Uri uri) {
+        OutputStream outputStream;
+        try {
+            outputStream = getContentResolver().openOutputStream(uri);
+        } catch (FileNotFoundException e) {
+            Log.e(LOG_TAG, "Couldn't open export file", e);
+            outputStream = null;
+        }
+        if (outputStream == null) {
+            Toast.makeText(BaseActivity.this, getString(R.string.notes_export_failed_toast), Toast.LENGTH_LONG).show();
+            return;
+        }
+        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        flushPendingEditsThen(new Runnable() {
+            @Override
+            public void run() {
+                asyncDatabaseHelper.exportNotes(NotesExporter.SCOPE_ALL_LISTS, null, format, writer, new AsyncDatabaseHelper.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer exportedCount) {
+                        String toastMessage = (exportedCount >= 0) ? getString(R.string.notes_exported_toast, exportedCount)
+                                : getString(R.string.notes_export_failed_toast);
+                        Toast.makeText(BaseActivity.this, toastMessage, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+
+    private void importNotes(Uri uri) {  //into lists named in the file, the rest into the current list
+        InputStream inputStream;
+        try {
+            inputStream = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            Log.e(LOG_TAG, "Couldn't open import file", e);
+            inputStream = null;
+        }
+        if (inputStream == null) {
+            Toast.makeText(BaseActivity.this, getString(R.string.notes_import_failed_toast), Toast.LENGTH_LONG).show();
+            return;
+        }
+        final Snackbar progressSnackbar = Snackbar.make(addNoteButton, getString(R.string.notes_import_progress, 0),
+                Snackbar.LENGTH_INDEFINITE);
+        progressSnackbar.show();
+        InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        asyncDatabaseHelper.importNotes(reader, listNamesSpinnerController.getCurrentList(), new AsyncDatabaseHelper.Callback<Integer>() {
+            @Override
+            public void onResult(Integer importedCount) {
+                progressSnackbar.setText(getString(R.string.notes_import_progress, importedCount));
+            }
+        }, new AsyncDatabaseHelper.Callback<Integer>() {
+            @Override
+            public void onResult(Integer importedCount) {
+                progressSnackbar.dismiss();
+                String toastMessage = (importedCount >= 0) ? getString(R.string.notes_imported_toast, importedCount)
+                        : getString(R.string.notes_import_failed_toast);
+                Toast.makeText(BaseActivity.this, toastMessage, Toast.LENGTH_LONG).show();
+                reloadListNames();  //import may have added lists
+            }
+        });
+    }
+
+    @Override
+    public void onRestoreBackupConfirmed() {
+        notesAdapter.flushPendingEdits();  //queued before restore, so they don't overwrite restored notes later
+        asyncDatabaseHelper.restoreSnapshot(SnapshotBackup.getSnapshotFile(this), new AsyncDatabaseHelper.Callback<Integer>() {
+            @Override
+            public void onResult(Integer restoredCount) {
+                String toastMessage = (restoredCount >= 0) ? getString(R.string.notes_restored_toast, restoredCount)
+                        : getString(R.string.notes_restore_failed_toast);
+                Toast.makeText(BaseActivity.this, toastMessage, Toast.LENGTH_LONG).show();
+                if (restoredCount >= 0) {
+                    reloadListNames();
+                }
+            }
+        });
+    }
+
+    private void reloadListNames() {  //notes are reloaded by notesObserver
+        asyncDatabaseHelper.getListsNotFromTrash(new AsyncDatabaseHelper.Callback<List<NotesList>>() {
+            @Override
+            public void onResult(List<NotesList> lists) {
+                listNamesSpinnerController.onListsChanged(lists);
+            }
+        });
+    }
+
+    public void openEditNoteActivity(final int noteId) {  //position isn't passed, because MainActivity may hold only some pages
         Intent intent = new Intent(this, EditNoteActivity.class);
-        intent.putExtra(KEY_INTENT_ITEM_POSITION, itemPosition);
+        intent.putExtra(KEY_INTENT_NOTE_ID, noteId);
         if (searchController.searchRequest != null) {
             intent.putExtra(KEY_INTENT_SEARCH_REQUEST, searchController.searchRequest);
         }
@@ -378,24 +648,30 @@ public abstract class BaseActivity extends AppCompatActivity
         NotesList renamedList = new NotesList(currentListId, listName);
         listNamesSpinnerController.onListRenamed(renamedList);
 
-        databaseHelper.updateList(renamedList);
+        asyncDatabaseHelper.updateList(renamedList);
     }
 
     @Override
     public void onListAdded(String listName) {
-        NotesList newList = new NotesList(listName);
+        final NotesList newList = new NotesList(listName);
+        asyncDatabaseHelper.addList(newList, new AsyncDatabaseHelper.Callback<Integer>() {
+            @Override
+            public void onResult(Integer listId) {
+                newList.id = listId;
+                if (listNamesSpinnerController.getCurrentList() == newList) {
+                    sharPrefHelper.setLastOpenedList(newList);
+                }
+            }
+        });
         listNamesSpinnerController.onListAdded(newList);
         listNamesSpinnerController.setSpinnerPosition(listNamesSpinner, newList);
-        onAddNoteButtonClicked(); //adding a first note to the list
-        notesAdapter.notifyDataSetChanged();
-        databaseHelper.addList(newList);
+        onAddNoteButtonClicked(); //adding a first note to the list; it's queued after the list, so its list id is found by name
     }
 
     @Override
     public void onListMovedToTrashConfirmed() {
         NotesList list = listNamesSpinnerController.getCurrentList();
-        databaseHelper.moveListToTrash(list);
-        databaseHelper.moveAllNotesFromListToTrash(list);
+        notesRepository.moveListToTrash(list);
         listNamesSpinnerController.onListMovedToTrash(list);
     }
 
@@ -413,7 +689,7 @@ public abstract class BaseActivity extends AppCompatActivity
                 Note noteToRemove = notesAdapter.getNote(position);
 
                 notesAdapter.remove(position);
-                databaseHelper.moveNoteToTrash(noteToRemove);
+                notesRepository.moveNoteToTrash(noteToRemove);
                 if (movedToTrashToast != null) {
                     movedToTrashToast.cancel();
                 }
@@ -430,15 +706,26 @@ public abstract class BaseActivity extends AppCompatActivity
 
     public void onAddNoteButtonClicked() {
         //user is allowed to add more than 1 empty note, but they will be deleted when switching to MainActivity
+        Note newNote = new Note("", BaseActivity.this);
+        newNote.setList(listNamesSpinnerController.getCurrentList());
+        notesRepository.addNote(newNote, new AsyncDatabaseHelper.Callback<Note>() {
+            @Override
+            public void onResult(Note note) {
+                onNoteAdded(note);
+            }
+        });
+    }
+
+    private void onNoteAdded(Note newNote) {  //note.id is known by now
         int newNotePosition = getNotesAdapter().whereToAddNewNote();
         if (BaseActivity.this instanceof MainActivity) {
-            openEditNoteActivity(newNotePosition);
+            openEditNoteActivity(newNote.id);
         }
-        Note newNote = new Note("", BaseActivity.this);
-        newNote.list = listNamesSpinnerController.getCurrentList();
-        newNote.id = databaseHelper.addNote(newNote);
 
         notesAdapter.add(newNotePosition, newNote);
+        if ((notesPager != null) && !notesPager.onNotePositionChanged(newNote)) {
+            return;  //its place is on a page that isn't loaded
+        }
         rv = (RecyclerView)findViewById(R.id.recyclerView);
         rv.getLayoutManager().scrollToPosition(newNotePosition);
         notesAdapter.setSelectedNotePosition(newNotePosition);
@@ -463,14 +750,46 @@ public abstract class BaseActivity extends AppCompatActivity
 //    }
 
     @Override
-    public void onPriorityChanged(int selectedNoteId, Priority newPriority) {
-        Note selectedNote = notesAdapter.getNoteById(selectedNoteId);
-        selectedNote.priority = newPriority;
-        databaseHelper.updateNote(selectedNote);
-        notesAdapter.sortNotes(notesAdapter.notesList);
-        notesAdapter.notifyDataSetChanged();
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        if (notesChangedWhileHidden) {
+            notesChangedWhileHidden = false;
+            if (notesPager != null) {
+                notesPager.refresh();
+            } else if (searchController.isSearchViewNull() || searchController.isSearchViewIconified()) {
+                loadNotesOfCurrentList();  //from NotesRepository
+            }
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (notesAdapter != null) {
+            notesAdapter.flushPendingEdits();  //writer thread goes on in background; checkpoint below is queued after it
+        }
+        asyncDatabaseHelper.checkpoint(true);  //autosaves aren't synced on commit, see DurabilityPolicy
+        resumed = false;
+    }
 
-        int newPosition = notesAdapter.getPosition(selectedNote);
+    @Override
+    protected void onDestroy() {
+        asyncDatabaseHelper.getInvalidationTracker().removeObserver(notesObserver);
+        if (notesPager != null) {
+            notesPager.stop();
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public void onPriorityChanged(int selectedNoteId, Priority newPriority) {
+        final Note selectedNote = notesAdapter.getNoteById(selectedNoteId);
+        notesRepository.changePriority(selectedNote, newPriority);
+        int newPosition = notesAdapter.moveNoteToItsPlace(selectedNote);
+        if ((newPosition == -1) || ((notesPager != null) && !notesPager.onNotePositionChanged(selectedNote))) {
+            return;
+        }
         llm.scrollToPosition(newPosition);
 
     }
@@ -486,6 +805,6 @@ public abstract class BaseActivity extends AppCompatActivity
         Toast.makeText(BaseActivity.this, noteMovedToastText, Toast.LENGTH_SHORT).show();
         Log.d(LOG_TAG, "Note '"+movedNote.text+"' moved to list '"+chosenListName+"', listId = '"+chosenListId+"'");
 
-        databaseHelper.moveNoteToAnotherList(movedNote, new NotesList(chosenListId));
+        notesRepository.moveNoteToAnotherList(movedNote, new NotesList(chosenListId));
     }
 }
@@ -11,7 +11,6 @@ import android.widget.EditText;
 
 import com.anshmidt.easynote.EasyNoteApplication;
 import com.anshmidt.easynote.Priority;
-import com.anshmidt.easynote.database.DatabaseHelper;
 import com.anshmidt.easynote.Note;
 import com.anshmidt.easynote.NotesAdapter;
 import com.anshmidt.easynote.R;
@@ -29,9 +28,8 @@ public class EditNoteActivity extends BaseActivity {
     protected RecyclerView rv;
     protected NotesAdapter notesAdapter;
 
-    public int positionInList;
+    public int selectedNoteId;
     public View contentView;
-    private DatabaseHelper databaseHelper;
     private final String LOG_TAG = EditNoteActivity.class.getSimpleName();
 
     @Override
@@ -43,17 +41,16 @@ public class EditNoteActivity extends BaseActivity {
         getSupportActionBar().setDisplayShowHomeEnabled(true);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
-        databaseHelper = DatabaseHelper.getInstance(EditNoteActivity.this);
         rv = (RecyclerView) findViewById(R.id.recyclerView);
         llm = new LinearLayoutManager(this);
         rv.setLayoutManager(llm);
 
-        notesList = databaseHelper.getAllNotesFromList(listNamesSpinnerController.getCurrentList());
+        notesList = new ArrayList<>();  //filled in when loaded from db
         notesAdapter = new NotesAdapter(notesList, this);
         setNotesAdapter(notesAdapter);
         rv.setAdapter(notesAdapter);
 
-        positionInList = getIntent().getIntExtra(KEY_INTENT_ITEM_POSITION, 0);
+        selectedNoteId = getIntent().getIntExtra(KEY_INTENT_NOTE_ID, -1);
         searchController.searchRequest = getIntent().getStringExtra(KEY_INTENT_SEARCH_REQUEST); //or null if it's not in intent
         if (searchController.searchRequest != null) {
             Log.d(LOG_TAG, "searchRequest '" + searchController.searchRequest + "' was found in the intent");
@@ -68,17 +65,29 @@ public class EditNoteActivity extends BaseActivity {
         llm.setStackFromEnd(true);  //fixes issue with 3 last items covered with a keyboard
 
         setItemSwipeCallback(notesAdapter, rv);
-
+        loadNotesOfCurrentList();
     }
 
 
     @Override
     protected void onResume() {
         super.onResume();
+        selectNote(selectedNoteId);
+    }
 
-        notesAdapter.setSelectedNotePosition(positionInList);
-        //llm.scrollToPositionWithOffset(positionInList, 0);   //also works, but a bit different
-        llm.scrollToPosition(positionInList);
+    @Override
+    protected void onNotesLoaded() {
+        selectNote(selectedNoteId);
+    }
+
+    private void selectNote(int noteId) {
+        int position = notesAdapter.getPositionById(noteId);
+        if (position == -1) {  //not loaded yet
+            return;
+        }
+        notesAdapter.setSelectedNotePosition(position);
+        //llm.scrollToPositionWithOffset(position, 0);   //also works, but a bit different
+        llm.scrollToPosition(position);
     }
 
     @Override
@@ -10,7 +10,8 @@ import android.widget.Toast;
 
 import com.anshmidt.easynote.NotesAdapter;
 import com.anshmidt.easynote.NotesList;
-import com.anshmidt.easynote.database.DatabaseHelper;
+import com.anshmidt.easynote.NotesPager;
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
 import com.anshmidt.easynote.Note;
 import com.anshmidt.easynote.PriorityInfo;
 import com.anshmidt.easynote.R;
@@ -25,7 +26,7 @@ public class MainActivity extends BaseActivity {
     protected RecyclerView rv;
     LinearLayoutManager llm;
     protected NotesAdapter notesAdapter;
-    DatabaseHelper databaseHelper;
+    AsyncDatabaseHelper asyncDatabaseHelper;
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private Toast movedToTrashToast = null;
 
@@ -36,7 +37,7 @@ public class MainActivity extends BaseActivity {
         setContentView(R.layout.activity_main);
 
         super.onCreate(savedInstanceState);
-        databaseHelper = DatabaseHelper.getInstance(this);
+        asyncDatabaseHelper = AsyncDatabaseHelper.getInstance(this);
 
 
 
@@ -46,8 +47,8 @@ public class MainActivity extends BaseActivity {
 
 
 
-        databaseHelper.deleteAllEmptyNotes();
-        notesList = databaseHelper.getAllNotesFromList(listNamesSpinnerController.getCurrentList());
+        notesRepository.deleteAllEmptyNotes();
+        notesList = new ArrayList<>();  //filled in when loaded from db
 
         rv = (RecyclerView)findViewById(R.id.recyclerView);
         llm = new LinearLayoutManager(this);
@@ -57,28 +58,30 @@ public class MainActivity extends BaseActivity {
         notesAdapter = new NotesAdapter(notesList, this);
         setNotesAdapter(notesAdapter);
         rv.setAdapter(notesAdapter);
+        notesPager = new NotesPager(asyncDatabaseHelper, notesAdapter, llm);
+        notesPager.attachTo(rv);
 
         setItemSwipeCallback(notesAdapter, rv);
-
+        loadNotesOfCurrentList();
     }
 
 
     @Override
     public boolean onContextItemSelected(MenuItem item) {
         int position = notesAdapter.longPressedNotePosition;
-        PriorityInfo priorityInfo = new PriorityInfo(MainActivity.this);
-        Note longPressedNote = notesAdapter.getNote(position);
+        PriorityInfo priorityInfo = PriorityInfo.getInstance(MainActivity.this);
+        final Note longPressedNote = notesAdapter.getNote(position);
         Log.d(LOG_TAG, "Long pressed note before changing: ");
         longPressedNote.printContentToLog();
 
         if (item.getItemId() == notesAdapter.MAIN_CONTEXT_MENU_ITEM_MAKE_IMPORTANT_ID) {
-            longPressedNote.priority = priorityInfo.IMPORTANT;
+            notesRepository.changePriority(longPressedNote, priorityInfo.IMPORTANT);
         }
         if (item.getItemId() == notesAdapter.MAIN_CONTEXT_MENU_ITEM_MAKE_NORMAL_ID) {
-            longPressedNote.priority = priorityInfo.NORMAL;
+            notesRepository.changePriority(longPressedNote, priorityInfo.NORMAL);
         }
         if (item.getItemId() == notesAdapter.MAIN_CONTEXT_MENU_ITEM_MAKE_MINOR_ID) {
-            longPressedNote.priority = priorityInfo.MINOR;
+            notesRepository.changePriority(longPressedNote, priorityInfo.MINOR);
         }
 
         if (item.getItemId() == notesAdapter.MAIN_CONTEXT_MENU_ITEM_MOVE_ID) {
@@ -90,12 +93,10 @@ public class MainActivity extends BaseActivity {
             moveNoteDialogFragment.show(manager, moveNoteDialogFragment.FRAGMENT_TAG);
         }
 
-        databaseHelper.updateNote(longPressedNote);
-        notesAdapter.sortNotes(notesAdapter.notesList);
-        notesAdapter.notifyDataSetChanged();
-
-        int newPosition = notesAdapter.getPosition(longPressedNote);
-        llm.scrollToPosition(newPosition);
+        int newPosition = notesAdapter.moveNoteToItsPlace(longPressedNote);
+        if ((newPosition != -1) && notesPager.onNotePositionChanged(longPressedNote)) {
+            llm.scrollToPosition(newPosition);
+        }
 
         return super.onContextItemSelected(item);
     }
@@ -14,22 +14,28 @@ import android.widget.ImageView;
 
 import com.anshmidt.easynote.Note;
 import com.anshmidt.easynote.NotesAdapter;
+import com.anshmidt.easynote.NotesPager;
+import com.anshmidt.easynote.NotesRepository;
 import com.anshmidt.easynote.R;
 import com.anshmidt.easynote.SearchController;
-import com.anshmidt.easynote.database.DatabaseHelper;
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
+import com.anshmidt.easynote.database.InvalidationTracker;
+import com.anshmidt.easynote.database.NotesDao;
 
 import java.util.ArrayList;
+import java.util.Set;
 
 /**
  * Created by Ilya Anshmidt on 03.03.2018.
  */
 
-public class TrashActivity extends AppCompatActivity {
+public class TrashActivity extends AppCompatActivity implements SearchController.OnSearchViewExpandListener {
 
     private final String LOG_TAG = TrashActivity.class.getSimpleName();
     protected RecyclerView rv;
     protected LinearLayoutManager llm;
-    private DatabaseHelper databaseHelper;
+    private AsyncDatabaseHelper asyncDatabaseHelper;
+    private NotesRepository notesRepository;
     SearchView searchView;
     ImageView clearSearchButton;
     EditText searchField;
@@ -37,7 +43,15 @@ public class TrashActivity extends AppCompatActivity {
     Toolbar toolbar;
     protected NotesAdapter notesAdapter;
     protected ArrayList<Note> notesList;
+    protected NotesPager notesPager;
     public SearchController searchController;
+    private final InvalidationTracker.Observer trashObserver = new InvalidationTracker.Observer(NotesDao.NOTES_TABLE_NAME) {
+        @Override
+        public void onInvalidated(Set<String> changedTables) {
+            notesAdapter.invalidateSearchCache();
+            notesPager.refresh();  //waits until search is closed
+        }
+    };
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -45,7 +59,8 @@ public class TrashActivity extends AppCompatActivity {
         searchController = new SearchController();
         setContentView(R.layout.activity_trash);
         overridePendingTransition(R.anim.slide_in, R.anim.slide_out);
-        databaseHelper = DatabaseHelper.getInstance(TrashActivity.this);
+        asyncDatabaseHelper = AsyncDatabaseHelper.getInstance(TrashActivity.this);
+        notesRepository = NotesRepository.getInstance(TrashActivity.this);
         toolbar = (Toolbar) findViewById(R.id.toolbar_trash);
         setSupportActionBar(toolbar);
         getSupportActionBar().setTitle(getString(R.string.activity_trash_title));
@@ -56,10 +71,25 @@ public class TrashActivity extends AppCompatActivity {
         llm = new LinearLayoutManager(this);
         rv.setLayoutManager(llm);
 
-        notesList = databaseHelper.getAllNotesFromTrash();
+        notesList = new ArrayList<>();  //filled in when loaded from db
         notesAdapter = new NotesAdapter(notesList, this);
         setNotesAdapter(notesAdapter);
         rv.setAdapter(notesAdapter);
+
+        notesPager = new NotesPager(asyncDatabaseHelper, notesAdapter, llm);
+        notesPager.attachTo(rv);
+        notesPager.startTrash(null);
+        asyncDatabaseHelper.getInvalidationTracker().addObserver(trashObserver);
+    }
+
+    @Override
+    public void onSearchViewExpanded() {
+        notesPager.stop();  //search results are displayed instead
+    }
+
+    @Override
+    public void onSearchViewCollapsed() {
+        notesPager.startTrash(null);
     }
 
     @Override
@@ -67,6 +97,7 @@ public class TrashActivity extends AppCompatActivity {
         getMenuInflater().inflate(R.menu.menu_trash, menu);
         searchController = new SearchController();
         searchController.setNotesAdapter(notesAdapter);
+        searchController.setOnSearchViewExpandListener(this);
         searchController.setMenu(menu);
         searchController.setTextListener();
         searchController.setOnClickClearButtonListener();
@@ -81,10 +112,7 @@ public class TrashActivity extends AppCompatActivity {
 
         switch (id) {
             case R.id.action_empty_trash: {
-                databaseHelper.deleteTrashNotes();
-                databaseHelper.deleteTrashLists();
-                notesAdapter.notesList = databaseHelper.getAllNotesFromTrash();
-                notesAdapter.notifyDataSetChanged();
+                notesRepository.emptyTrash(null);  //trashObserver shows what's left in trash
                 break;
             }
 
@@ -109,18 +137,10 @@ public class TrashActivity extends AppCompatActivity {
         Note longPressedNote = notesAdapter.getNote(position);
 
         if (item.getItemId() == notesAdapter.TRASH_CONTEXT_MENU_ITEM_PUT_BACK_ID) {
-            longPressedNote.inTrash = false;
-            longPressedNote.list = databaseHelper.getListById(longPressedNote.list.id);
-            if (longPressedNote.list.inTrash) {
-                longPressedNote.list.inTrash = false;
-                databaseHelper.updateList(longPressedNote.list);
-            }
+            notesRepository.putNoteBackFromTrash(longPressedNote);
+            notesAdapter.remove(position);
         }
 
-        databaseHelper.updateNote(longPressedNote);
-        notesAdapter.notesList.remove(position);
-        notesAdapter.notifyDataSetChanged();
-
 
         return super.onContextItemSelected(item);
     }
@@ -130,4 +150,11 @@ public class TrashActivity extends AppCompatActivity {
         super.onPause();
         overridePendingTransition(R.anim.back_in, R.anim.back_out);
     }
+
+    @Override
+    protected void onDestroy() {
+        asyncDatabaseHelper.getInvalidationTracker().removeObserver(trashObserver);
+        notesPager.stop();
+        super.onDestroy();
+    }
 }
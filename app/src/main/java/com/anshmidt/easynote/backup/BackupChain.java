@@ -0,0 +1,129 @@
+package com.anshmidt.easynote.backup;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A base snapshot and the deltas written after it, in files next to it: notes.snapshot.delta.1, .2 and so on.
+ * Every delta starts where the previous file ends, see SnapshotReader.ChangeRange. Deltas that don't,
+ * e.g. left from an older base by a crash, are stale and aren't part of the chain.
+ */
+
+class BackupChain {
+
+    private static final String DELTA_FILE_SUFFIX = ".delta.";
+
+    final File baseFile;
+    final List<File> deltaFiles = new ArrayList<>();  // in replay order
+    final List<File> staleFiles = new ArrayList<>();
+    long lastChangeSeq = -1;  // of the last file; -1 if base is missing, broken or has no change range, so nothing can follow it
+    private int lastDeltaNumber = 0;
+
+    private BackupChain(File baseFile) {
+        this.baseFile = baseFile;
+    }
+
+    /**
+     * Finds the chain by change ranges only, which doesn't read whole files; restore verifies them.
+     */
+    static BackupChain read(File baseFile) {
+        BackupChain chain = new BackupChain(baseFile);
+        List<File> files = listDeltaFiles(baseFile);
+        if (baseFile.exists()) {
+            SnapshotReader.ChangeRange baseRange = readChangeRange(baseFile);
+            if ((baseRange != null) && baseRange.full) {
+                chain.lastChangeSeq = baseRange.toChangeSeq;
+            }
+        }
+        for (File file : files) {
+            if ((chain.lastChangeSeq == -1) || !chain.staleFiles.isEmpty()) {  // nothing to follow
+                chain.staleFiles.add(file);
+                continue;
+            }
+            SnapshotReader.ChangeRange range = readChangeRange(file);
+            if ((range != null) && !range.full && (range.fromChangeSeq == chain.lastChangeSeq)) {
+                chain.deltaFiles.add(file);
+                chain.lastChangeSeq = range.toChangeSeq;
+                chain.lastDeltaNumber = getDeltaNumber(file, getDeltaFilePrefix(baseFile));
+            } else {
+                chain.staleFiles.add(file);
+            }
+        }
+        return chain;
+    }
+
+    File getNextDeltaFile() {
+        return new File(baseFile.getPath() + DELTA_FILE_SUFFIX + (lastDeltaNumber + 1));
+    }
+
+    void deleteStaleFiles() {
+        for (File file : staleFiles) {
+            file.delete();
+        }
+        staleFiles.clear();
+    }
+
+    long getLastModified() {  // of the newest file
+        long lastModified = baseFile.lastModified();
+        for (File file : deltaFiles) {
+            lastModified = Math.max(lastModified, file.lastModified());
+        }
+        return lastModified;
+    }
+
+    static void deleteDeltaFiles(File baseFile) {  // after a new base is written
+        for (File file : listDeltaFiles(baseFile)) {
+            file.delete();
+        }
+    }
+
+    private static String getDeltaFilePrefix(File baseFile) {
+        return baseFile.getName() + DELTA_FILE_SUFFIX;
+    }
+
+    private static List<File> listDeltaFiles(File baseFile) {  // ordered by number
+        final String prefix = getDeltaFilePrefix(baseFile);
+        File[] files = baseFile.getAbsoluteFile().getParentFile().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().startsWith(prefix) && (getDeltaNumber(file, prefix) > 0);
+            }
+        });
+        if (files == null) {  // no dir yet
+            return new ArrayList<>();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                return Integer.compare(getDeltaNumber(file1, prefix), getDeltaNumber(file2, prefix));
+            }
+        });
+        return Arrays.asList(files);
+    }
+
+    private static int getDeltaNumber(File file, String prefix) {  // 0 if it's not a number, like .tmp files
+        try {
+            return Integer.parseInt(file.getName().substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static SnapshotReader.ChangeRange readChangeRange(File file) {  // null if file is broken too
+        try {
+            SnapshotReader reader = new SnapshotReader(file);
+            try {
+                return reader.readChangeRange();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
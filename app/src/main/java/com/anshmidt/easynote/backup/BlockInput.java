@@ -0,0 +1,86 @@
+package com.anshmidt.easynote.backup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One snapshot block copied out of the mapped file, decoded with the encodings of SnapshotWriter.
+ */
+
+class BlockInput {
+
+    private byte[] bytes = new byte[SnapshotWriter.MAX_BLOCK_PAYLOAD * 2];
+    private int position;
+    private int end;
+
+    void load(ByteBuffer buffer, int start, int length) {  // buffer position is moved past the copied bytes
+        if (bytes.length < length) {
+            bytes = new byte[length];
+        }
+        buffer.position(start);
+        buffer.get(bytes, 0, length);
+        position = 0;
+        end = length;
+    }
+
+    byte[] getBytes() {  // the loaded block is at the start
+        return bytes;
+    }
+
+    void skip(int count) {
+        position += count;
+    }
+
+    boolean isFullyRead() {
+        return position == end;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= end) {
+                throw new IOException("Block ends inside a record");
+            }
+            int b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+
+    int readByte() throws IOException {
+        if (position >= end) {
+            throw new IOException("Block ends inside a record");
+        }
+        return bytes[position++];
+    }
+
+    String readString() throws IOException {
+        long lengthPlusOne = readVarint();
+        if (lengthPlusOne == 0) {
+            return null;
+        }
+        if (lengthPlusOne - 1 > end - position) {
+            throw new IOException("String is longer than its block");
+        }
+        int length = (int) (lengthPlusOne - 1);
+        String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    static long readVarint(ByteBuffer buffer) throws IOException {  // for block headers, read before the block is loaded
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+}
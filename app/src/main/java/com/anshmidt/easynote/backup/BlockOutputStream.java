@@ -0,0 +1,38 @@
+package com.anshmidt.easynote.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Buffer of one snapshot block, with the encodings of SnapshotWriter.
+ */
+
+class BlockOutputStream extends ByteArrayOutputStream {
+
+    BlockOutputStream(int size) {
+        super(size);
+    }
+
+    void writeVarint(long value) {  // 7 bits per byte, lowest first; high bit is set on all bytes but the last
+        while ((value & ~0x7FL) != 0) {
+            write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    void writeString(String value) {  // UTF-8 length + 1, 0 for null
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1);
+        write(bytes, 0, bytes.length);
+    }
+
+    void updateChecksum(CRC32 crc) {
+        crc.update(buf, 0, count);
+    }
+}
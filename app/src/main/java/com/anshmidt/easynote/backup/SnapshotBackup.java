@@ -0,0 +1,274 @@
+package com.anshmidt.easynote.backup;
+
+import android.content.Context;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+import com.anshmidt.easynote.database.DatabaseHelper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Backs up notes, lists and priorities to a snapshot file and restores them from it, see SnapshotWriter.
+ * Backup only reads, so it runs on a reader thread; restore replaces everything in one transaction on the writer thread,
+ * see AsyncDatabaseHelper.
+ * An incremental backup writes only what has changed since the previous one to a delta, see ChangeLogDao and BackupChain;
+ * restore replays the base snapshot and its deltas in order.
+ */
+
+public class SnapshotBackup {
+
+    private static final String BACKUP_DIR_NAME = "backup";
+    private static final String SNAPSHOT_FILE_NAME = "notes.snapshot";
+    private static final int PAGE_SIZE = 500;  // notes read at once
+    private static final int RESTORE_BATCH_SIZE = 1000;  // notes inserted at once
+    private static final int MAX_DELTAS = 10;  // then a full snapshot is written, so restore doesn't replay a long chain
+
+    private final DatabaseHelper databaseHelper;
+    private long backedUpChangeSeq = -1;
+
+    public SnapshotBackup(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    public static File getSnapshotFile(Context context) {
+        return new File(new File(context.getFilesDir(), BACKUP_DIR_NAME), SNAPSHOT_FILE_NAME);
+    }
+
+    public static long getLastBackupTime(File file) {  // of the snapshot or its last delta, 0 if there is no backup
+        return BackupChain.read(file).getLastModified();
+    }
+
+    /**
+     * Every change up to this one is in the backup files after backup() or backupChanges(), so tombstones
+     * up to it aren't needed anymore. -1 before a backup.
+     */
+    public long getBackedUpChangeSeq() {
+        return backedUpChangeSeq;
+    }
+
+    /**
+     * Writes a full snapshot to file, replacing the old one only when the new one is complete, and deletes its deltas.
+     * Returns number of notes. Lists and priorities are read after notes, so every list a note refers to is in the snapshot.
+     */
+    public int backup(File file) throws IOException {
+        // read first: rows changed while the snapshot is written get bigger values, so the next delta has them
+        final long changeSeq = databaseHelper.getLastChangeSeq();
+        int notesCount = writeAtomically(file, new SnapshotContent() {
+            @Override
+            public int writeTo(SnapshotWriter writer) throws IOException {
+                writer.writeChangeRange(true, 0, changeSeq);
+                int notesCount = 0;
+                int afterId = 0;
+                ArrayList<Note> page;
+                do {
+                    page = databaseHelper.getNotesAfterId(afterId, PAGE_SIZE);
+                    databaseHelper.loadFullTexts(page);  // bodies of long notes are in chunks
+                    for (Note note : page) {
+                        writer.writeNote(note);
+                    }
+                    notesCount += page.size();
+                    if (!page.isEmpty()) {
+                        afterId = page.get(page.size() - 1).id;
+                    }
+                } while (page.size() == PAGE_SIZE);
+                for (NotesList list : databaseHelper.getAllLists()) {
+                    writer.writeList(list);
+                }
+                for (Priority priority : databaseHelper.getAllPriorities()) {
+                    writer.writePriority(priority);
+                }
+                return notesCount;
+            }
+        });
+        BackupChain.deleteDeltaFiles(file);
+        backedUpChangeSeq = changeSeq;
+        return notesCount;
+    }
+
+    /**
+     * Writes a delta with rows changed and deleted since the last backup file; its work is proportional to the changes,
+     * as they are found by change_seq indexes. Writes a full snapshot instead if there is no chain to continue
+     * or it's long enough. Returns number of written notes. Priorities never change, so only the full snapshot has them.
+     */
+    public int backupChanges(File file) throws IOException {
+        final long changeSeq = databaseHelper.getLastChangeSeq();
+        BackupChain chain = BackupChain.read(file);
+        if ((chain.lastChangeSeq == -1) || (chain.deltaFiles.size() >= MAX_DELTAS)
+                || (changeSeq < chain.lastChangeSeq)) {  // the latter if db was created anew
+            return backup(file);
+        }
+        chain.deleteStaleFiles();
+        final long fromChangeSeq = chain.lastChangeSeq;
+        if (changeSeq == fromChangeSeq) {  // nothing has changed
+            backedUpChangeSeq = changeSeq;
+            return 0;
+        }
+        int notesCount = writeAtomically(chain.getNextDeltaFile(), new SnapshotContent() {
+            @Override
+            public int writeTo(SnapshotWriter writer) throws IOException {
+                writer.writeChangeRange(false, fromChangeSeq, changeSeq);
+                for (int noteId : databaseHelper.getDeletedNoteIds(fromChangeSeq, changeSeq)) {
+                    writer.writeDeletedNote(noteId);
+                }
+                for (int listId : databaseHelper.getDeletedListIds(fromChangeSeq, changeSeq)) {
+                    writer.writeDeletedList(listId);
+                }
+                for (NotesList list : databaseHelper.getListsChangedBetween(fromChangeSeq, changeSeq)) {
+                    writer.writeList(list);
+                }
+                int notesCount = 0;
+                int[] noteIds = databaseHelper.getNoteIdsChangedBetween(fromChangeSeq, changeSeq);
+                for (int from = 0; from < noteIds.length; from += PAGE_SIZE) {
+                    // a note deleted or changed since its id was read is in the next delta
+                    ArrayList<Note> page = databaseHelper.getNotesWithTextsByIds(
+                            Arrays.copyOfRange(noteIds, from, Math.min(from + PAGE_SIZE, noteIds.length)));
+                    databaseHelper.loadFullTexts(page);
+                    for (Note note : page) {
+                        writer.writeNote(note);
+                    }
+                    notesCount += page.size();
+                }
+                return notesCount;
+            }
+        });
+        backedUpChangeSeq = changeSeq;
+        return notesCount;
+    }
+
+    private interface SnapshotContent {
+        int writeTo(SnapshotWriter writer) throws IOException;  // returns number of notes
+    }
+
+    private int writeAtomically(File file, SnapshotContent content) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tempFile);
+        int notesCount;
+        boolean written = false;
+        try {
+            SnapshotWriter writer = new SnapshotWriter(new BufferedOutputStream(fileOut));
+            notesCount = content.writeTo(writer);
+            writer.finish();
+            fileOut.getFD().sync();
+            written = true;
+        } finally {
+            fileOut.close();
+            if (!written) {
+                tempFile.delete();
+            }
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Couldn't replace " + file);
+        }
+        return notesCount;
+    }
+
+    /**
+     * Replaces all data in db with the snapshot and its deltas. All files are checked first, so a broken one changes nothing.
+     * Returns number of restored notes.
+     */
+    public int restore(File file) throws IOException {
+        BackupChain chain = BackupChain.read(file);
+        final List<SnapshotReader> readers = new ArrayList<>();
+        try {
+            readers.add(new SnapshotReader(file));
+            for (File deltaFile : chain.deltaFiles) {
+                readers.add(new SnapshotReader(deltaFile));
+            }
+            for (SnapshotReader reader : readers) {
+                reader.verify();
+            }
+            final RestoreListener restoreListener = new RestoreListener();
+            databaseHelper.replaceAllData(new DatabaseHelper.RestoreSource() {
+                @Override
+                public void addRowsTo(DatabaseHelper.RestoreTarget target) throws IOException {
+                    restoreListener.target = target;
+                    SnapshotReader baseReader = readers.get(0);
+                    baseReader.read(SnapshotWriter.BLOCK_PRIORITIES, restoreListener);
+                    baseReader.read(SnapshotWriter.BLOCK_LISTS, restoreListener);
+                    baseReader.read(SnapshotWriter.BLOCK_NOTES, restoreListener);
+                    restoreListener.addBatch();
+                    restoreListener.replacing = true;
+                    for (SnapshotReader deltaReader : readers.subList(1, readers.size())) {
+                        // a deleted id may be used again by a row added later, so deletions go first
+                        deltaReader.read(SnapshotWriter.BLOCK_DELETED_NOTES, restoreListener);
+                        deltaReader.read(SnapshotWriter.BLOCK_DELETED_LISTS, restoreListener);
+                        deltaReader.read(SnapshotWriter.BLOCK_LISTS, restoreListener);
+                        deltaReader.read(SnapshotWriter.BLOCK_NOTES, restoreListener);
+                        restoreListener.addBatch();
+                    }
+                }
+            });
+            return restoreListener.notesCount;
+        } finally {
+            for (SnapshotReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static class RestoreListener implements SnapshotReader.RecordListener {
+
+        private DatabaseHelper.RestoreTarget target;
+        private boolean replacing = false;  // rows of deltas replace the ones with the same id
+        private final ArrayList<Note> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+        private int notesCount = 0;
+
+        @Override
+        public void onPriority(Priority priority) {
+            target.addPriority(priority);
+        }
+
+        @Override
+        public void onList(NotesList list) {
+            if (replacing) {
+                target.deleteList(list.id);
+            }
+            target.addList(list);
+        }
+
+        @Override
+        public void onNote(Note note) {
+            if (replacing) {
+                onDeletedNote(note.id);
+            }
+            batch.add(note);
+            if (batch.size() == RESTORE_BATCH_SIZE) {
+                addBatch();
+            }
+        }
+
+        @Override
+        public void onDeletedNote(int noteId) {
+            if (target.deleteNote(noteId)) {
+                notesCount--;
+            }
+        }
+
+        @Override
+        public void onDeletedList(int listId) {
+            target.deleteList(listId);
+        }
+
+        private void addBatch() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            target.addNotes(batch);
+            notesCount += batch.size();
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.anshmidt.easynote.backup;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a snapshot of SnapshotWriter from a memory-mapped file, so it isn't copied through stream buffers.
+ * A block is copied once, to check its checksum and decode it. Blocks of unknown types are skipped.
+ */
+
+public class SnapshotReader implements Closeable {
+
+    public interface RecordListener {
+        void onPriority(Priority priority) throws IOException;
+        void onList(NotesList list) throws IOException;
+        void onNote(Note note) throws IOException;
+        void onDeletedNote(int noteId) throws IOException;
+        void onDeletedList(int listId) throws IOException;
+    }
+
+    /**
+     * Changes of db the file has, see SnapshotWriter.writeChangeRange(). A full snapshot starts from 0.
+     */
+    public static class ChangeRange {
+        public final boolean full;
+        public final long fromChangeSeq;  // exclusive
+        public final long toChangeSeq;  // inclusive
+
+        public ChangeRange(boolean full, long fromChangeSeq, long toChangeSeq) {
+            this.full = full;
+            this.fromChangeSeq = fromChangeSeq;
+            this.toChangeSeq = toChangeSeq;
+        }
+    }
+
+    private final FileInputStream in;
+    private final MappedByteBuffer buffer;
+    private final int firstBlockPosition;
+    private final CRC32 crc = new CRC32();
+    private final BlockInput block = new BlockInput();
+
+    // of the block whose header was read last
+    private int blockStart;
+    private int recordsCount;
+    private int payloadStart;
+    private int payloadLength;
+
+    public SnapshotReader(File file) throws IOException {
+        in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too big: " + channel.size());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < SnapshotWriter.MAGIC.length + 1) {
+                throw new IOException("Not a snapshot");
+            }
+            for (byte b : SnapshotWriter.MAGIC) {
+                if (buffer.get() != b) {
+                    throw new IOException("Not a snapshot");
+                }
+            }
+            int version = buffer.get() & 0xFF;
+            if (version > SnapshotWriter.VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            firstBlockPosition = buffer.position();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks checksums of all blocks and that the file isn't cut, before anything is restored from it.
+     */
+    public void verify() throws IOException {
+        buffer.position(firstBlockPosition);
+        int type;
+        do {
+            type = readBlockHeader();
+            loadBlock();
+        } while (type != SnapshotWriter.BLOCK_END);
+    }
+
+    /**
+     * Passes records of all blocks of the type to listener, in the order they were written.
+     */
+    public void read(int blockType, RecordListener listener) throws IOException {
+        buffer.position(firstBlockPosition);
+        int type;
+        while ((type = readBlockHeader()) != SnapshotWriter.BLOCK_END) {
+            if (type != blockType) {
+                buffer.position(payloadStart + payloadLength + 4);
+                continue;
+            }
+            loadBlock();
+            for (int i = 0; i < recordsCount; i++) {
+                readRecord(type, listener);
+            }
+            if (!block.isFullyRead()) {
+                throw new IOException("Block has more data than its records");
+            }
+        }
+    }
+
+    /**
+     * Returns the change range, or null if the file has none, like snapshots written before incremental backups.
+     * Only its block is checked, so it's cheap for a big file.
+     */
+    public ChangeRange readChangeRange() throws IOException {
+        buffer.position(firstBlockPosition);
+        int type;
+        while ((type = readBlockHeader()) != SnapshotWriter.BLOCK_END) {
+            if (type != SnapshotWriter.BLOCK_CHANGE_RANGE) {
+                buffer.position(payloadStart + payloadLength + 4);
+                continue;
+            }
+            loadBlock();
+            boolean full = block.readByte() != 0;
+            long fromChangeSeq = block.readVarint();
+            return new ChangeRange(full, fromChangeSeq, block.readVarint());
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();  // buffer stays mapped until it's garbage collected
+    }
+
+    private int readBlockHeader() throws IOException {
+        try {
+            blockStart = buffer.position();
+            int type = buffer.get() & 0xFF;
+            recordsCount = (int) BlockInput.readVarint(buffer);
+            long length = BlockInput.readVarint(buffer);
+            payloadStart = buffer.position();
+            if ((recordsCount < 0) || (length > buffer.limit() - payloadStart - 4)) {
+                throw new IOException("Snapshot is cut or broken at " + blockStart);
+            }
+            payloadLength = (int) length;
+            return type;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot is cut at " + blockStart);
+        }
+    }
+
+    private void loadBlock() throws IOException {  // with its header, which is covered by the checksum too
+        int length = payloadStart + payloadLength - blockStart;
+        block.load(buffer, blockStart, length);
+        crc.reset();
+        crc.update(block.getBytes(), 0, length);
+        if (buffer.getInt() != (int) crc.getValue()) {
+            throw new IOException("Wrong checksum of block at " + blockStart);
+        }
+        block.skip(payloadStart - blockStart);
+    }
+
+    private void readRecord(int type, RecordListener listener) throws IOException {
+        switch (type) {
+            case SnapshotWriter.BLOCK_PRIORITIES: {
+                int id = (int) block.readVarint();
+                listener.onPriority(new Priority(id, block.readString()));
+                break;
+            }
+            case SnapshotWriter.BLOCK_LISTS: {
+                int id = (int) block.readVarint();
+                String name = block.readString();
+                listener.onList(new NotesList(id, name, block.readByte() != 0));
+                break;
+            }
+            case SnapshotWriter.BLOCK_NOTES: {
+                int id = (int) block.readVarint();
+                long modificationTime = block.readVarint();
+                int priorityId = (int) block.readVarint();
+                int listId = (int) block.readVarint();
+                boolean inTrash = block.readByte() != 0;
+                String text = block.readString();
+                listener.onNote(new Note(id, modificationTime, text, inTrash, new Priority(priorityId), new NotesList(listId)));
+                break;
+            }
+            case SnapshotWriter.BLOCK_DELETED_NOTES:
+                listener.onDeletedNote((int) block.readVarint());
+                break;
+            case SnapshotWriter.BLOCK_DELETED_LISTS:
+                listener.onDeletedList((int) block.readVarint());
+                break;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.anshmidt.easynote.backup;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a binary snapshot of db: a header, then blocks of records of one table each, then an empty end block.
+ * A block is checked by its own checksum, so a broken file is found before anything is restored from it.
+ * A delta of an incremental backup has the same format: changed rows and ids of deleted ones,
+ * its change range tells which snapshot or delta it follows, see BackupChain.
+ *
+ * header:   MAGIC, VERSION (1 byte)
+ * block:    type (1 byte), records count (varint), payload length (varint), payload,
+ *           CRC32 of all the above (4 bytes, big endian)
+ * string:   UTF-8 length + 1 (varint, 0 for null), UTF-8 bytes
+ * priority: id (varint), name (string)
+ * list:     id (varint), name (string), in trash (1 byte)
+ * note:     id (varint), modification time (varint), priority id (varint), list id (varint), in trash (1 byte), text (string)
+ * range:    full (1 byte, 0 for a delta), from change seq (varint), to change seq (varint), see ChangeLogDao
+ * deleted:  id (varint)
+ */
+
+public class SnapshotWriter implements Closeable {
+
+    static final byte[] MAGIC = { 'E', 'N', 'S', 'B' };
+    static final int VERSION = 1;
+
+    static final int BLOCK_END = 0;
+    static final int BLOCK_PRIORITIES = 1;
+    static final int BLOCK_LISTS = 2;
+    static final int BLOCK_NOTES = 3;
+    static final int BLOCK_CHANGE_RANGE = 4;
+    static final int BLOCK_DELETED_NOTES = 5;
+    static final int BLOCK_DELETED_LISTS = 6;
+
+    static final int MAX_BLOCK_PAYLOAD = 64 * 1024;  // bytes; block is written once it gets bigger
+
+    private final OutputStream out;
+    private final BlockOutputStream payload = new BlockOutputStream(MAX_BLOCK_PAYLOAD * 2);
+    private final BlockOutputStream blockHeader = new BlockOutputStream(16);
+    private final CRC32 crc = new CRC32();
+    private int blockType = BLOCK_END;
+    private int recordsCount = 0;
+
+    public SnapshotWriter(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    public void writePriority(Priority priority) throws IOException {
+        startRecord(BLOCK_PRIORITIES);
+        payload.writeVarint(priority.id);
+        payload.writeString(priority.name);
+    }
+
+    public void writeList(NotesList list) throws IOException {
+        startRecord(BLOCK_LISTS);
+        payload.writeVarint(list.id);
+        payload.writeString(list.name);
+        payload.write(list.inTrash ? 1 : 0);
+    }
+
+    public void writeNote(Note note) throws IOException {  // text has to be full, see Note.hasFullText()
+        startRecord(BLOCK_NOTES);
+        payload.writeVarint(note.id);
+        payload.writeVarint(note.modificationTime);
+        payload.writeVarint(note.priority.id);
+        payload.writeVarint(note.list.id);
+        payload.write(note.inTrash ? 1 : 0);
+        payload.writeString(note.text);
+    }
+
+    public void writeChangeRange(boolean full, long fromChangeSeq, long toChangeSeq) throws IOException {  // first, so it's found fast
+        startRecord(BLOCK_CHANGE_RANGE);
+        payload.write(full ? 1 : 0);
+        payload.writeVarint(fromChangeSeq);
+        payload.writeVarint(toChangeSeq);
+    }
+
+    public void writeDeletedNote(int noteId) throws IOException {
+        startRecord(BLOCK_DELETED_NOTES);
+        payload.writeVarint(noteId);
+    }
+
+    public void writeDeletedList(int listId) throws IOException {
+        startRecord(BLOCK_DELETED_LISTS);
+        payload.writeVarint(listId);
+    }
+
+    public void finish() throws IOException {  // after the last record
+        if (recordsCount > 0) {
+            writeBlock();
+        }
+        blockType = BLOCK_END;
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void startRecord(int type) throws IOException {
+        if ((type != blockType) || (payload.size() >= MAX_BLOCK_PAYLOAD)) {
+            if (recordsCount > 0) {
+                writeBlock();
+            }
+            blockType = type;
+        }
+        recordsCount++;
+    }
+
+    private void writeBlock() throws IOException {
+        blockHeader.reset();
+        blockHeader.write(blockType);
+        blockHeader.writeVarint(recordsCount);
+        blockHeader.writeVarint(payload.size());
+        crc.reset();
+        blockHeader.updateChecksum(crc);
+        payload.updateChecksum(crc);
+        blockHeader.writeTo(out);
+        payload.writeTo(out);
+        int checksum = (int) crc.getValue();
+        out.write(checksum >>> 24);
+        out.write(checksum >>> 16);
+        out.write(checksum >>> 8);
+        out.write(checksum);
+        payload.reset();
+        recordsCount = 0;
+    }
+}
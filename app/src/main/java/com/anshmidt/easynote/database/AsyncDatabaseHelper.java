@@ -0,0 +1,601 @@
+package com.anshmidt.easynote.database;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+import com.anshmidt.easynote.backup.SnapshotBackup;
+import com.anshmidt.easynote.export.NotesExporter;
+import com.anshmidt.easynote.export.NotesImporter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs DatabaseHelper calls off the main thread and delivers results on the main thread.
+ * Writes run one by one on the writer thread, in the order they were made. Reads run on a small pool
+ * of reader threads; db is in WAL mode, so they use their own connections and don't wait for writes.
+ * A read sees the state committed when its query starts, which may not include writes still queued;
+ * when the writer queue gets empty, observers of InvalidationTracker are told which tables have been changed,
+ * and a checkpoint is scheduled, see DurabilityPolicy.
+ */
+
+public class AsyncDatabaseHelper {
+
+    public interface Callback<T> {
+        void onResult(T result);  // called on the main thread, unless the request was cancelled
+    }
+
+    public static class Request {
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        public void cancel() {  // result won't be delivered; the query is skipped if it hasn't started yet
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static AsyncDatabaseHelper asyncDatabaseHelperInstance;
+    private final DatabaseHelper databaseHelper;
+    private static final int READER_THREADS = 2;  // WAL pool has a few read connections besides the primary one
+    private final ExecutorService writeExecutor;
+    private final ExecutorService readExecutor;
+    private final AtomicInteger pendingWritesCount = new AtomicInteger();
+    private volatile boolean checkpointNeeded = false;  // something was written since the last checkpoint
+    private final LinkedHashSet<Note> autosaveNotes = new LinkedHashSet<>();  // waiting for the queued group commit
+    private boolean autosaveCommitQueued = false;  // guarded by autosaveNotes
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final String LOG_TAG = AsyncDatabaseHelper.class.getSimpleName();
+
+    private AsyncDatabaseHelper(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+        this.writeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), createThreadFactory("EasyNote-db-writer")) {
+            @Override
+            protected void afterExecute(Runnable runnable, Throwable throwable) {
+                if (pendingWritesCount.decrementAndGet() == 0) {  // a burst of writes is reported once, after its last request
+                    dispatchTableChanges();
+                    if (checkpointNeeded) {
+                        scheduleIdleCheckpoint();
+                    }
+                }
+            }
+        };
+        ThreadPoolExecutor readExecutor = new ThreadPoolExecutor(READER_THREADS, READER_THREADS, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), createThreadFactory("EasyNote-db-reader"));
+        readExecutor.allowCoreThreadTimeOut(true);
+        this.readExecutor = readExecutor;
+    }
+
+    private static ThreadFactory createThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger threadsCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name + "-" + threadsCount.incrementAndGet());
+            }
+        };
+    }
+
+    private void dispatchTableChanges() {
+        final Set<String> changedTables;
+        try {
+            changedTables = databaseHelper.takeChangedTables();
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Couldn't check changed tables", e);
+            return;
+        }
+        if (changedTables.isEmpty()) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                databaseHelper.getInvalidationTracker().notifyObservers(changedTables);
+            }
+        });
+    }
+
+    private final Runnable idleCheckpointRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (checkpointNeeded && !hasPendingWrites()) {  // otherwise it's scheduled again when writer gets idle
+                checkpoint(false);
+            }
+        }
+    };
+
+    private void scheduleIdleCheckpoint() {
+        long delayMs = databaseHelper.getDurabilityPolicy().idleCheckpointDelayMs;
+        if (delayMs <= 0) {
+            return;
+        }
+        mainHandler.removeCallbacks(idleCheckpointRunnable);
+        mainHandler.postDelayed(idleCheckpointRunnable, delayMs);
+    }
+
+    /**
+     * Makes everything committed so far durable, e.g. when app goes to background; also runs when writer is idle.
+     */
+    public Request checkpoint(final boolean truncate) {
+        checkpointNeeded = false;  // writes made after this point need the next one
+        mainHandler.removeCallbacks(idleCheckpointRunnable);
+        return submitWrite(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                databaseHelper.checkpoint(truncate);
+                return null;
+            }
+        }, null);
+    }
+
+    public InvalidationTracker getInvalidationTracker() {  //observers are called on the main thread
+        return databaseHelper.getInvalidationTracker();
+    }
+
+    public static synchronized AsyncDatabaseHelper getInstance(Context context) {
+        if (asyncDatabaseHelperInstance == null) {
+            asyncDatabaseHelperInstance = new AsyncDatabaseHelper(DatabaseHelper.getInstance(context));
+        }
+        return asyncDatabaseHelperInstance;
+    }
+
+    /**
+     * True while some writes haven't been committed yet, so a read started now may not see them.
+     */
+    public boolean hasPendingWrites() {
+        return pendingWritesCount.get() > 0;
+    }
+
+    public <T> Request execute(final Callable<T> task, final Callback<T> callback) {  //on the writer thread
+        checkpointNeeded = true;
+        return submitWrite(task, callback);
+    }
+
+    private <T> Request submitWrite(final Callable<T> task, final Callback<T> callback) {
+        pendingWritesCount.incrementAndGet();
+        return submit(writeExecutor, task, callback);
+    }
+
+    public <T> Request executeRead(final Callable<T> task, final Callback<T> callback) {  //mustn't write to db
+        return submit(readExecutor, task, callback);
+    }
+
+    private <T> Request submit(ExecutorService executor, final Callable<T> task, final Callback<T> callback) {
+        final Request request = new Request();
+        request.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled()) {
+                    return;
+                }
+                final T result;
+                try {
+                    result = task.call();
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Database request failed", e);
+                    return;
+                }
+                if (callback == null) {
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.isCancelled()) {
+                            callback.onResult(result);
+                        }
+                    }
+                });
+            }
+        });
+        return request;
+    }
+
+    public Request execute(final Runnable task) {
+        return execute(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                task.run();
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * Runs runnable on the main thread once all writes requested before it are committed, so reads it starts see them.
+     * Doesn't block the caller, even if a long write like import is queued.
+     */
+    public Request runAfterPendingWrites(final Runnable runnable) {
+        return submitWrite(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                return null;
+            }
+        }, new Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                runnable.run();
+            }
+        });
+    }
+
+    public Request getAllNotesFromList(final NotesList list, Callback<ArrayList<Note>> callback) {
+        return executeRead(new Callable<ArrayList<Note>>() {
+            @Override
+            public ArrayList<Note> call() throws Exception {
+                return databaseHelper.getAllNotesFromList(list);
+            }
+        }, callback);
+    }
+
+    /**
+     * Streams notes of the scope to out in the format and closes it, see NotesExporter.
+     * Callback gets number of exported notes, or -1 if writing has failed.
+     */
+    public Request exportNotes(final int scope, final NotesList list, final int format, final Writer out,
+                               Callback<Integer> callback) {
+        return executeRead(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    return new NotesExporter(databaseHelper).export(scope, list, NotesExporter.createWriter(format, out));
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Couldn't export notes", e);
+                    return -1;
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Couldn't close export output", e);
+                    }
+                }
+            }
+        }, callback);
+    }
+
+    /**
+     * Reads notes from in, guessing its format, adds them to db and closes in, see NotesImporter.
+     * Progress callback gets number of notes imported so far; callback gets the total, or -1 if reading has failed.
+     */
+    public Request importNotes(final Reader in, final NotesList defaultList, final Callback<Integer> progressCallback,
+                               Callback<Integer> callback) {
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    BufferedReader bufferedIn = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+                    int format = NotesImporter.detectFormat(bufferedIn);
+                    return new NotesImporter(databaseHelper).importNotes(NotesImporter.createReader(format, bufferedIn),
+                            defaultList, new NotesImporter.ProgressListener() {
+                                @Override
+                                public void onProgress(final int importedCount) {
+                                    mainHandler.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            progressCallback.onResult(importedCount);
+                                        }
+                                    });
+                                }
+                            });
+                } catch (IOException | IllegalStateException e) {  // JsonReader throws the latter on unexpected structure
+                    Log.e(LOG_TAG, "Couldn't import notes", e);
+                    return -1;
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Couldn't close import input", e);
+                    }
+                }
+            }
+        }, callback);
+    }
+
+    /**
+     * Writes changes since the last backup to a delta of the snapshot in file, or the whole snapshot if it's time for it,
+     * see SnapshotBackup.backupChanges(). Callback gets number of written notes, or -1 on failure.
+     */
+    public Request backupSnapshot(final File file, Callback<Integer> callback) {
+        return executeRead(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    SnapshotBackup snapshotBackup = new SnapshotBackup(databaseHelper);
+                    int notesCount = snapshotBackup.backupChanges(file);
+                    final long backedUpChangeSeq = snapshotBackup.getBackedUpChangeSeq();
+                    execute(new Runnable() {  // tombstones are written on the writer thread
+                        @Override
+                        public void run() {
+                            databaseHelper.deleteTombstonesUpTo(backedUpChangeSeq);
+                        }
+                    });
+                    return notesCount;
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Couldn't back up notes", e);
+                    return -1;
+                }
+            }
+        }, callback);
+    }
+
+    /**
+     * Replaces all data with the snapshot in file and its deltas. Callback gets number of restored notes,
+     * or -1 if the snapshot couldn't be read, in which case nothing is changed.
+     */
+    public Request restoreSnapshot(final File file, Callback<Integer> callback) {
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    return new SnapshotBackup(databaseHelper).restore(file);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Couldn't restore notes", e);
+                    return -1;
+                }
+            }
+        }, callback);
+    }
+
+    public Request getListsNotFromTrash(Callback<List<NotesList>> callback) {
+        return executeRead(new Callable<List<NotesList>>() {
+            @Override
+            public List<NotesList> call() throws Exception {
+                List<NotesList> lists = new ArrayList<>();
+                for (NotesList list : databaseHelper.getAllLists()) {
+                    if (!list.inTrash) {
+                        lists.add(list);
+                    }
+                }
+                return lists;
+            }
+        }, callback);
+    }
+
+    /**
+     * Assembles the body of a note that was read only partly, see Note.hasFullText().
+     */
+    public Request getFullText(final Note note, Callback<String> callback) {
+        return executeRead(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return databaseHelper.getFullText(note);
+            }
+        }, callback);
+    }
+
+    public Request getAllNotesFromTrash(Callback<ArrayList<Note>> callback) {
+        return executeRead(new Callable<ArrayList<Note>>() {
+            @Override
+            public ArrayList<Note> call() throws Exception {
+                return databaseHelper.getAllNotesFromTrash();
+            }
+        }, callback);
+    }
+
+    /**
+     * Reads one page of notes, for NotesPager. Key is null for the first page.
+     */
+    public Request getNotesPage(final NotesList list, final NoteKey key, final boolean beforeKey, final int limit,
+                                Callback<ArrayList<Note>> callback) {  //list == null for trash
+        return executeRead(new Callable<ArrayList<Note>>() {
+            @Override
+            public ArrayList<Note> call() throws Exception {
+                if (list == null) {
+                    return beforeKey ? databaseHelper.getNotesFromTrashPageBefore(key, limit)
+                            : databaseHelper.getNotesFromTrashPage(key, limit);
+                } else {
+                    return beforeKey ? databaseHelper.getNotesFromListPageBefore(list, key, limit)
+                            : databaseHelper.getNotesFromListPage(list, key, limit);
+                }
+            }
+        }, callback);
+    }
+
+    public Request getSearchResults(final String searchRequest, final boolean fromTrash, Callback<ArrayList<Note>> callback) {
+        return executeRead(new Callable<ArrayList<Note>>() {
+            @Override
+            public ArrayList<Note> call() throws Exception {
+                if (fromTrash) {
+                    return databaseHelper.getSearchResultsFromTrash(searchRequest);
+                } else {
+                    return databaseHelper.getSearchResultsFromAllLists(searchRequest);
+                }
+            }
+        }, callback);
+    }
+
+    public Request getNotesByIds(final int[] noteIds, final boolean fromTrash, Callback<ArrayList<Note>> callback) {
+        return executeRead(new Callable<ArrayList<Note>>() {
+            @Override
+            public ArrayList<Note> call() throws Exception {
+                return databaseHelper.getNotesByIds(noteIds, fromTrash);
+            }
+        }, callback);
+    }
+
+    public Request addNote(final Note note, Callback<Integer> callback) {  //callback gets note.id, which is set by then
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return databaseHelper.addNote(note);
+            }
+        }, callback);
+    }
+
+    public Request updateNote(final Note note) {
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                databaseHelper.updateNote(note);
+            }
+        });
+    }
+
+    /**
+     * Group commit for autosave: notes saved while a commit is still queued join it, so a burst of saves
+     * is one transaction, see DurabilityPolicy.AUTOSAVE.
+     */
+    public void updateNotes(Collection<Note> notes) {
+        synchronized (autosaveNotes) {
+            autosaveNotes.addAll(notes);
+            if (autosaveCommitQueued) {
+                return;
+            }
+            autosaveCommitQueued = true;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                commitAutosaveNotes();
+            }
+        });
+    }
+
+    private void commitAutosaveNotes() {  //on the writer thread
+        ArrayList<Note> notes;
+        synchronized (autosaveNotes) {
+            notes = new ArrayList<>(autosaveNotes);
+            autosaveNotes.clear();
+            autosaveCommitQueued = false;
+        }
+        if (!notes.isEmpty()) {
+            databaseHelper.updateNotes(notes);
+        }
+    }
+
+    public Request moveNoteToTrash(final Note note) {
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                databaseHelper.moveNoteToTrash(note);
+            }
+        });
+    }
+
+    public Request moveNoteToAnotherList(final Note note, final NotesList destinationList) {
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                databaseHelper.moveNoteToAnotherList(note, destinationList);
+            }
+        });
+    }
+
+    public Request moveListToTrash(final NotesList list) {  //with all its notes
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                databaseHelper.moveListWithNotesToTrash(list);
+            }
+        });
+    }
+
+    public Request restoreListWithNotes(final NotesList list, Callback<Integer> callback) {
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return databaseHelper.restoreListWithNotes(list);
+            }
+        }, callback);
+    }
+
+    public Request moveNotesToAnotherList(final int[] noteIds, final NotesList destinationList, Callback<Integer> callback) {
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return databaseHelper.moveNotesToAnotherList(noteIds, destinationList);
+            }
+        }, callback);
+    }
+
+    public Request changePriorityOfNotes(final int[] noteIds, final Priority priority, Callback<Integer> callback) {
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return databaseHelper.changePriorityOfNotes(noteIds, priority);
+            }
+        }, callback);
+    }
+
+    public Request addList(final NotesList list, Callback<Integer> callback) {  //callback gets list id
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return databaseHelper.addList(list);
+            }
+        }, callback);
+    }
+
+    public Request updateList(final NotesList list) {
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                databaseHelper.updateList(list);
+            }
+        });
+    }
+
+    public Request putNoteBackFromTrash(final Note note) {  //note is already taken out of trash; restores its list too, if it's in trash
+        final int listId = note.list.id;
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                NotesList list = databaseHelper.getListById(listId);  // a copy of its own, note.list stays as it is
+                if ((list != null) && list.inTrash) {
+                    list.inTrash = false;
+                    databaseHelper.updateList(list);
+                }
+                databaseHelper.updateNote(note);
+            }
+        });
+    }
+
+    public Request emptyTrash(Callback<Integer> callback) {  //returns number of deleted notes
+        return execute(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int deletedCount = databaseHelper.purgeTrash();
+                Log.d(LOG_TAG, "Notes deleted from trash: " + deletedCount);
+                return deletedCount;
+            }
+        }, callback);
+    }
+
+    public Request deleteAllEmptyNotes() {
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                databaseHelper.deleteAllEmptyNotes();
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+package com.anshmidt.easynote.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records what has changed since an incremental backup. Every insert and update of a note or a list
+ * stamps its change_seq with the next value of one counter; every delete leaves a tombstone with such a value.
+ * Triggers do it, so no write path can miss it. Values only grow, unlike modification time,
+ * which isn't updated on priority change and comes from the file on import.
+ */
+
+public class ChangeLogDao implements TableHelper {
+
+    public static final String COUNTER_TABLE_NAME = "change_counter";
+    public static final String TOMBSTONES_TABLE_NAME = "tombstones";
+    private final String LOG_TAG = ChangeLogDao.class.getSimpleName();
+
+    public static final String KEY_LAST_CHANGE_SEQ = "last_change_seq";
+    public static final String KEY_CHANGE_SEQ = "change_seq";  // the same name in notes and lists
+    public static final String KEY_TABLE_NAME = "table_name";
+    public static final String KEY_ROW_ID = "row_id";
+
+    private static final String[] TRACKED_TABLES = { NotesDao.NOTES_TABLE_NAME, ListsDao.LISTS_TABLE_NAME };
+    private static final String[] TRACKED_TABLE_IDS = { NotesDao.KEY_NOTE_ID, ListsDao.KEY_LIST_ID };
+
+    private static final String NEXT_CHANGE_SEQ = "UPDATE " + COUNTER_TABLE_NAME
+            + " SET " + KEY_LAST_CHANGE_SEQ + " = " + KEY_LAST_CHANGE_SEQ + " + 1; ";
+    private static final String SELECT_LAST_CHANGE_SEQ_SQL = "SELECT " + KEY_LAST_CHANGE_SEQ + " FROM " + COUNTER_TABLE_NAME;
+
+    private SQLiteDatabase db;
+    private StatementCache statementCache;
+
+    public ChangeLogDao(SQLiteDatabase db) {
+        this(db, new StatementCache(db));
+    }
+
+    public ChangeLogDao(SQLiteDatabase db, StatementCache statementCache) {
+        this.db = db;
+        this.statementCache = statementCache;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {  // change_seq columns are created by NotesDao and ListsDao
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + COUNTER_TABLE_NAME + " ("
+                + KEY_LAST_CHANGE_SEQ + " INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + COUNTER_TABLE_NAME + " (" + KEY_LAST_CHANGE_SEQ + ")"
+                + " SELECT 0 WHERE NOT EXISTS (SELECT 1 FROM " + COUNTER_TABLE_NAME + ")");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TOMBSTONES_TABLE_NAME + " ("
+                + KEY_CHANGE_SEQ + " INTEGER PRIMARY KEY, "
+                + KEY_TABLE_NAME + " TEXT, "
+                + KEY_ROW_ID + " INTEGER)");
+        for (int i = 0; i < TRACKED_TABLES.length; i++) {
+            String table = TRACKED_TABLES[i];
+            String id = TRACKED_TABLE_IDS[i];
+            String stampNewRow = "UPDATE " + table + " SET " + KEY_CHANGE_SEQ
+                    + " = (" + SELECT_LAST_CHANGE_SEQ_SQL + ") WHERE " + id + " = new." + id + "; ";
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + getTriggerName(table, "insert")
+                    + " AFTER INSERT ON " + table + " BEGIN " + NEXT_CHANGE_SEQ + stampNewRow + "END");
+            // the stamping update itself sets change_seq, so it doesn't start the trigger again
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + getTriggerName(table, "update")
+                    + " AFTER UPDATE ON " + table
+                    + " WHEN new." + KEY_CHANGE_SEQ + " IS old." + KEY_CHANGE_SEQ
+                    + " BEGIN " + NEXT_CHANGE_SEQ + stampNewRow + "END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + getTriggerName(table, "delete")
+                    + " AFTER DELETE ON " + table + " BEGIN " + NEXT_CHANGE_SEQ
+                    + "INSERT INTO " + TOMBSTONES_TABLE_NAME + " (" + KEY_CHANGE_SEQ + ", " + KEY_TABLE_NAME + ", " + KEY_ROW_ID + ")"
+                    + " SELECT " + KEY_LAST_CHANGE_SEQ + ", '" + table + "', old." + id + " FROM " + COUNTER_TABLE_NAME + "; "
+                    + "END");
+        }
+    }
+
+    private static String getTriggerName(String table, String operation) {
+        return "change_log_" + table + "_after_" + operation;
+    }
+
+    @Override
+    public List<Migration> getMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        migrations.add(new Migration(7) {  // rows written before have no change_seq, the first backup is a full one anyway
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                onCreate(db);
+            }
+        });
+        return migrations;
+    }
+
+    @Override
+    public void drop(SQLiteDatabase db) {
+        for (String table : TRACKED_TABLES) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + getTriggerName(table, "insert"));
+            db.execSQL("DROP TRIGGER IF EXISTS " + getTriggerName(table, "update"));
+            db.execSQL("DROP TRIGGER IF EXISTS " + getTriggerName(table, "delete"));
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + TOMBSTONES_TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + COUNTER_TABLE_NAME);
+    }
+
+    @Override
+    public void fillWithDefaultData(SQLiteDatabase db, Context context) {  // triggers were dropped with notes and lists tables
+        drop(db);
+        onCreate(db);
+    }
+
+    public long getLastChangeSeq() {  // every change committed so far has change_seq up to this one
+        SQLiteStatement selectStatement = statementCache.get(SELECT_LAST_CHANGE_SEQ_SQL);
+        synchronized (selectStatement) {
+            return selectStatement.simpleQueryForLong();
+        }
+    }
+
+    /**
+     * Returns ids of rows of the table deleted with change_seq in (afterSeq, untilSeq], in the order of deletion.
+     */
+    public int[] getDeletedIds(String tableName, long afterSeq, long untilSeq) {
+        Cursor cursor = db.rawQuery("SELECT " + KEY_ROW_ID
+                + " FROM " + TOMBSTONES_TABLE_NAME
+                + " WHERE " + KEY_CHANGE_SEQ + " > ? AND " + KEY_CHANGE_SEQ + " <= ?"
+                + " AND " + KEY_TABLE_NAME + " = ?"
+                + " ORDER BY " + KEY_CHANGE_SEQ,
+                new String[] { String.valueOf(afterSeq), String.valueOf(untilSeq), tableName });
+        try {
+            int[] ids = new int[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getInt(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public int deleteTombstonesUpTo(long changeSeq) {  // once they are in a backup
+        int deletedCount = db.delete(TOMBSTONES_TABLE_NAME, KEY_CHANGE_SEQ + " <= ?",
+                new String[] { String.valueOf(changeSeq) });
+        Log.d(LOG_TAG, "Tombstones deleted: " + deletedCount);
+        return deletedCount;
+    }
+}
@@ -1,15 +1,20 @@
 package com.anshmidt.easynote.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
 import com.anshmidt.easynote.Note;
 import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Ilya Anshmidt on 21.02.2018.
@@ -17,8 +22,22 @@ import java.util.List;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
+    /**
+     * Adds the rows of a backup, see replaceAllData().
+     */
+    public interface RestoreSource {
+        void addRowsTo(RestoreTarget target) throws IOException;
+    }
+
+    public interface RestoreTarget {  // rows keep their ids
+        void addPriority(Priority priority);
+        void addList(NotesList list);
+        void addNotes(List<Note> notes);
+        boolean deleteNote(int noteId);  // for replaying incremental backups; false if there was no such note
+        void deleteList(int listId);
+    }
 
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 8;
     private static final String DATABASE_NAME = "notes";
     private SQLiteDatabase db;
 
@@ -29,15 +48,28 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private NotesDao notesDao;
     private ListsDao listsDao;
     private PriorityDao priorityDao;
+    private NotesSearchDao notesSearchDao;
+    private NoteChunksDao noteChunksDao;
+    private ChangeLogDao changeLogDao;
+    private StatementCache statementCache;
+    private DimensionCache dimensionCache;
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();  // set up in onOpen()
+    private volatile DurabilityPolicy durabilityPolicy = new DurabilityPolicy();
 
     private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         this.context = context;
+        setWriteAheadLoggingEnabled(true);  //reads get their own connections and don't wait for writes, see AsyncDatabaseHelper
         this.db = this.getWritableDatabase();  //so db is opened only once
+        this.statementCache = new StatementCache(this.db);
+        this.dimensionCache = new DimensionCache(this.db);
 
-        notesDao = new NotesDao(this.db);
-        listsDao = new ListsDao(this.db);
+        notesDao = new NotesDao(this.db, statementCache, dimensionCache);
+        listsDao = new ListsDao(this.db, statementCache);
         priorityDao = new PriorityDao(this.db);
+        notesSearchDao = new NotesSearchDao(this.db, statementCache);
+        noteChunksDao = new NoteChunksDao(this.db, statementCache);
+        changeLogDao = new ChangeLogDao(this.db, statementCache);
     }
 
     public static synchronized DatabaseHelper getInstance(Context context){
@@ -60,22 +92,87 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         notesDao = new NotesDao(db);
         listsDao = new ListsDao(db);
         priorityDao = new PriorityDao(db);
+        notesSearchDao = new NotesSearchDao(db);
+        noteChunksDao = new NoteChunksDao(db);
+        changeLogDao = new ChangeLogDao(db);
 
-        notesDao.onCreate(db);
-        listsDao.onCreate(db);
-        priorityDao.onCreate(db);
+        createTables(db);
         fillDatabaseWithDefaultData(db);
     }
 
+    /**
+     * Creates all tables, indexes and triggers, empty. Tests use it to get the same schema as the app.
+     */
+    static void createTables(SQLiteDatabase db) {
+        new NotesDao(db).onCreate(db);
+        new ListsDao(db).onCreate(db);
+        new PriorityDao(db).onCreate(db);
+        new NotesSearchDao(db).onCreate(db);
+        new NoteChunksDao(db).onCreate(db);
+        new ChangeLogDao(db).onCreate(db);
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {  // is only called when the database file exists but the stored version number is lower than requested
         notesDao = new NotesDao(db);
         listsDao = new ListsDao(db);
         priorityDao = new PriorityDao(db);
+        notesSearchDao = new NotesSearchDao(db);
+        noteChunksDao = new NoteChunksDao(db);
+        changeLogDao = new ChangeLogDao(db);
+
+        Migrations.run(db, oldVersion, newVersion, notesDao, listsDao, priorityDao, notesSearchDao, noteChunksDao, changeLogDao);
+    }
 
-        notesDao.onUpgrade(db);
-        listsDao.onUpgrade(db);
-        priorityDao.onUpgrade(db);
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        invalidationTracker.onOpen(db);
+    }
+
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    Set<String> takeChangedTables() {  //see InvalidationTracker
+        return invalidationTracker.takeChangedTables(db);
+    }
+
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy) {
+        this.durabilityPolicy = durabilityPolicy;
+    }
+
+    // every write runs in a transaction of its tier, so it doesn't take synchronous mode left by the previous one
+    private void beginTransaction(int tier) {
+        durabilityPolicy.beginTransaction(db, tier);
+    }
+
+    /**
+     * Copies WAL into db file and syncs it, so saves committed with synchronous=NORMAL are durable too.
+     * Truncate also shrinks the log, e.g. when app goes to background. Has to run outside a transaction.
+     */
+    public void checkpoint(boolean truncate) {
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(" + (truncate ? "TRUNCATE" : "PASSIVE") + ")", null);
+        try {
+            if (cursor.moveToFirst()) {  // busy, frames in log, frames checkpointed
+                Log.d(LOG_TAG, "Checkpoint: busy = " + cursor.getInt(0) + ", frames = " + cursor.getInt(1)
+                        + ", checkpointed = " + cursor.getInt(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (statementCache != null) {
+            statementCache.close();
+        }
+        super.close();
     }
 
     public void fillDatabaseWithDefaultData(SQLiteDatabase db) {
@@ -83,14 +180,41 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         notesDao.fillWithDefaultData(db, context);
         listsDao.fillWithDefaultData(db, context);
         priorityDao.fillWithDefaultData(db, context);
+        notesSearchDao.fillWithDefaultData(db, context);  //indexes the notes added above
+        noteChunksDao.fillWithDefaultData(db, context);  //its trigger was dropped with notes table
+        changeLogDao.fillWithDefaultData(db, context);  //its triggers were dropped with notes and lists tables
     }
 
     public int addNote(Note note) {
-        return notesDao.addNote(note);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int noteId = notesDao.addNote(note);
+            db.setTransactionSuccessful();
+            return noteId;
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    public void addList(NotesList notesList) {
-        listsDao.addList(notesList);
+    public void addNotes(List<Note> notes) {  //in one transaction, for import
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesDao.addNotes(notes);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public int addList(NotesList notesList) {  //returns list id
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int listId = listsDao.addList(notesList);
+            db.setTransactionSuccessful();
+            return listId;
+        } finally {
+            endTransactionOfLists();
+        }
     }
 
     public void performSqlRequest() {  //for debugging
@@ -101,18 +225,148 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 //        return notesDao.getAllNotes();
 //    }
 
+    public ArrayList<Note> getNotesAfterId(int afterId, int limit) {  //all notes in id order, for backup
+        return notesDao.getNotesAfterId(afterId, limit);
+    }
+
+    public List<Priority> getAllPriorities() {
+        return priorityDao.getAllPriorities();
+    }
+
+    public long getLastChangeSeq() {  //see ChangeLogDao
+        return changeLogDao.getLastChangeSeq();
+    }
+
+    public int[] getNoteIdsChangedBetween(long afterSeq, long untilSeq) {
+        return notesDao.getNoteIdsChangedBetween(afterSeq, untilSeq);
+    }
+
+    public ArrayList<Note> getNotesWithTextsByIds(int[] noteIds) {  //trash too, for backup
+        return notesDao.getNotesWithTextsByIds(noteIds);
+    }
+
+    public List<NotesList> getListsChangedBetween(long afterSeq, long untilSeq) {
+        return listsDao.getListsChangedBetween(afterSeq, untilSeq);
+    }
+
+    public int[] getDeletedNoteIds(long afterSeq, long untilSeq) {
+        return changeLogDao.getDeletedIds(NotesDao.NOTES_TABLE_NAME, afterSeq, untilSeq);
+    }
+
+    public int[] getDeletedListIds(long afterSeq, long untilSeq) {
+        return changeLogDao.getDeletedIds(ListsDao.LISTS_TABLE_NAME, afterSeq, untilSeq);
+    }
+
+    public void deleteTombstonesUpTo(long changeSeq) {  //once a backup has them; losing this write costs nothing
+        beginTransaction(DurabilityPolicy.AUTOSAVE);
+        try {
+            changeLogDao.deleteTombstonesUpTo(changeSeq);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes all notes, lists and priorities and lets source add the backed up ones, in one transaction,
+     * so if source fails, db stays as it was. Search index is dropped before the deletes and created empty
+     * before the restored rows, so the old rows aren't removed from it one by one.
+     * Restored rows get new change_seq values, so the next incremental backup has all of them.
+     */
+    public void replaceAllData(RestoreSource source) throws IOException {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesSearchDao.drop(db);
+            notesDao.deleteAllNotes();
+            listsDao.deleteAllLists();
+            priorityDao.deleteAllPriorities();
+            notesSearchDao.onCreate(db);  // restored notes are indexed as they are added, chunked ones by NotesDao
+            source.addRowsTo(new RestoreTarget() {
+                @Override
+                public void addPriority(Priority priority) {
+                    priorityDao.addPriorityKeepingId(priority);
+                }
+
+                @Override
+                public void addList(NotesList list) {
+                    listsDao.addListKeepingId(list);
+                }
+
+                @Override
+                public void addNotes(List<Note> notes) {
+                    notesDao.addNotesKeepingIds(notes);
+                }
+
+                @Override
+                public boolean deleteNote(int noteId) {
+                    return notesDao.deleteNoteById(noteId);
+                }
+
+                @Override
+                public void deleteList(int listId) {
+                    listsDao.deleteList(listId);
+                }
+            });
+            // deletes above left them, but rows are restored as they are in the backup
+            changeLogDao.deleteTombstonesUpTo(Long.MAX_VALUE);
+            db.setTransactionSuccessful();
+        } finally {
+            endTransactionOfLists();
+        }
+    }
+
+    private void endTransactionOfLists() {  //lists are invalidated after commit, so a reader can't cache the ones it saw before it
+        db.endTransaction();
+        dimensionCache.invalidateLists();
+    }
+
     public ArrayList<Note> getAllNotesFromList(NotesList list) {
         return notesDao.getAllNotesFromList(list);
     }
 
+    public String getFullText(Note note) {
+        if (note.hasFullText()) {
+            return note.text;
+        }
+        return notesDao.getFullText(note);
+    }
+
+    public void loadFullTexts(List<Note> notes) {  //for notes that were read only partly
+        for (Note note : notes) {
+            if (!note.hasFullText()) {
+                note.setLoadedText(notesDao.getFullText(note));
+            }
+        }
+    }
+
     public ArrayList<Note> getAllNotesFromTrash() {
         return notesDao.getAllNotesFromTrash();
     }
 
+    public ArrayList<Note> getNotesFromListPage(NotesList list, NoteKey after, int limit) {
+        return notesDao.getNotesFromListPage(list.id, after, limit);
+    }
+
+    public ArrayList<Note> getNotesFromListPageBefore(NotesList list, NoteKey before, int limit) {
+        return notesDao.getNotesFromListPageBefore(list.id, before, limit);
+    }
+
+    public ArrayList<Note> getNotesFromTrashPage(NoteKey after, int limit) {
+        return notesDao.getNotesFromTrashPage(after, limit);
+    }
+
+    public ArrayList<Note> getNotesFromTrashPageBefore(NoteKey before, int limit) {
+        return notesDao.getNotesFromTrashPageBefore(before, limit);
+    }
+
     public ArrayList<Note> getSearchResultsFromAllLists(String searchRequest) {  //excluding Trash
         return notesDao.getSearchResults(searchRequest, false);
     }
 
+    public ArrayList<Note> getNotesByIds(int[] noteIds, boolean fromTrash) {
+        return notesDao.getNotesByIds(noteIds, fromTrash);
+    }
+
     public ArrayList<Note> getSearchResultsFromTrash(String searchRequest) {
         return notesDao.getSearchResults(searchRequest, true);
     }
@@ -122,30 +376,138 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public void deleteNote(Note note) {
-        notesDao.deleteNote(note);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesDao.deleteNote(note);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
     public void moveNoteToTrash(Note note) {
-        notesDao.moveNoteToTrash(note);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesDao.moveNoteToTrash(note);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
     public void moveListToTrash(NotesList list) {
-        listsDao.moveListToTrash(list);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            listsDao.moveListToTrash(list);
+            db.setTransactionSuccessful();
+        } finally {
+            endTransactionOfLists();
+        }
     }
 
     public void moveNoteToAnotherList(Note noteToMove, NotesList destinationList) {
-        notesDao.moveNoteToAnotherList(noteToMove, destinationList);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesDao.moveNoteToAnotherList(noteToMove, destinationList);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public int moveAllNotesFromListToTrash(NotesList list) {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int movedCount = notesDao.moveAllNotesFromListToTrash(list.id, System.currentTimeMillis());
+            db.setTransactionSuccessful();
+            return movedCount;
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    public void moveAllNotesFromListToTrash(NotesList list) {
-        ArrayList<Note> allNotesFromList = getAllNotesFromList(list);
-        for (int i = 0; i<allNotesFromList.size(); i++) {
-            moveNoteToTrash(allNotesFromList.get(i));
+    // Bulk operations below run in one transaction each and return number of affected notes
+
+    public int moveListWithNotesToTrash(NotesList list) {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            list.inTrash = true;
+            listsDao.setListInTrash(list.id, true);
+            int movedCount = notesDao.moveAllNotesFromListToTrash(list.id, System.currentTimeMillis());
+            db.setTransactionSuccessful();
+            return movedCount;
+        } finally {
+            endTransactionOfLists();
+        }
+    }
+
+    public int restoreListWithNotes(NotesList list) {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            list.inTrash = false;
+            listsDao.setListInTrash(list.id, false);
+            int restoredCount = notesDao.restoreAllNotesOfList(list.id, System.currentTimeMillis());
+            db.setTransactionSuccessful();
+            return restoredCount;
+        } finally {
+            endTransactionOfLists();
+        }
+    }
+
+    public int moveNotesToAnotherList(int[] noteIds, NotesList destinationList) {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int movedCount = notesDao.moveNotesToAnotherList(noteIds, destinationList.id, System.currentTimeMillis());
+            db.setTransactionSuccessful();
+            return movedCount;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public int changePriorityOfNotes(int[] noteIds, Priority priority) {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int changedCount = notesDao.changePriorityOfNotes(noteIds, priority.id);
+            db.setTransactionSuccessful();
+            return changedCount;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public int purgeTrash() {  //deletes trash notes and trash lists
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int deletedCount = notesDao.deleteTrashNotes();
+            listsDao.deleteTrashLists();
+            db.setTransactionSuccessful();
+            return deletedCount;
+        } finally {
+            endTransactionOfLists();
         }
     }
 
     public void updateNote(Note note) {
-        notesDao.updateNote(note);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesDao.updateNote(note);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void updateNotes(Collection<Note> notes) {  //in one transaction, for autosave
+        beginTransaction(DurabilityPolicy.AUTOSAVE);
+        try {
+            for (Note note : notes) {
+                notesDao.updateNote(note);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
     public int getEmptyNotesCountInList(NotesList list) {
@@ -153,15 +515,39 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public void deleteEmptyNotesFromList(NotesList list) {
-        notesDao.deleteEmptyNotesFromList(list);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesDao.deleteEmptyNotesFromList(list);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    public void deleteTrashNotes() {
-        notesDao.deleteTrashNotes();
+    public int deleteTrashNotes() {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int deletedCount = notesDao.deleteTrashNotes();
+            db.setTransactionSuccessful();
+            return deletedCount;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public int deleteTrashLists() {
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            int deletedCount = listsDao.deleteTrashLists();
+            db.setTransactionSuccessful();
+            return deletedCount;
+        } finally {
+            endTransactionOfLists();
+        }
     }
 
-    public void deleteTrashLists() {
-        listsDao.deleteTrashLists();
+    public List<NotesList> getAllLists() {  //including lists from Trash
+        return listsDao.getAllLists();
     }
 
     public List<String> getAllListNames() {
@@ -183,11 +569,23 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public void updateList(NotesList list) {
-        listsDao.updateList(list);
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            listsDao.updateList(list);
+            db.setTransactionSuccessful();
+        } finally {
+            endTransactionOfLists();
+        }
     }
 
     public void deleteAllEmptyNotes() {
-        notesDao.deleteAllEmptyNotes();
+        beginTransaction(DurabilityPolicy.STRUCTURAL);
+        try {
+            notesDao.deleteAllEmptyNotes();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
 }
@@ -35,7 +35,7 @@ public class DefaultData {  // what is in the db when user installs the app
 
     public List<Priority> getDefaultPriorities() {
         defaultPriorities = new ArrayList<>();
-        PriorityInfo priorityInfo = new PriorityInfo(context);
+        PriorityInfo priorityInfo = PriorityInfo.getInstance(context);
         defaultPriorities.add(priorityInfo.IMPORTANT);
         defaultPriorities.add(priorityInfo.NORMAL);
         defaultPriorities.add(priorityInfo.MINOR);
@@ -0,0 +1,59 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.SparseArray;
+
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+import com.anshmidt.easynote.PriorityInfo;
+
+/**
+ * In-memory copy of lists table, so note queries don't have to join lists or priorities.
+ * Every list has one shared instance, which must not be modified by callers.
+ * Lists are reloaded after DatabaseHelper commits changes of lists table; priorities come from PriorityInfo.
+ */
+
+public class DimensionCache {
+
+    private final SQLiteDatabase db;
+    private SparseArray<NotesList> lists;
+
+    public DimensionCache(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    public synchronized NotesList getList(int listId) {
+        if (lists == null) {
+            loadLists();
+        }
+        NotesList list = lists.get(listId);
+        if (list == null) {  // e.g. list was committed after lists were loaded and isn't invalidated yet
+            loadLists();
+            list = lists.get(listId);
+        }
+        if (list == null) {  // e.g. list was deleted; kept until lists are invalidated, so it isn't read again for every note
+            list = new NotesList(listId);
+            lists.put(listId, list);
+        }
+        return list;
+    }
+
+    private void loadLists() {
+        lists = new SparseArray<>();
+        for (NotesList list : new ListsDao(db).getAllLists()) {
+            lists.put(list.id, list);
+        }
+    }
+
+    public Priority getPriority(int priorityId) {
+        Priority priority = PriorityInfo.getInstance().getPriority(priorityId);
+        if (priority == null) {  // unknown id, keep it as is
+            priority = new Priority(priorityId);
+        }
+        return priority;
+    }
+
+    public synchronized void invalidateLists() {
+        lists = null;
+    }
+}
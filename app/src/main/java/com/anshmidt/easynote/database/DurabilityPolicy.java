@@ -0,0 +1,46 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * How hard every kind of write is pushed to disk. In WAL mode synchronous=NORMAL doesn't sync the log on commit,
+ * so a commit is cheap, but the last ones may be lost on power failure (not on app crash); a checkpoint syncs them.
+ * synchronous=FULL syncs the log before commit returns.
+ */
+
+public class DurabilityPolicy {
+
+    // tiers of writes
+    public static final int AUTOSAVE = 0;  // typed text; saves queued together are committed at once, see AsyncDatabaseHelper.updateNotes()
+    public static final int STRUCTURAL = 1;  // trash, move, priority, lists; committed on their own right away
+
+    public static final String SYNCHRONOUS_OFF = "OFF";
+    public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+    public static final String SYNCHRONOUS_FULL = "FULL";
+
+    public String autosaveSynchronous = SYNCHRONOUS_NORMAL;
+    public String structuralSynchronous = SYNCHRONOUS_FULL;
+    public long idleCheckpointDelayMs = 5000;  // checkpoint runs after this much time without writes; 0 turns it off
+
+    private volatile String appliedSynchronous;  // on the primary connection, null until the first write
+
+    public String getSynchronous(int tier) {
+        return (tier == AUTOSAVE) ? autosaveSynchronous : structuralSynchronous;
+    }
+
+    /**
+     * Starts a write transaction of the tier. SQLite doesn't allow changing synchronous inside a transaction,
+     * so the pragma is run before it, and only when the tier needs another level than the previous write.
+     * Outside a transaction a write statement runs on the primary connection, the same one the transaction gets.
+     * Writes are expected on one thread, AsyncDatabaseHelper's writer, so the level can't change in between.
+     * A nested call joins the outer transaction and keeps its level.
+     */
+    public void beginTransaction(SQLiteDatabase db, int tier) {
+        String synchronous = getSynchronous(tier);
+        if (!db.inTransaction() && !synchronous.equals(appliedSynchronous)) {
+            db.execSQL("PRAGMA synchronous = " + synchronous);
+            appliedSynchronous = synchronous;
+        }
+        db.beginTransactionNonExclusive();
+    }
+}
@@ -0,0 +1,113 @@
+package com.anshmidt.easynote.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds out which tables have been written to, so that only queries reading them are run again.
+ * TEMP triggers on tracked tables set a flag in a TEMP table; AsyncDatabaseHelper takes the flags
+ * when its queue gets empty, so a burst of writes is reported once.
+ */
+
+public class InvalidationTracker {
+
+    /**
+     * Called on the main thread when some of the tables it depends on have changed.
+     */
+    public static abstract class Observer {
+        final Set<String> tables;
+
+        public Observer(String... tables) {
+            this.tables = new HashSet<>(Arrays.asList(tables));
+        }
+
+        public abstract void onInvalidated(Set<String> changedTables);
+    }
+
+    static final String[] TRACKED_TABLES = {
+            NotesDao.NOTES_TABLE_NAME, ListsDao.LISTS_TABLE_NAME, PriorityDao.PRIORITY_TABLE_NAME };
+
+    private static final String CHANGES_TABLE_NAME = "temp.table_changes";
+    private static final String KEY_TABLE_NAME = "table_name";
+    private static final String KEY_CHANGED = "changed";
+    private static final String[] TRIGGER_OPERATIONS = { "INSERT", "UPDATE", "DELETE" };
+
+    private SQLiteStatement countChangedStatement;  // db thread only
+    private final ArrayList<Observer> observers = new ArrayList<>();  // main thread only
+    private final String LOG_TAG = InvalidationTracker.class.getSimpleName();
+
+    /**
+     * Creates the TEMP table and triggers. They exist only in this connection, so it's called every time db is opened.
+     */
+    void onOpen(SQLiteDatabase db) {
+        db.execSQL("CREATE TEMP TABLE IF NOT EXISTS table_changes ("
+                + KEY_TABLE_NAME + " TEXT PRIMARY KEY, "
+                + KEY_CHANGED + " INTEGER NOT NULL DEFAULT 0)");
+        for (String table : TRACKED_TABLES) {
+            db.execSQL("INSERT OR IGNORE INTO " + CHANGES_TABLE_NAME + " (" + KEY_TABLE_NAME + ") VALUES ('" + table + "')");
+            for (String operation : TRIGGER_OPERATIONS) {
+                db.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS table_changes_" + table + "_" + operation.toLowerCase()
+                        + " AFTER " + operation + " ON main." + table + " BEGIN "
+                        + "UPDATE table_changes SET " + KEY_CHANGED + " = 1"  // names in trigger body can't be qualified
+                        + " WHERE " + KEY_TABLE_NAME + " = '" + table + "' AND " + KEY_CHANGED + " = 0; "
+                        + "END");
+            }
+        }
+        countChangedStatement = db.compileStatement("SELECT COUNT(*) FROM " + CHANGES_TABLE_NAME
+                + " WHERE " + KEY_CHANGED + " = 1");
+    }
+
+    /**
+     * Returns tables changed since the previous call and resets their flags. Runs on the writer thread.
+     * TEMP objects exist only in the primary connection, and only a transaction is sure to run there, not in a reader one.
+     */
+    Set<String> takeChangedTables(SQLiteDatabase db) {
+        if (countChangedStatement == null) {
+            return Collections.emptySet();
+        }
+        Set<String> changedTables = new HashSet<>();
+        db.beginTransactionNonExclusive();
+        try {
+            if (countChangedStatement.simpleQueryForLong() == 0) {  // usual case, no cursor needed
+                db.setTransactionSuccessful();
+                return changedTables;
+            }
+            Cursor cursor = db.rawQuery("SELECT " + KEY_TABLE_NAME + " FROM " + CHANGES_TABLE_NAME
+                    + " WHERE " + KEY_CHANGED + " = 1", null);
+            while (cursor.moveToNext()) {
+                changedTables.add(cursor.getString(0));
+            }
+            cursor.close();
+            db.execSQL("UPDATE " + CHANGES_TABLE_NAME + " SET " + KEY_CHANGED + " = 0 WHERE " + KEY_CHANGED + " = 1");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return changedTables;
+    }
+
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    void notifyObservers(Set<String> changedTables) {
+        Log.d(LOG_TAG, "Tables changed: " + changedTables);
+        for (Observer observer : new ArrayList<>(observers)) {
+            if (!Collections.disjoint(observer.tables, changedTables)) {
+                observer.onInvalidated(changedTables);
+            }
+        }
+    }
+}
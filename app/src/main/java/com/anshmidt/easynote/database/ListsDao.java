@@ -1,10 +1,11 @@
 package com.anshmidt.easynote.database;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.LabeledIntent;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.anshmidt.easynote.NotesList;
@@ -25,14 +26,35 @@ public class ListsDao implements TableHelper {
     public static final String KEY_LIST_NAME = "list_name";
     public static final String KEY_LIST_ID = NotesDao.KEY_LIST_ID;
     public static final String KEY_IN_TRASH = "in_trash";
+    public static final String KEY_CHANGE_SEQ = ChangeLogDao.KEY_CHANGE_SEQ;  // set by triggers, see ChangeLogDao
+
+    public static final String INDEX_CHANGE_SEQ = "lists_change_seq_idx";
 
     public final int IN_TRASH_TRUE = 1;
     public final int IN_TRASH_FALSE = 0;
 
+    private static final String SELECT_LIST_ID_BY_NAME_SQL = "SELECT " + KEY_LIST_ID
+            + " FROM " + LISTS_TABLE_NAME
+            + " WHERE " + KEY_LIST_NAME + " = ?";
+    private static final String INSERT_LIST_SQL = "INSERT INTO " + LISTS_TABLE_NAME + " ("
+            + KEY_LIST_NAME + ", " + KEY_IN_TRASH + ") VALUES (?, ?)";
+    private static final String INSERT_LIST_WITH_ID_SQL = "INSERT INTO " + LISTS_TABLE_NAME + " ("
+            + KEY_LIST_ID + ", " + KEY_LIST_NAME + ", " + KEY_IN_TRASH + ") VALUES (?, ?, ?)";
+    private static final String UPDATE_LIST_SQL = "UPDATE " + LISTS_TABLE_NAME + " SET "
+            + KEY_LIST_NAME + " = ?, " + KEY_IN_TRASH + " = ? WHERE " + KEY_LIST_ID + " = ?";
+    private static final String SET_LIST_IN_TRASH_SQL = "UPDATE " + LISTS_TABLE_NAME + " SET "
+            + KEY_IN_TRASH + " = ? WHERE " + KEY_LIST_ID + " = ?";
+
     private SQLiteDatabase db;
+    private StatementCache statementCache;
 
     public ListsDao(SQLiteDatabase db) {
+        this(db, new StatementCache(db));
+    }
+
+    public ListsDao(SQLiteDatabase db, StatementCache statementCache) {  // DatabaseHelper invalidates DimensionCache after list writes commit
         this.db = db;
+        this.statementCache = statementCache;
     }
 
 
@@ -43,15 +65,28 @@ public class ListsDao implements TableHelper {
                 + KEY_LIST_ID + " INTEGER PRIMARY KEY, "
                 + KEY_LIST_NAME + " TEXT, "
                 + KEY_IN_TRASH + " INTEGER, "
+                + KEY_CHANGE_SEQ + " INTEGER, "
                 + "FOREIGN KEY(" + KEY_LIST_ID + ") REFERENCES "
                 + NotesDao.NOTES_TABLE_NAME + "(" + KEY_LIST_ID + "))";
         db.execSQL(CREATE_LISTS_TABLE);
+        createChangeSeqIndex(db);
+    }
+
+    private void createChangeSeqIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_CHANGE_SEQ + " ON " + LISTS_TABLE_NAME + " (" + KEY_CHANGE_SEQ + ")");
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db) {
-//        drop(db);
-//        onCreate(db);
+    public List<Migration> getMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        migrations.add(new Migration(7) {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + LISTS_TABLE_NAME + " ADD COLUMN " + KEY_CHANGE_SEQ + " INTEGER");
+                createChangeSeqIndex(db);
+            }
+        });
+        return migrations;
     }
 
     @Override
@@ -67,12 +102,29 @@ public class ListsDao implements TableHelper {
         addLists(defaultData.getDefaultLists());
     }
 
-    public void addList(NotesList notesList) {
-        ContentValues values = new ContentValues();
-        values.put(KEY_LIST_NAME, notesList.name);
-        values.put(KEY_IN_TRASH, notesList.inTrash);
-        db.insert(LISTS_TABLE_NAME, null, values);
+    public int addList(NotesList notesList) {  //returns list id in db
+        return addList(notesList, false);
+    }
+
+    public int addListKeepingId(NotesList notesList) {  //for restoring a backup
+        return addList(notesList, true);
+    }
+
+    private int addList(NotesList notesList, boolean keepId) {
+        SQLiteStatement insertStatement = statementCache.get(keepId ? INSERT_LIST_WITH_ID_SQL : INSERT_LIST_SQL);
+        int listId;
+        synchronized (insertStatement) {
+            int index = 1;
+            if (keepId) {
+                insertStatement.bindLong(index++, notesList.id);
+            }
+            bindText(insertStatement, index++, notesList.name);
+            insertStatement.bindLong(index, notesList.inTrash ? IN_TRASH_TRUE : IN_TRASH_FALSE);
+            listId = (int) insertStatement.executeInsert();
+            insertStatement.clearBindings();
+        }
         Log.d(LOG_TAG, "List inserted: name = " + notesList.name + ", inTrash = " + notesList.inTrash);
+        return listId;
     }
 
     private void addLists(List<NotesList> lists) {
@@ -83,17 +135,16 @@ public class ListsDao implements TableHelper {
 
 
     public int getListIdByName(String listName) {
-        String selectListIdQuery = "SELECT " + KEY_LIST_ID
-                + " FROM " + LISTS_TABLE_NAME
-                + " WHERE " + KEY_LIST_NAME + " = '" + listName + "'";
-        Cursor cursor = db.rawQuery(selectListIdQuery, null);
-
+        SQLiteStatement selectListIdStatement = statementCache.get(SELECT_LIST_ID_BY_NAME_SQL);
         int listId = -1;
-        if (cursor.moveToFirst()) {
-            listId = cursor.getInt(cursor.getColumnIndex(KEY_LIST_ID));
+        synchronized (selectListIdStatement) {
+            selectListIdStatement.bindString(1, listName);
+            try {
+                listId = (int) selectListIdStatement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {  // no such list
+            }
+            selectListIdStatement.clearBindings();
         }
-
-        cursor.close();
         return listId;
     }
 
@@ -102,8 +153,8 @@ public class ListsDao implements TableHelper {
     public NotesList getListById(int id) {
         String selectListQuery = "SELECT " + KEY_LIST_NAME + ", " + KEY_IN_TRASH
                 + " FROM " + LISTS_TABLE_NAME
-                + " WHERE " + KEY_LIST_ID + " = " + id;
-        Cursor cursor = db.rawQuery(selectListQuery, null);
+                + " WHERE " + KEY_LIST_ID + " = ?";
+        Cursor cursor = db.rawQuery(selectListQuery, new String[] { String.valueOf(id) });  // same sql every time, so it's compiled only once
         NotesList list = null;
         if (cursor.moveToFirst()) {
             String listName = cursor.getString(cursor.getColumnIndex(KEY_LIST_NAME));
@@ -116,6 +167,29 @@ public class ListsDao implements TableHelper {
 
 
 
+    public List<NotesList> getAllLists() {  //including lists from Trash
+        return readLists("SELECT " + KEY_LIST_ID + ", " + KEY_LIST_NAME + ", " + KEY_IN_TRASH + " FROM " + LISTS_TABLE_NAME, null);
+    }
+
+    public List<NotesList> getListsChangedBetween(long afterSeq, long untilSeq) {  //change_seq in (afterSeq, untilSeq], trash too
+        return readLists("SELECT " + KEY_LIST_ID + ", " + KEY_LIST_NAME + ", " + KEY_IN_TRASH + " FROM " + LISTS_TABLE_NAME
+                + " WHERE " + KEY_CHANGE_SEQ + " > ? AND " + KEY_CHANGE_SEQ + " <= ?"
+                + " ORDER BY " + KEY_CHANGE_SEQ,
+                new String[] { String.valueOf(afterSeq), String.valueOf(untilSeq) });
+    }
+
+    private List<NotesList> readLists(String query, String[] args) {
+        ArrayList<NotesList> lists = new ArrayList<>();
+        Cursor cursor = db.rawQuery(query, args);
+        if (cursor.moveToFirst()) {
+            do {
+                lists.add(new NotesList(cursor.getInt(0), cursor.getString(1), cursor.getInt(2) == IN_TRASH_TRUE));
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return lists;
+    }
+
     public List<String> getAllListNamesNotFromTrash() {
         ArrayList<String> listNamesList = new ArrayList<>();
         String selectAllListNamesQuery = "SELECT " + KEY_LIST_NAME + " FROM " + LISTS_TABLE_NAME + " WHERE " + KEY_IN_TRASH + " = " + IN_TRASH_FALSE;
@@ -137,11 +211,14 @@ public class ListsDao implements TableHelper {
 
     public void updateList(NotesList list) {
         Log.d(LOG_TAG, "Updating list: id = " + list.id + ", name = '" + list.name + "'");
-        ContentValues values = new ContentValues();
-        values.put(KEY_LIST_NAME, list.name);
-        values.put(KEY_IN_TRASH, list.inTrash);
-        int result = db.update(LISTS_TABLE_NAME, values, KEY_LIST_ID + " = ?",
-                new String[] { String.valueOf(list.id) });
+        SQLiteStatement updateStatement = statementCache.get(UPDATE_LIST_SQL);
+        synchronized (updateStatement) {
+            bindText(updateStatement, 1, list.name);
+            updateStatement.bindLong(2, list.inTrash ? IN_TRASH_TRUE : IN_TRASH_FALSE);
+            updateStatement.bindLong(3, list.id);
+            updateStatement.executeUpdateDelete();
+            updateStatement.clearBindings();
+        }
     }
 
     public void moveListToTrash(NotesList list) {
@@ -149,14 +226,41 @@ public class ListsDao implements TableHelper {
         updateList(list);
     }
 
-    public void deleteTrashLists() {
-        String query = "DELETE FROM " + LISTS_TABLE_NAME + " WHERE " + KEY_IN_TRASH + " = " + IN_TRASH_TRUE;
-        db.execSQL(query);
-        Log.d(LOG_TAG, "All trash lists deleted");
+    public int deleteAllLists() {
+        int deletedCount = db.delete(LISTS_TABLE_NAME, null, null);
+        Log.d(LOG_TAG, "All lists deleted: " + deletedCount);
+        return deletedCount;
     }
 
-    public void deleteList() {
+    public int deleteTrashLists() {  //returns number of deleted lists
+        int deletedCount = db.delete(LISTS_TABLE_NAME, KEY_IN_TRASH + " = " + IN_TRASH_TRUE, null);
+        Log.d(LOG_TAG, "All trash lists deleted: " + deletedCount);
+        return deletedCount;
+    }
+
+    public int setListInTrash(int listId, boolean inTrash) {
+        SQLiteStatement updateStatement = statementCache.get(SET_LIST_IN_TRASH_SQL);
+        int updatedCount;
+        synchronized (updateStatement) {
+            updateStatement.bindLong(1, inTrash ? IN_TRASH_TRUE : IN_TRASH_FALSE);
+            updateStatement.bindLong(2, listId);
+            updatedCount = updateStatement.executeUpdateDelete();
+            updateStatement.clearBindings();
+        }
+        return updatedCount;
+    }
+
+    private static void bindText(SQLiteStatement statement, int index, String text) {
+        if (text == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, text);
+        }
+    }
 
+    public boolean deleteList(int listId) {  //only the list, not its notes; returns false if there was no such list
+        int deletedCount = db.delete(LISTS_TABLE_NAME, KEY_LIST_ID + " = ?", new String[] { String.valueOf(listId) });
+        return deletedCount > 0;
     }
 
 
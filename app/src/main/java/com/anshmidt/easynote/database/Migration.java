@@ -0,0 +1,18 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One schema change of a table. Runs when db is upgraded from a version lower than toVersion.
+ */
+
+public abstract class Migration {
+
+    public final int toVersion;
+
+    public Migration(int toVersion) {
+        this.toVersion = toVersion;
+    }
+
+    public abstract void migrate(SQLiteDatabase db);
+}
@@ -0,0 +1,40 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects migrations of all tables and runs the ones needed to get from oldVersion to newVersion.
+ * Migrations with the same version run in the order tables were passed.
+ */
+
+public class Migrations {
+
+    private static final String LOG_TAG = Migrations.class.getSimpleName();
+
+    public static void run(SQLiteDatabase db, int oldVersion, int newVersion, TableHelper... tableHelpers) {
+        List<Migration> migrations = new ArrayList<>();
+        for (TableHelper tableHelper : tableHelpers) {
+            for (Migration migration : tableHelper.getMigrations()) {
+                if (migration.toVersion > oldVersion && migration.toVersion <= newVersion) {
+                    migrations.add(migration);
+                }
+            }
+        }
+        Collections.sort(migrations, new Comparator<Migration>() {  // sort is stable
+            @Override
+            public int compare(Migration migration1, Migration migration2) {
+                return Integer.compare(migration1.toVersion, migration2.toVersion);
+            }
+        });
+        for (Migration migration : migrations) {
+            Log.d(LOG_TAG, "Running migration to version " + migration.toVersion);
+            migration.migrate(db);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.anshmidt.easynote.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bodies of notes longer than MAX_INLINE_TEXT_LENGTH. Such a body is split into chunks small enough
+ * for one CursorWindow, while notes.text keeps only its beginning, so lists are read fast.
+ * Chunks are deleted together with their note by a trigger.
+ */
+
+public class NoteChunksDao implements TableHelper {
+
+    public static final String CHUNKS_TABLE_NAME = "note_chunks";
+    private final String LOG_TAG = NoteChunksDao.class.getSimpleName();
+
+    public static final String KEY_NOTE_ID = "note_id";
+    public static final String KEY_CHUNK_INDEX = "chunk_index";
+    public static final String KEY_TEXT = "text";
+
+    public static final int MAX_INLINE_TEXT_LENGTH = 4 * 1024;  // chars; longer texts are stored in chunks
+    static final int CHUNK_LENGTH = 256 * 1024;  // chars; up to 768 KB in UTF-8, CursorWindow is 2 MB
+
+    private static final String TRIGGER_AFTER_NOTE_DELETE = "note_chunks_after_note_delete";
+
+    private static final String INSERT_CHUNK_SQL = "INSERT INTO " + CHUNKS_TABLE_NAME + " ("
+            + KEY_NOTE_ID + ", " + KEY_CHUNK_INDEX + ", " + KEY_TEXT + ") VALUES (?, ?, ?)";
+    private static final String REPLACE_CHUNK_SQL = "INSERT OR REPLACE INTO " + CHUNKS_TABLE_NAME + " ("
+            + KEY_NOTE_ID + ", " + KEY_CHUNK_INDEX + ", " + KEY_TEXT + ") VALUES (?, ?, ?)";
+    private static final String DELETE_CHUNKS_SQL = "DELETE FROM " + CHUNKS_TABLE_NAME
+            + " WHERE " + KEY_NOTE_ID + " = ?";
+    private static final String DELETE_CHUNKS_AFTER_SQL = DELETE_CHUNKS_SQL + " AND " + KEY_CHUNK_INDEX + " > ?";
+
+    private SQLiteDatabase db;
+    private StatementCache statementCache;
+
+    public NoteChunksDao(SQLiteDatabase db) {
+        this(db, new StatementCache(db));
+    }
+
+    public NoteChunksDao(SQLiteDatabase db, StatementCache statementCache) {
+        this.db = db;
+        this.statementCache = statementCache;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        String CREATE_CHUNKS_TABLE = "CREATE TABLE IF NOT EXISTS " + CHUNKS_TABLE_NAME + " ("
+                + KEY_NOTE_ID + " INTEGER, "
+                + KEY_CHUNK_INDEX + " INTEGER, "
+                + KEY_TEXT + " TEXT, "
+                + "PRIMARY KEY (" + KEY_NOTE_ID + ", " + KEY_CHUNK_INDEX + "))";
+        db.execSQL(CREATE_CHUNKS_TABLE);
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGER_AFTER_NOTE_DELETE
+                + " AFTER DELETE ON " + NotesDao.NOTES_TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + CHUNKS_TABLE_NAME + " WHERE " + KEY_NOTE_ID + " = old." + NotesDao.KEY_NOTE_ID + "; "
+                + "END");
+    }
+
+    @Override
+    public List<Migration> getMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        migrations.add(new Migration(5) {  // table didn't exist before, all texts were inline
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                onCreate(db);
+            }
+        });
+        return migrations;
+    }
+
+    @Override
+    public void drop(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_AFTER_NOTE_DELETE);
+        db.execSQL("DROP TABLE IF EXISTS " + CHUNKS_TABLE_NAME);
+    }
+
+    @Override
+    public void fillWithDefaultData(SQLiteDatabase db, Context context) {
+        drop(db);
+        onCreate(db);
+    }
+
+    public static boolean isChunked(String text) {
+        return (text != null) && (text.length() > MAX_INLINE_TEXT_LENGTH);
+    }
+
+    public static String getInlineText(String text) {  // what is kept in notes.text
+        return isChunked(text) ? text.substring(0, MAX_INLINE_TEXT_LENGTH) : text;
+    }
+
+    /**
+     * Replaces chunks of the note with the ones of the text. Has to run in the transaction that updates notes.text.
+     */
+    public void writeChunks(int noteId, String text) {
+        SQLiteStatement deleteStatement = statementCache.get(DELETE_CHUNKS_SQL);
+        synchronized (deleteStatement) {
+            deleteStatement.bindLong(1, noteId);
+            deleteStatement.executeUpdateDelete();
+            deleteStatement.clearBindings();
+        }
+        if (!isChunked(text)) {
+            return;
+        }
+        SQLiteStatement insertStatement = statementCache.get(INSERT_CHUNK_SQL);
+        int chunksCount = 0;
+        synchronized (insertStatement) {
+            for (int start = 0; start < text.length(); start += CHUNK_LENGTH) {
+                insertStatement.bindLong(1, noteId);
+                insertStatement.bindLong(2, chunksCount++);
+                insertStatement.bindString(3, text.substring(start, Math.min(start + CHUNK_LENGTH, text.length())));
+                insertStatement.executeInsert();
+            }
+            insertStatement.clearBindings();
+        }
+        Log.d(LOG_TAG, "Text of note " + noteId + " stored in " + chunksCount + " chunk(s)");
+    }
+
+    /**
+     * Rewrites only the chunks which hold chars from changeStart to changeEnd of the new text, and deletes the ones
+     * past its end; the rest are the same as before. Old text has to be chunked too, and the new one must be.
+     */
+    public void writeChangedChunks(int noteId, String text, int changeStart, int changeEnd) {
+        int lastChunkIndex = (text.length() - 1) / CHUNK_LENGTH;
+        int rewrittenCount = 0;
+        if (changeEnd > changeStart) {
+            SQLiteStatement replaceStatement = statementCache.get(REPLACE_CHUNK_SQL);
+            synchronized (replaceStatement) {
+                for (int chunkIndex = changeStart / CHUNK_LENGTH; chunkIndex <= (changeEnd - 1) / CHUNK_LENGTH; chunkIndex++) {
+                    int start = chunkIndex * CHUNK_LENGTH;
+                    replaceStatement.bindLong(1, noteId);
+                    replaceStatement.bindLong(2, chunkIndex);
+                    replaceStatement.bindString(3, text.substring(start, Math.min(start + CHUNK_LENGTH, text.length())));
+                    replaceStatement.executeInsert();
+                    rewrittenCount++;
+                }
+                replaceStatement.clearBindings();
+            }
+        }
+        SQLiteStatement deleteStatement = statementCache.get(DELETE_CHUNKS_AFTER_SQL);
+        synchronized (deleteStatement) {
+            deleteStatement.bindLong(1, noteId);
+            deleteStatement.bindLong(2, lastChunkIndex);
+            deleteStatement.executeUpdateDelete();
+            deleteStatement.clearBindings();
+        }
+        Log.d(LOG_TAG, "Text of note " + noteId + ": " + rewrittenCount + " of " + (lastChunkIndex + 1) + " chunk(s) rewritten");
+    }
+
+    public String readText(int noteId, int textLength) {  //null if the note has no chunks
+        Cursor cursor = db.rawQuery("SELECT " + KEY_TEXT
+                + " FROM " + CHUNKS_TABLE_NAME
+                + " WHERE " + KEY_NOTE_ID + " = ?"
+                + " ORDER BY " + KEY_CHUNK_INDEX, new String[] { String.valueOf(noteId) });
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            StringBuilder text = new StringBuilder(textLength);
+            do {
+                text.append(cursor.getString(0));
+            } while (cursor.moveToNext());
+            return text.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.anshmidt.easynote.database;
+
+import com.anshmidt.easynote.Note;
+
+/**
+ * Place of a note in list order (priority, newest first, then id) or in trash order (newest first, then id).
+ * Pages are read after or before a key through the order indexes, so a page costs the same wherever it is.
+ */
+
+public class NoteKey {
+    public final int priorityId;
+    public final long modificationTime;
+    public final int noteId;
+
+    public NoteKey(int priorityId, long modificationTime, int noteId) {
+        this.priorityId = priorityId;
+        this.modificationTime = modificationTime;
+        this.noteId = noteId;
+    }
+
+    public static NoteKey of(Note note) {
+        return new NoteKey(note.priority.id, note.modificationTime, note.id);
+    }
+
+    public static NoteKey justBefore(Note note) {  // reading after it starts with the note itself
+        return new NoteKey(note.priority.id, note.modificationTime, note.id - 1);
+    }
+}
@@ -4,13 +4,17 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.anshmidt.easynote.Note;
 import com.anshmidt.easynote.NotesList;
 import com.anshmidt.easynote.Priority;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -27,14 +31,84 @@ public class NotesDao implements TableHelper {
     public static final String KEY_IN_TRASH = "in_trash";  // SQLite doesn't have boolean, so it's int
     public static final String KEY_PRIORITY_ID = "priority_id";
     public static final String KEY_LIST_ID = "list_id";
+    public static final String KEY_TEXT_LENGTH = "text_length";  // of the full text, text column may have only its beginning
+    public static final String KEY_PREVIEW = "preview";  // beginning of the text shown in lists, see getPreview()
+    public static final String KEY_CHANGE_SEQ = ChangeLogDao.KEY_CHANGE_SEQ;  // set by triggers, see ChangeLogDao
+
+    public static final String INDEX_LIST_ORDER = "notes_list_order_idx";
+    public static final String INDEX_TRASH_ORDER = "notes_trash_order_idx";
+    public static final String INDEX_CHANGE_SEQ = "notes_change_seq_idx";
+
+    private static final String NOTE_COLUMNS = KEY_NOTE_ID + ", " + KEY_MODIFIED_AT + ", " + KEY_TEXT + ", "
+            + KEY_IN_TRASH + ", " + KEY_PRIORITY_ID + ", " + KEY_LIST_ID + ", " + KEY_TEXT_LENGTH;
+    // for list screens and search results; full text is read when the note is edited
+    private static final String NOTE_PREVIEW_COLUMNS = KEY_NOTE_ID + ", " + KEY_MODIFIED_AT + ", " + KEY_PREVIEW + ", "
+            + KEY_IN_TRASH + ", " + KEY_PRIORITY_ID + ", " + KEY_LIST_ID + ", " + KEY_TEXT_LENGTH;
+
+    public static final int PREVIEW_MAX_LENGTH = 500;  // chars
+    public static final int PREVIEW_MAX_LINES = 12;
 
     public final int IN_TRASH_TRUE = 1;
     public final int IN_TRASH_FALSE = 0;
 
+    // note_id is the last column of every index, so ordering by it too doesn't need sorting
+    private static final String LIST_ORDER = KEY_PRIORITY_ID + " ASC, " + KEY_MODIFIED_AT + " DESC, " + KEY_NOTE_ID + " ASC";
+    private static final String LIST_ORDER_REVERSED = KEY_PRIORITY_ID + " DESC, " + KEY_MODIFIED_AT + " ASC, " + KEY_NOTE_ID + " DESC";
+    private static final String TRASH_ORDER = KEY_MODIFIED_AT + " DESC, " + KEY_NOTE_ID + " ASC";
+    private static final String TRASH_ORDER_REVERSED = KEY_MODIFIED_AT + " ASC, " + KEY_NOTE_ID + " DESC";
+    // rows after/before the key with the same priority; written as a range, so index is used to find the key
+    private static final String AFTER_KEY_IN_TIME_ORDER = KEY_MODIFIED_AT + " <= ? AND NOT ("
+            + KEY_MODIFIED_AT + " = ? AND " + KEY_NOTE_ID + " <= ?)";
+    private static final String BEFORE_KEY_IN_TIME_ORDER = KEY_MODIFIED_AT + " >= ? AND NOT ("
+            + KEY_MODIFIED_AT + " = ? AND " + KEY_NOTE_ID + " >= ?)";
+
+    private static final int MAX_IDS_PER_STATEMENT = 500;  // SQLite allows 999 bound arguments at most
+
+    static final String INSERT_NOTE_SQL = "INSERT INTO " + NOTES_TABLE_NAME + " ("
+            + KEY_MODIFIED_AT + ", " + KEY_TEXT + ", " + KEY_TEXT_LENGTH + ", " + KEY_PREVIEW + ", "
+            + KEY_IN_TRASH + ", " + KEY_PRIORITY_ID + ", " + KEY_LIST_ID
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_NOTE_WITH_ID_SQL = "INSERT INTO " + NOTES_TABLE_NAME + " ("
+            + KEY_NOTE_ID + ", " + KEY_MODIFIED_AT + ", " + KEY_TEXT + ", " + KEY_TEXT_LENGTH + ", " + KEY_PREVIEW + ", "
+            + KEY_IN_TRASH + ", " + KEY_PRIORITY_ID + ", " + KEY_LIST_ID
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    // UPDATE for every combination of changed fields, indexed by Note.FIELD_... bits
+    private static final String[] UPDATE_NOTE_SQL_BY_FIELDS = new String[Note.ALL_FIELDS + 1];
+    static {
+        for (int fields = 1; fields <= Note.ALL_FIELDS; fields++) {
+            UPDATE_NOTE_SQL_BY_FIELDS[fields] = getUpdateNoteSql(fields);
+        }
+    }
+    static final String UPDATE_NOTE_SQL = UPDATE_NOTE_SQL_BY_FIELDS[Note.ALL_FIELDS];
+    private static final String UPDATE_TEXT_LENGTH_SQL = "UPDATE " + NOTES_TABLE_NAME + " SET "
+            + KEY_MODIFIED_AT + " = ?, " + KEY_TEXT_LENGTH + " = ? WHERE " + KEY_NOTE_ID + " = ?";
+    private static final String SELECT_TEXT_LENGTH_SQL = "SELECT " + KEY_TEXT_LENGTH + " FROM " + NOTES_TABLE_NAME
+            + " WHERE " + KEY_NOTE_ID + " = ?";
+    // priority change doesn't count as modification
+    private static final int FIELDS_UPDATING_MODIFICATION_TIME = Note.FIELD_TEXT | Note.FIELD_LIST | Note.FIELD_IN_TRASH;
+    // a chunked text can start with whitespace only
+    private static final String EMPTY_TEXT_SELECTION = "trim(" + KEY_TEXT + ")='' AND "
+            + KEY_TEXT_LENGTH + " <= " + NoteChunksDao.MAX_INLINE_TEXT_LENGTH;
+    // same notes as deleteEmptyNotesFromList() deletes
+    private static final String COUNT_EMPTY_NOTES_IN_LIST_SQL = "SELECT COUNT(" + KEY_NOTE_ID + ") FROM " + NOTES_TABLE_NAME
+            + " WHERE " + EMPTY_TEXT_SELECTION + " AND " + KEY_LIST_ID + " = ?";
+
     private SQLiteDatabase db;
+    private StatementCache statementCache;
+    private DimensionCache dimensionCache;
+    private NoteChunksDao noteChunksDao;
+    private NotesSearchDao notesSearchDao;
 
     public NotesDao(SQLiteDatabase db) {
+        this(db, new StatementCache(db), new DimensionCache(db));
+    }
+
+    public NotesDao(SQLiteDatabase db, StatementCache statementCache, DimensionCache dimensionCache) {
         this.db = db;
+        this.statementCache = statementCache;
+        this.dimensionCache = dimensionCache;
+        this.noteChunksDao = new NoteChunksDao(db, statementCache);
+        this.notesSearchDao = new NotesSearchDao(db, statementCache);
     }
 
     @Override
@@ -45,14 +119,98 @@ public class NotesDao implements TableHelper {
                 + KEY_TEXT + " TEXT, "
                 + KEY_IN_TRASH + " INTEGER, "
                 + KEY_PRIORITY_ID + " INTEGER, "
-                + KEY_LIST_ID + " INTEGER)";
+                + KEY_LIST_ID + " INTEGER, "
+                + KEY_TEXT_LENGTH + " INTEGER, "
+                + KEY_PREVIEW + " TEXT, "
+                + KEY_CHANGE_SEQ + " INTEGER)";
         db.execSQL(CREATE_NOTES_TABLE);
+        createIndexes(db);
+        createChangeSeqIndex(db);
+    }
+
+    private void createIndexes(SQLiteDatabase db) {
+        // column order matches WHERE and ORDER BY of getAllNotesFromList(), so no sorting is needed
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_LIST_ORDER + " ON " + NOTES_TABLE_NAME + " ("
+                + KEY_LIST_ID + ", "
+                + KEY_IN_TRASH + ", "
+                + KEY_PRIORITY_ID + ", "
+                + KEY_MODIFIED_AT + " DESC)");
+        // same for getAllNotesFromTrash()
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_TRASH_ORDER + " ON " + NOTES_TABLE_NAME + " ("
+                + KEY_IN_TRASH + ", "
+                + KEY_MODIFIED_AT + " DESC)");
+    }
+
+    private void createChangeSeqIndex(SQLiteDatabase db) {  // incremental backup reads only the changed range
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_CHANGE_SEQ + " ON " + NOTES_TABLE_NAME + " (" + KEY_CHANGE_SEQ + ")");
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db) {
-//        drop(db);
-//        onCreate(db);
+    public List<Migration> getMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        migrations.add(new Migration(4) {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                createIndexes(db);
+            }
+        });
+        migrations.add(new Migration(5) {  // all texts were stored inline
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + NOTES_TABLE_NAME + " ADD COLUMN " + KEY_TEXT_LENGTH + " INTEGER");
+                db.execSQL("UPDATE " + NOTES_TABLE_NAME + " SET " + KEY_TEXT_LENGTH + " = length(" + KEY_TEXT + ")");
+            }
+        });
+        migrations.add(new Migration(6) {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + NOTES_TABLE_NAME + " ADD COLUMN " + KEY_PREVIEW + " TEXT");
+                fillPreviews(db);
+            }
+        });
+        migrations.add(new Migration(7) {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + NOTES_TABLE_NAME + " ADD COLUMN " + KEY_CHANGE_SEQ + " INTEGER");
+                createChangeSeqIndex(db);
+            }
+        });
+        return migrations;
+    }
+
+    private void fillPreviews(SQLiteDatabase db) {  // line limit can't be expressed in SQL, so it's done here
+        SQLiteStatement updateStatement = db.compileStatement("UPDATE " + NOTES_TABLE_NAME
+                + " SET " + KEY_PREVIEW + " = ? WHERE " + KEY_NOTE_ID + " = ?");
+        Cursor cursor = db.rawQuery("SELECT " + KEY_NOTE_ID + ", " + KEY_TEXT + " FROM " + NOTES_TABLE_NAME, null);
+        try {
+            while (cursor.moveToNext()) {
+                bindText(updateStatement, 1, getPreview(cursor.getString(1)));
+                updateStatement.bindLong(2, cursor.getInt(0));
+                updateStatement.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            updateStatement.close();
+        }
+        Log.d(LOG_TAG, "Previews filled");
+    }
+
+    /**
+     * First PREVIEW_MAX_LINES lines of the text, but not more than PREVIEW_MAX_LENGTH chars.
+     */
+    public static String getPreview(String text) {
+        if (text == null) {
+            return null;
+        }
+        int end = Math.min(text.length(), PREVIEW_MAX_LENGTH);
+        int lineEnd = -1;
+        for (int line = 0; line < PREVIEW_MAX_LINES; line++) {
+            lineEnd = text.indexOf('\n', lineEnd + 1);
+            if ((lineEnd == -1) || (lineEnd >= end)) {
+                return text.substring(0, end);
+            }
+        }
+        return text.substring(0, lineEnd);
     }
 
     @Override
@@ -68,270 +226,496 @@ public class NotesDao implements TableHelper {
         addNotes(defaultData.getDefaultNotes());
     }
 
-    private void addNotes(List<Note> notes) {
+    /**
+     * Inserts notes without logging each of them, e.g. for import. Has to run in a transaction,
+     * otherwise every note is committed on its own.
+     */
+    public void addNotes(List<Note> notes) {
         for (int i = 0; i < notes.size(); i++) {
-            addNote(notes.get(i));
+            insertNote(notes.get(i), false);
         }
+        Log.d(LOG_TAG, "Notes inserted: " + notes.size());
     }
 
-    public int addNote(Note note) {  //returns note.id in db
-        ContentValues values = new ContentValues();
-        values.put(KEY_MODIFIED_AT, note.modificationTime);
-        values.put(KEY_TEXT, note.text);
-        values.put(KEY_IN_TRASH, note.inTrash);
-
-        int priorityId = note.priority.id;
-        if (priorityId == 0) {  //if not initialized
-            PriorityDao priorityDao = new PriorityDao(db);
-            priorityId = priorityDao.getPriorityIdByName(note.priority.name);
+    public void addNotesKeepingIds(List<Note> notes) {  //for restoring a backup, same as addNotes() otherwise
+        for (int i = 0; i < notes.size(); i++) {
+            insertNote(notes.get(i), true);
         }
-        values.put(KEY_PRIORITY_ID, priorityId);
+        Log.d(LOG_TAG, "Notes restored: " + notes.size());
+    }
 
-        int listId = note.list.id;
-        if (listId == 0) {
-            ListsDao listsDao = new ListsDao(db);
-            listId = listsDao.getListIdByName(note.list.name);
+    public int addNote(Note note) {  //returns note.id in db
+        db.beginTransaction();
+        try {
+            insertNote(note, false);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        values.put(KEY_LIST_ID, note.list.id);
-
-        long newNoteId = db.insert(NOTES_TABLE_NAME, null, values);
-        note.id = (int) newNoteId;
         Log.d(LOG_TAG, "Note inserted:");
         note.printContentToLog();
         return note.id;
     }
 
+    private void insertNote(Note note, boolean keepId) {  //with its chunks, so has to run in a transaction
+        note.takeChangedFields();  // all fields are written
+        int priorityId = resolvePriorityId(note);
+        int listId = resolveListId(note);
+        String text = note.text;
+
+        SQLiteStatement insertStatement = statementCache.get(keepId ? INSERT_NOTE_WITH_ID_SQL : INSERT_NOTE_SQL);
+        long newNoteId;
+        synchronized (insertStatement) {
+            int index = 1;
+            if (keepId) {
+                insertStatement.bindLong(index++, note.id);
+            }
+            insertStatement.bindLong(index++, note.modificationTime);
+            bindText(insertStatement, index++, NoteChunksDao.getInlineText(text));
+            insertStatement.bindLong(index++, getLength(text));
+            bindText(insertStatement, index++, getPreview(text));
+            insertStatement.bindLong(index++, note.inTrash ? IN_TRASH_TRUE : IN_TRASH_FALSE);
+            insertStatement.bindLong(index++, priorityId);
+            insertStatement.bindLong(index, listId);
+            newNoteId = insertStatement.executeInsert();
+            insertStatement.clearBindings();
+        }
+        if (NoteChunksDao.isChunked(text)) {
+            noteChunksDao.writeChunks((int) newNoteId, text);
+            notesSearchDao.indexChunkedText((int) newNoteId, text);  // inline texts are indexed by trigger
+        }
+        note.id = (int) newNoteId;
+    }
+
     public Note getNoteById(int id) {
-        String selectNoteQuery = "SELECT "
-                + KEY_NOTE_ID + ", "
-                + KEY_MODIFIED_AT + ", "
-                + KEY_TEXT + ", "
-                + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + ", "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + ", "
-                + PriorityDao.PRIORITY_TABLE_NAME + "." + PriorityDao.KEY_PRIORITY_NAME + ", "
-                + NOTES_TABLE_NAME + "." + KEY_LIST_ID + ", "
-                + ListsDao.LISTS_TABLE_NAME + "." + ListsDao.KEY_LIST_NAME
+        String selectNoteQuery = "SELECT " + NOTE_COLUMNS
                 + " FROM " + NOTES_TABLE_NAME
-                + " LEFT OUTER JOIN " + ListsDao.LISTS_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_LIST_ID + " = " + ListsDao.LISTS_TABLE_NAME + "." + KEY_LIST_ID
-                + " LEFT OUTER JOIN " + PriorityDao.PRIORITY_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " = " + PriorityDao.PRIORITY_TABLE_NAME + "." + KEY_PRIORITY_ID
-                + " WHERE " + NOTES_TABLE_NAME + "." + KEY_NOTE_ID + " = " + id
-                + " ORDER BY "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " ASC, "
-                + KEY_MODIFIED_AT + " DESC";
-        Cursor cursor = db.rawQuery(selectNoteQuery, null);
-        Note note = null;
-        if (cursor.moveToFirst()) {
-            int noteId = cursor.getInt(0);
-            long noteModificationTime = cursor.getLong(1);
-            String noteText = cursor.getString(2);
-            boolean noteInTrash = cursor.getInt(3) == IN_TRASH_TRUE;
-            int notePriorityId = cursor.getInt(4);
-            String priorityName = cursor.getString(5);
-            Priority notePriority = new Priority(notePriorityId, priorityName);
-
-            int noteListId = cursor.getInt(6);
-            String noteListName = cursor.getString(7);
-            NotesList list = new NotesList(noteListId, noteListName);
-
-            note = new Note(noteId, noteModificationTime, noteText, noteInTrash, notePriority, list);
-
-            Log.d(LOG_TAG, "getNote(): ");
-            note.printContentToLog();
+                + " WHERE " + KEY_NOTE_ID + " = ?";
+        Cursor cursor = db.rawQuery(selectNoteQuery, new String[] { String.valueOf(id) });
+        ArrayList<Note> notes = readNotesWithCursor(cursor);
+        if (notes.isEmpty()) {
+            return null;
         }
-        cursor.close();
+        Note note = notes.get(0);
+        Log.d(LOG_TAG, "getNote(): ");
+        note.printContentToLog();
         return note;
     }
 
     public ArrayList<Note> getAllNotes() {
-        String selectAllNotesQuery = "SELECT "
-                + KEY_NOTE_ID + ", "
-                + KEY_MODIFIED_AT + ", "
-                + KEY_TEXT + ", "
-                + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + ", "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + ", "
-                + PriorityDao.PRIORITY_TABLE_NAME + "." + PriorityDao.KEY_PRIORITY_NAME + ", "
-                + NOTES_TABLE_NAME + "." + KEY_LIST_ID + ", "
-                + ListsDao.LISTS_TABLE_NAME + "." + ListsDao.KEY_LIST_NAME
+        String selectAllNotesQuery = "SELECT " + NOTE_COLUMNS
                 + " FROM " + NOTES_TABLE_NAME
-                + " LEFT OUTER JOIN " + ListsDao.LISTS_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_LIST_ID + " = " + ListsDao.LISTS_TABLE_NAME + "." + KEY_LIST_ID
-                + " LEFT OUTER JOIN " + PriorityDao.PRIORITY_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " = " + PriorityDao.PRIORITY_TABLE_NAME + "." + KEY_PRIORITY_ID
                 + " ORDER BY "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " ASC, "
+                + KEY_PRIORITY_ID + " ASC, "
                 + KEY_MODIFIED_AT + " DESC";
 
         Cursor cursor = db.rawQuery(selectAllNotesQuery, null);
-        ArrayList<Note> notesList = new ArrayList<>();
-        if (cursor.moveToFirst()) {
-            do {
-                int noteId = cursor.getInt(0);
-                long noteModificationTime = cursor.getLong(1);
-                String noteText = cursor.getString(2);
-                boolean noteInTrash = cursor.getInt(3) == IN_TRASH_TRUE;
-                int notePriorityId = cursor.getInt(4);
-                String priorityName = cursor.getString(5);
-                Priority notePriority = new Priority(notePriorityId, priorityName);
+        ArrayList<Note> notesList = readNotesWithCursor(cursor);
+        for (Note note : notesList) {
+            Log.d(LOG_TAG, "getAllNotes(): note: ");
+            note.printContentToLog();
+        }
+        return notesList;
+    }
 
-                int noteListId = cursor.getInt(6);
-                String noteListName = cursor.getString(7);
-                NotesList list = new NotesList(noteListId, noteListName);
+    public ArrayList<Note> getNotesAfterId(int afterId, int limit) {  // in id order, trash too; texts longer than MAX_INLINE_TEXT_LENGTH are partial
+        Cursor cursor = db.rawQuery("SELECT " + NOTE_COLUMNS
+                + " FROM " + NOTES_TABLE_NAME
+                + " WHERE " + KEY_NOTE_ID + " > ?"
+                + " ORDER BY " + KEY_NOTE_ID
+                + " LIMIT " + limit, new String[] { String.valueOf(afterId) });
+        return readNotesWithCursor(cursor);
+    }
 
-                Note note = new Note(noteId, noteModificationTime, noteText, noteInTrash, notePriority, list);
+    public int[] getNoteIdsChangedBetween(long afterSeq, long untilSeq) {  // change_seq in (afterSeq, untilSeq], in change order
+        Cursor cursor = db.rawQuery("SELECT " + KEY_NOTE_ID
+                + " FROM " + NOTES_TABLE_NAME
+                + " WHERE " + KEY_CHANGE_SEQ + " > ? AND " + KEY_CHANGE_SEQ + " <= ?"
+                + " ORDER BY " + KEY_CHANGE_SEQ,
+                new String[] { String.valueOf(afterSeq), String.valueOf(untilSeq) });
+        try {
+            int[] noteIds = new int[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                noteIds[i] = cursor.getInt(0);
+            }
+            return noteIds;
+        } finally {
+            cursor.close();
+        }
+    }
 
-                notesList.add(note);
-                Log.d(LOG_TAG, "getAllNotes(): note: ");
-                note.printContentToLog();
-            } while (cursor.moveToNext());
+    public ArrayList<Note> getAllNotesFromList(NotesList fromThisList) {
+        Cursor cursor = db.rawQuery(getAllNotesFromListQuery(),
+                new String[] { String.valueOf(fromThisList.id) });
+        return readNotesWithCursor(cursor);
+    }
+
+    String getAllNotesFromListQuery() {
+        return "SELECT " + NOTE_COLUMNS
+                + " FROM " + NOTES_TABLE_NAME
+                + " WHERE " + KEY_LIST_ID + " = ?"
+                + " AND " + KEY_IN_TRASH + " = " + IN_TRASH_FALSE
+                + " ORDER BY " + LIST_ORDER;
+    }
+
+    public ArrayList<Note> getNotesFromListPage(int listId, NoteKey after, int limit) {  // after == null for the first page
+        String[] args = new String[] { String.valueOf(listId) };
+        if (after == null) {
+            return getNotesPage(getNotesFromListSelection(), args, LIST_ORDER, limit);
         }
-        cursor.close();
+        // rest of the key's priority, then the next priorities
+        ArrayList<Note> notes = getNotesPage(getNotesFromListSelection() + " AND " + KEY_PRIORITY_ID + " = ? AND " + AFTER_KEY_IN_TIME_ORDER,
+                getListKeyArgs(listId, after), LIST_ORDER, limit);
+        if (notes.size() < limit) {
+            notes.addAll(getNotesPage(getNotesFromListSelection() + " AND " + KEY_PRIORITY_ID + " > ?",
+                    new String[] { args[0], String.valueOf(after.priorityId) }, LIST_ORDER, limit - notes.size()));
+        }
+        return notes;
+    }
 
-        return notesList;
+    public ArrayList<Note> getNotesFromListPageBefore(int listId, NoteKey before, int limit) {  // in list order
+        String[] args = new String[] { String.valueOf(listId) };
+        ArrayList<Note> notes = getNotesPage(getNotesFromListSelection() + " AND " + KEY_PRIORITY_ID + " = ? AND " + BEFORE_KEY_IN_TIME_ORDER,
+                getListKeyArgs(listId, before), LIST_ORDER_REVERSED, limit);
+        if (notes.size() < limit) {
+            notes.addAll(getNotesPage(getNotesFromListSelection() + " AND " + KEY_PRIORITY_ID + " < ?",
+                    new String[] { args[0], String.valueOf(before.priorityId) }, LIST_ORDER_REVERSED, limit - notes.size()));
+        }
+        Collections.reverse(notes);
+        return notes;
     }
 
-    public ArrayList<Note> getAllNotesFromList(NotesList fromThisList) {
-        String selectAllNotesQuery = "SELECT "
-                + KEY_NOTE_ID + ", "
-                + KEY_MODIFIED_AT + ", "
-                + KEY_TEXT + ", "
-                + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + ", "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + ", "
-                + PriorityDao.PRIORITY_TABLE_NAME + "." + PriorityDao.KEY_PRIORITY_NAME + ", "
-                + NOTES_TABLE_NAME + "." + KEY_LIST_ID + ", "
-                + ListsDao.LISTS_TABLE_NAME + "." + ListsDao.KEY_LIST_NAME
+    public ArrayList<Note> getNotesFromTrashPage(NoteKey after, int limit) {  // after == null for the first page
+        String selection = KEY_IN_TRASH + " = " + IN_TRASH_TRUE;
+        if (after == null) {
+            return getNotesPage(selection, null, TRASH_ORDER, limit);
+        }
+        return getNotesPage(selection + " AND " + AFTER_KEY_IN_TIME_ORDER,
+                getTrashKeyArgs(after), TRASH_ORDER, limit);
+    }
+
+    public ArrayList<Note> getNotesFromTrashPageBefore(NoteKey before, int limit) {  // in trash order
+        ArrayList<Note> notes = getNotesPage(KEY_IN_TRASH + " = " + IN_TRASH_TRUE + " AND " + BEFORE_KEY_IN_TIME_ORDER,
+                getTrashKeyArgs(before), TRASH_ORDER_REVERSED, limit);
+        Collections.reverse(notes);
+        return notes;
+    }
+
+    private String getNotesFromListSelection() {  // takes list id argument
+        return KEY_LIST_ID + " = ? AND " + KEY_IN_TRASH + " = " + IN_TRASH_FALSE;
+    }
+
+    private String[] getListKeyArgs(int listId, NoteKey key) {  // for list selection, priority and ..._KEY_IN_TIME_ORDER
+        String modificationTime = String.valueOf(key.modificationTime);
+        return new String[] { String.valueOf(listId), String.valueOf(key.priorityId),
+                modificationTime, modificationTime, String.valueOf(key.noteId) };
+    }
+
+    private String[] getTrashKeyArgs(NoteKey key) {  // for ..._KEY_IN_TIME_ORDER
+        String modificationTime = String.valueOf(key.modificationTime);
+        return new String[] { modificationTime, modificationTime, String.valueOf(key.noteId) };
+    }
+
+    private String getNotesPageQuery(String selection, String orderBy, int limit) {
+        return "SELECT " + NOTE_PREVIEW_COLUMNS
                 + " FROM " + NOTES_TABLE_NAME
-                + " LEFT OUTER JOIN " + ListsDao.LISTS_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_LIST_ID + " = " + ListsDao.LISTS_TABLE_NAME + "." + KEY_LIST_ID
-                + " LEFT OUTER JOIN " + PriorityDao.PRIORITY_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " = " + PriorityDao.PRIORITY_TABLE_NAME + "." + KEY_PRIORITY_ID
-                + " WHERE " + ListsDao.LISTS_TABLE_NAME + "." + ListsDao.KEY_LIST_ID + " = " + fromThisList.id
-                + " AND " + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + " = " + IN_TRASH_FALSE
-                + " ORDER BY "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " ASC, "
-                + KEY_MODIFIED_AT + " DESC";
+                + " WHERE " + selection
+                + " ORDER BY " + orderBy
+                + " LIMIT " + limit;
+    }
 
-        Cursor cursor = db.rawQuery(selectAllNotesQuery, null);
+    private ArrayList<Note> getNotesPage(String selection, String[] args, String orderBy, int limit) {
+        Cursor cursor = db.rawQuery(getNotesPageQuery(selection, orderBy, limit), args);
         return readNotesWithCursor(cursor);
     }
 
 
     public ArrayList<Note> getSearchResults(String searchRequest, boolean fromTrash) {
-        String selectNotesBySearchRequestQuery = "SELECT "
-                + KEY_NOTE_ID + ", "
-                + KEY_MODIFIED_AT + ", "
-                + KEY_TEXT + ", "
-                + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + ", "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + ", "
-                + PriorityDao.PRIORITY_TABLE_NAME + "." + PriorityDao.KEY_PRIORITY_NAME + ", "
-                + NOTES_TABLE_NAME + "." + KEY_LIST_ID + ", "
-                + ListsDao.LISTS_TABLE_NAME + "." + ListsDao.KEY_LIST_NAME
+        String matchQuery = NotesSearchDao.toMatchQuery(searchRequest);
+        if (matchQuery == null) {
+            return new ArrayList<>();
+        }
+        String selectNotesBySearchRequestQuery = "SELECT " + NOTE_PREVIEW_COLUMNS
                 + " FROM " + NOTES_TABLE_NAME
-                + " LEFT OUTER JOIN " + ListsDao.LISTS_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_LIST_ID + " = " + ListsDao.LISTS_TABLE_NAME + "." + KEY_LIST_ID
-                + " LEFT OUTER JOIN " + PriorityDao.PRIORITY_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " = " + PriorityDao.PRIORITY_TABLE_NAME + "." + KEY_PRIORITY_ID
-                + " WHERE " + NOTES_TABLE_NAME + "." + KEY_TEXT + " LIKE '%" + searchRequest + "%'"
-                + " AND " + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + " = " + boolToNumeralString(fromTrash)
-                + " ORDER BY "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " ASC, "
-                + KEY_MODIFIED_AT + " DESC";
+                + " WHERE " + KEY_NOTE_ID + " IN (SELECT docid FROM " + NotesSearchDao.SEARCH_TABLE_NAME
+                + " WHERE " + NotesSearchDao.SEARCH_TABLE_NAME + " MATCH ?)"
+                + " AND " + KEY_IN_TRASH + " = ?"
+                + " ORDER BY " + LIST_ORDER;  // note_id breaks ties, so results come in the same order as in lists
 
-        Cursor cursor = db.rawQuery(selectNotesBySearchRequestQuery, null);
+        Cursor cursor = db.rawQuery(selectNotesBySearchRequestQuery,
+                new String[] { matchQuery, boolToNumeralString(fromTrash) });
         return readNotesWithCursor(cursor);
     }
 
-    public ArrayList<Note> getAllNotesFromTrash() {
-        String selectAllNotesQuery = "SELECT "
-                + KEY_NOTE_ID + ", "
-                + KEY_MODIFIED_AT + ", "
-                + KEY_TEXT + ", "
-                + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + ", "
-                + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + ", "
-                + PriorityDao.PRIORITY_TABLE_NAME + "." + PriorityDao.KEY_PRIORITY_NAME + ", "
-                + NOTES_TABLE_NAME + "." + KEY_LIST_ID + ", "
-                + ListsDao.LISTS_TABLE_NAME + "." + ListsDao.KEY_LIST_NAME
-                + " FROM " + NOTES_TABLE_NAME
-                + " LEFT OUTER JOIN " + ListsDao.LISTS_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_LIST_ID + " = " + ListsDao.LISTS_TABLE_NAME + "." + KEY_LIST_ID
-                + " LEFT OUTER JOIN " + PriorityDao.PRIORITY_TABLE_NAME
-                + " ON " + NOTES_TABLE_NAME + "." + KEY_PRIORITY_ID + " = " + PriorityDao.PRIORITY_TABLE_NAME + "." + KEY_PRIORITY_ID
-                + " WHERE " + NOTES_TABLE_NAME + "." + KEY_IN_TRASH + " = " + IN_TRASH_TRUE
-                + " ORDER BY "
-                + NOTES_TABLE_NAME + "."
-//                + KEY_PRIORITY_ID + " ASC, "
-                + KEY_MODIFIED_AT + " DESC";
+    public ArrayList<Note> getNotesByIds(int[] noteIds, boolean fromTrash) {  // in the same order as ids
+        return getNotesByIds(NOTE_PREVIEW_COLUMNS, noteIds, " AND " + KEY_IN_TRASH + " = " + boolToNumeralString(fromTrash));
+    }
 
-        Cursor cursor = db.rawQuery(selectAllNotesQuery, null);
+    public ArrayList<Note> getNotesWithTextsByIds(int[] noteIds) {  // trash too, for backup; texts longer than MAX_INLINE_TEXT_LENGTH are partial
+        return getNotesByIds(NOTE_COLUMNS, noteIds, "");
+    }
+
+    private ArrayList<Note> getNotesByIds(String columns, int[] noteIds, String extraSelection) {
+        SparseArray<Note> notesById = new SparseArray<>(noteIds.length);
+        for (int from = 0; from < noteIds.length; from += MAX_IDS_PER_STATEMENT) {
+            int to = Math.min(from + MAX_IDS_PER_STATEMENT, noteIds.length);
+            String[] args = new String[to - from];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                args[i - from] = String.valueOf(noteIds[i]);
+                placeholders.append(i == from ? "?" : ", ?");
+            }
+            Cursor cursor = db.rawQuery("SELECT " + columns
+                    + " FROM " + NOTES_TABLE_NAME
+                    + " WHERE " + KEY_NOTE_ID + " IN (" + placeholders + ")" + extraSelection, args);
+            for (Note note : readNotesWithCursor(cursor)) {
+                notesById.put(note.id, note);
+            }
+        }
+        ArrayList<Note> notes = new ArrayList<>(notesById.size());
+        for (int noteId : noteIds) {
+            Note note = notesById.get(noteId);
+            if (note != null) {  // could have been deleted or moved to trash
+                notes.add(note);
+            }
+        }
+        return notes;
+    }
+
+    public ArrayList<Note> getAllNotesFromTrash() {
+        Cursor cursor = db.rawQuery(getAllNotesFromTrashQuery(), null);
         return readNotesWithCursor(cursor);
     }
 
-    private ArrayList<Note> readNotesWithCursor(Cursor cursor) {
-        ArrayList<Note> notesList = new ArrayList<>();
+    String getAllNotesFromTrashQuery() {
+        return "SELECT " + NOTE_PREVIEW_COLUMNS
+                + " FROM " + NOTES_TABLE_NAME
+                + " WHERE " + KEY_IN_TRASH + " = " + IN_TRASH_TRUE
+                + " ORDER BY " + TRASH_ORDER;
+    }
+
+    private ArrayList<Note> readNotesWithCursor(Cursor cursor) {  // cursor has NOTE_COLUMNS or NOTE_PREVIEW_COLUMNS
+        ArrayList<Note> notesList = new ArrayList<>(cursor.getCount());
         if (cursor.moveToFirst()) {
             do {
                 int noteId = cursor.getInt(0);
                 long noteModificationTime = cursor.getLong(1);
                 String noteText = cursor.getString(2);
                 boolean noteInTrash = cursor.getInt(3) == IN_TRASH_TRUE;
-                int notePriorityId = cursor.getInt(4);
-                String priorityName = cursor.getString(5);
-                Priority notePriority = new Priority(notePriorityId, priorityName);
+                Priority notePriority = dimensionCache.getPriority(cursor.getInt(4));  // shared instances, no join needed
+                NotesList list = dimensionCache.getList(cursor.getInt(5));
+                int noteTextLength = cursor.getInt(6);  // longer than noteText if it's a preview or the body is in chunks
 
-                int noteListId = cursor.getInt(6);
-                String noteListName = cursor.getString(7);
-                NotesList list = new NotesList(noteListId, noteListName);
-
-                Note note = new Note(noteId, noteModificationTime, noteText, noteInTrash, notePriority, list);
+                Note note = new Note(noteId, noteModificationTime, noteText, noteTextLength, noteInTrash, notePriority, list);
 
                 notesList.add(note);
-//                Log.d(LOG_TAG, "note: ");
-//                note.printContentToLog();
             } while (cursor.moveToNext());
         }
         cursor.close();
         return notesList;
     }
 
+    /**
+     * Reads the body of a note whose text was only partly read, see Note.hasFullText().
+     */
+    public String getFullText(Note note) {
+        String fullText = null;
+        if (note.textLength > NoteChunksDao.MAX_INLINE_TEXT_LENGTH) {
+            fullText = noteChunksDao.readText(note.id, note.textLength);
+        }
+        if (fullText == null) {  // stored inline, or note was shortened meanwhile
+            Cursor cursor = db.rawQuery("SELECT " + KEY_TEXT + " FROM " + NOTES_TABLE_NAME + " WHERE " + KEY_NOTE_ID + " = ?",
+                    new String[] { String.valueOf(note.id) });
+            if (cursor.moveToFirst()) {
+                fullText = cursor.getString(0);
+            }
+            cursor.close();
+        }
+        return (fullText == null) ? note.text : fullText;  // note was deleted meanwhile
+    }
+
+    /**
+     * Writes only the fields changed through Note setters since the note was read or saved.
+     * If a long text stays long, only the chunks around the changed part are rewritten, see Note.getChangedTextStart(),
+     * and notes.text only if the change reaches into it.
+     */
     public void updateNote(Note note) {
-        Log.d(LOG_TAG, "Updating note:");
+        int changedFields;
+        String text;
+        int changedTextStart;
+        int unchangedTextSuffixLength;
+        synchronized (note) {
+            changedTextStart = note.getChangedTextStart();
+            unchangedTextSuffixLength = note.getUnchangedTextSuffixLength();
+            text = note.text;
+            changedFields = note.takeChangedFields();
+        }
+        if (((changedFields & Note.FIELD_TEXT) != 0) && !note.hasFullText()) {
+            Log.e(LOG_TAG, "Text of note " + note.id + " is not fully loaded, it won't be saved");
+            changedFields &= ~Note.FIELD_TEXT;
+        }
+        if (changedFields == 0) {
+            Log.d(LOG_TAG, "Note " + note.id + " has no changes");
+            return;
+        }
+        Log.d(LOG_TAG, "Updating note, changed fields: " + changedFields);
         note.printContentToLog();
 
-        Note thisNoteBeforeUpdate = getNoteById(note.id);
-        if (shouldModificationTimeBeUpdated(thisNoteBeforeUpdate, note)) {
+        if ((changedFields & FIELDS_UPDATING_MODIFICATION_TIME) != 0) {
             note.modificationTime = System.currentTimeMillis();
         }
 
-        ContentValues values = new ContentValues();
-        values.put(KEY_MODIFIED_AT, note.modificationTime);
-        values.put(KEY_TEXT, note.text);
-        values.put(KEY_IN_TRASH, note.inTrash);
+        boolean updateText = (changedFields & Note.FIELD_TEXT) != 0;
+        int result = 0;
+        if (updateText) {
+            db.beginTransaction();  // notes.text and chunks are changed together
+        }
+        try {
+            int rowFields = changedFields;
+            boolean rewriteChangedChunksOnly = false;
+            if (updateText && NoteChunksDao.isChunked(text)) {
+                int savedTextLength = getSavedTextLength(note.id);
+                rewriteChangedChunksOnly = savedTextLength > NoteChunksDao.MAX_INLINE_TEXT_LENGTH;
+                if (rewriteChangedChunksOnly && (changedTextStart >= NoteChunksDao.MAX_INLINE_TEXT_LENGTH)) {
+                    rowFields &= ~Note.FIELD_TEXT;  // inline text and preview stay as they are
+                    updateTextLength(note, text.length());
+                }
+                if (rewriteChangedChunksOnly) {
+                    int changeStart = Math.min(changedTextStart, text.length() - 1);
+                    int changeEnd = text.length();  // the rest has shifted
+                    if (savedTextLength == text.length()) {
+                        changeEnd = Math.max(changeStart, text.length() - unchangedTextSuffixLength);
+                    }
+                    noteChunksDao.writeChangedChunks(note.id, text, changeStart, changeEnd);
+                }
+            }
+            if (rowFields != 0) {
+                result = updateRow(note, rowFields, text);
+            }
+            if (updateText) {
+                if (!rewriteChangedChunksOnly) {
+                    noteChunksDao.writeChunks(note.id, text);
+                }
+                if (NoteChunksDao.isChunked(text)) {
+                    notesSearchDao.indexChunkedText(note.id, text);
+                }
+                db.setTransactionSuccessful();
+            }
+        } catch (RuntimeException e) {
+            note.markChanged(changedFields);  // to be saved next time
+            throw e;
+        } finally {
+            if (updateText) {
+                db.endTransaction();
+            }
+        }
+        Log.d(LOG_TAG, "Rows updated: " + result);
+    }
+
+    private int updateRow(Note note, int fields, String text) {
+        SQLiteStatement updateStatement = statementCache.get(UPDATE_NOTE_SQL_BY_FIELDS[fields]);
+        synchronized (updateStatement) {
+            int index = 1;  // same order as in getUpdateNoteSql()
+            if ((fields & FIELDS_UPDATING_MODIFICATION_TIME) != 0) {
+                updateStatement.bindLong(index++, note.modificationTime);
+            }
+            if ((fields & Note.FIELD_TEXT) != 0) {
+                bindText(updateStatement, index++, NoteChunksDao.getInlineText(text));
+                updateStatement.bindLong(index++, getLength(text));
+                bindText(updateStatement, index++, getPreview(text));
+            }
+            if ((fields & Note.FIELD_IN_TRASH) != 0) {
+                updateStatement.bindLong(index++, note.inTrash ? IN_TRASH_TRUE : IN_TRASH_FALSE);
+            }
+            if ((fields & Note.FIELD_PRIORITY) != 0) {
+                updateStatement.bindLong(index++, resolvePriorityId(note));
+            }
+            if ((fields & Note.FIELD_LIST) != 0) {
+                updateStatement.bindLong(index++, resolveListId(note));
+            }
+            updateStatement.bindLong(index, note.id);
+            try {
+                return updateStatement.executeUpdateDelete();
+            } finally {
+                updateStatement.clearBindings();
+            }
+        }
+    }
+
+    private void updateTextLength(Note note, int textLength) {  // for a text changed past its inline part
+        SQLiteStatement updateStatement = statementCache.get(UPDATE_TEXT_LENGTH_SQL);
+        synchronized (updateStatement) {
+            updateStatement.bindLong(1, note.modificationTime);
+            updateStatement.bindLong(2, textLength);
+            updateStatement.bindLong(3, note.id);
+            updateStatement.executeUpdateDelete();
+            updateStatement.clearBindings();
+        }
+    }
+
+    private int getSavedTextLength(int noteId) {  // -1 if there is no such note
+        SQLiteStatement selectStatement = statementCache.get(SELECT_TEXT_LENGTH_SQL);
+        synchronized (selectStatement) {
+            selectStatement.bindLong(1, noteId);
+            try {
+                return (int) selectStatement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            } finally {
+                selectStatement.clearBindings();
+            }
+        }
+    }
 
+    private static String getUpdateNoteSql(int changedFields) {
+        StringBuilder columns = new StringBuilder();
+        if ((changedFields & FIELDS_UPDATING_MODIFICATION_TIME) != 0) {
+            columns.append(KEY_MODIFIED_AT).append(" = ?, ");
+        }
+        if ((changedFields & Note.FIELD_TEXT) != 0) {
+            columns.append(KEY_TEXT).append(" = ?, ").append(KEY_TEXT_LENGTH).append(" = ?, ")
+                    .append(KEY_PREVIEW).append(" = ?, ");
+        }
+        if ((changedFields & Note.FIELD_IN_TRASH) != 0) {
+            columns.append(KEY_IN_TRASH).append(" = ?, ");
+        }
+        if ((changedFields & Note.FIELD_PRIORITY) != 0) {
+            columns.append(KEY_PRIORITY_ID).append(" = ?, ");
+        }
+        if ((changedFields & Note.FIELD_LIST) != 0) {
+            columns.append(KEY_LIST_ID).append(" = ?, ");
+        }
+        columns.setLength(columns.length() - 2);  // last ", "
+        return "UPDATE " + NOTES_TABLE_NAME + " SET " + columns + " WHERE " + KEY_NOTE_ID + " = ?";
+    }
+
+    private int resolvePriorityId(Note note) {
         int priorityId = note.priority.id;
         if (priorityId == 0) {  //if not initialized
             PriorityDao priorityDao = new PriorityDao(db);
             priorityId = priorityDao.getPriorityIdByName(note.priority.name);
         }
-        values.put(KEY_PRIORITY_ID, priorityId);
+        return priorityId;
+    }
 
+    private int resolveListId(Note note) {
         int listId = note.list.id;
         if (listId == 0) {
-            ListsDao listsDao = new ListsDao(db);
+            ListsDao listsDao = new ListsDao(db, statementCache);
             listId = listsDao.getListIdByName(note.list.name);
         }
-        values.put(KEY_LIST_ID, listId);
+        return listId;
+    }
 
-        int result = db.update(NOTES_TABLE_NAME, values, KEY_NOTE_ID + " = ?",
-                new String[] { String.valueOf(note.id) });
+    private int getLength(String text) {
+        return (text == null) ? 0 : text.length();
+    }
 
-        //temp: check if note really updated
-        Note thisNoteAfterUpdate = getNoteById(note.id);
-        Log.d(LOG_TAG, "note in db after update:");
-        if (thisNoteAfterUpdate != null) {
-            thisNoteAfterUpdate.printContentToLog();
+    private static void bindText(SQLiteStatement statement, int index, String text) {
+        if (text == null) {
+            statement.bindNull(index);
         } else {
-            Log.d(LOG_TAG, "note in db is null");
+            statement.bindString(index, text);
         }
     }
 
@@ -342,59 +726,99 @@ public class NotesDao implements TableHelper {
         note.printContentToLog();
     }
 
+    public boolean deleteNoteById(int noteId) {  //returns false if there was no such note
+        return db.delete(NOTES_TABLE_NAME, KEY_NOTE_ID + " = ?", new String[] { String.valueOf(noteId) }) > 0;
+    }
+
     public int getEmptyNotesCountInList(NotesList list) {
-        String query = "SELECT COUNT(" + KEY_NOTE_ID + ") FROM " + NOTES_TABLE_NAME + " WHERE " + KEY_TEXT + " = '' AND " + KEY_LIST_ID + " = " + list.id;
-        Cursor cursor = db.rawQuery(query, null);
-        int emptyNotesCount = -1;
-        if (cursor.moveToFirst()) {
-            emptyNotesCount = cursor.getInt(0);
+        SQLiteStatement countStatement = statementCache.get(COUNT_EMPTY_NOTES_IN_LIST_SQL);
+        int emptyNotesCount;
+        synchronized (countStatement) {
+            countStatement.bindLong(1, list.id);
+            emptyNotesCount = (int) countStatement.simpleQueryForLong();
+            countStatement.clearBindings();
         }
-        cursor.close();
         Log.d(LOG_TAG, "Empty notes count: " + emptyNotesCount);
         return emptyNotesCount;
     }
 
     public void deleteEmptyNotesFromList(NotesList list) {
         getEmptyNotesCountInList(list);
-        String query = "DELETE FROM " + NOTES_TABLE_NAME + " WHERE trim(" + KEY_TEXT + ")='' AND " + KEY_LIST_ID + " = " + list.id;
+        String query = "DELETE FROM " + NOTES_TABLE_NAME + " WHERE " + EMPTY_TEXT_SELECTION + " AND " + KEY_LIST_ID + " = " + list.id;
         db.execSQL(query);
         getEmptyNotesCountInList(list);
     }
 
-    public void deleteTrashNotes() {
-        String query = "DELETE FROM " + NOTES_TABLE_NAME + " WHERE " + KEY_IN_TRASH + " = " + IN_TRASH_TRUE;
-        db.execSQL(query);
-        Log.d(LOG_TAG, "All trash notes deleted");
+    public int deleteAllNotes() {  //chunks are deleted by trigger
+        int deletedCount = db.delete(NOTES_TABLE_NAME, null, null);
+        Log.d(LOG_TAG, "All notes deleted: " + deletedCount);
+        return deletedCount;
+    }
+
+    public int deleteTrashNotes() {  //returns number of deleted notes
+        int deletedCount = db.delete(NOTES_TABLE_NAME, KEY_IN_TRASH + " = " + IN_TRASH_TRUE, null);
+        Log.d(LOG_TAG, "All trash notes deleted: " + deletedCount);
+        return deletedCount;
+    }
+
+    public int moveAllNotesFromListToTrash(int listId, long modificationTime) {  //returns number of moved notes
+        return setInTrashForAllNotesFromList(listId, true, modificationTime);
+    }
+
+    public int restoreAllNotesOfList(int listId, long modificationTime) {
+        return setInTrashForAllNotesFromList(listId, false, modificationTime);
+    }
+
+    private int setInTrashForAllNotesFromList(int listId, boolean inTrash, long modificationTime) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_IN_TRASH, inTrash);
+        values.put(KEY_MODIFIED_AT, modificationTime);
+        return db.update(NOTES_TABLE_NAME, values,
+                KEY_LIST_ID + " = ? AND " + KEY_IN_TRASH + " = ?",
+                new String[] { String.valueOf(listId), boolToNumeralString(!inTrash) });
+    }
+
+    public int moveNotesToAnotherList(int[] noteIds, int destinationListId, long modificationTime) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_LIST_ID, destinationListId);
+        values.put(KEY_MODIFIED_AT, modificationTime);
+        return updateNotesByIds(values, noteIds);
+    }
+
+    public int changePriorityOfNotes(int[] noteIds, int priorityId) {  // priority change doesn't update modification time
+        ContentValues values = new ContentValues();
+        values.put(KEY_PRIORITY_ID, priorityId);
+        return updateNotesByIds(values, noteIds);
+    }
+
+    private int updateNotesByIds(ContentValues values, int[] noteIds) {
+        int updatedCount = 0;
+        for (int from = 0; from < noteIds.length; from += MAX_IDS_PER_STATEMENT) {
+            int to = Math.min(from + MAX_IDS_PER_STATEMENT, noteIds.length);
+            String[] args = new String[to - from];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                args[i - from] = String.valueOf(noteIds[i]);
+                placeholders.append(i == from ? "?" : ", ?");
+            }
+            updatedCount += db.update(NOTES_TABLE_NAME, values,
+                    KEY_NOTE_ID + " IN (" + placeholders + ")", args);
+        }
+        return updatedCount;
     }
 
     public void moveNoteToTrash(Note note) {
-        note.inTrash = true;
+        note.setInTrash(true);
         updateNote(note);
     }
 
     public void moveNoteToAnotherList(Note noteToMove, NotesList destinationList) {
-        noteToMove.list.id = destinationList.id;
+        noteToMove.setList(destinationList);  // note.list may be shared with other notes, so it's not modified
         updateNote(noteToMove);
     }
 
-    private boolean shouldModificationTimeBeUpdated(Note noteBeforeUpdate, Note noteAfterUpdate) {
-        if (noteBeforeUpdate == null) {
-            return true;
-        }
-        if (! noteBeforeUpdate.text.equals(noteAfterUpdate.text)) {
-            return true;
-        }
-        if (noteBeforeUpdate.list.id != noteAfterUpdate.list.id) {
-            return true;
-        }
-        if (noteBeforeUpdate.inTrash != noteAfterUpdate.inTrash) {
-            return true;
-        }
-        return false;
-    }
-
     public void deleteAllEmptyNotes() {
-        db.delete(NOTES_TABLE_NAME, "trim(" + KEY_TEXT + ")=''", null);
+        db.delete(NOTES_TABLE_NAME, EMPTY_TEXT_SELECTION, null);
         Log.d(LOG_TAG, "All empty notes deleted");
     }
 
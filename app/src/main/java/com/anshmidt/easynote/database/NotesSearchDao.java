@@ -0,0 +1,236 @@
+package com.anshmidt.easynote.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Full-text index over the full texts of notes. It's an FTS4 table with its own copy of texts,
+ * as notes.text of a long note has only its beginning, see NoteChunksDao. Texts that fit inline
+ * are indexed by triggers on notes table; longer ones by NotesDao, after their chunks are written.
+ * Deletes are done by triggers for both.
+ */
+
+public class NotesSearchDao implements TableHelper {
+
+    public static final String SEARCH_TABLE_NAME = "notes_fts";
+    private final String LOG_TAG = NotesSearchDao.class.getSimpleName();
+
+    private static final String TRIGGER_AFTER_INSERT = "notes_fts_after_insert";
+    private static final String TRIGGER_BEFORE_UPDATE = "notes_fts_before_update";
+    private static final String TRIGGER_AFTER_UPDATE = "notes_fts_after_update";
+    private static final String TRIGGER_BEFORE_DELETE = "notes_fts_before_delete";
+
+    private static final String DELETE_ROW_SQL = "DELETE FROM " + SEARCH_TABLE_NAME + " WHERE docid = ?";
+    private static final String INSERT_ROW_SQL = "INSERT INTO " + SEARCH_TABLE_NAME
+            + "(docid, " + NotesDao.KEY_TEXT + ") VALUES (?, ?)";
+    private static final String INLINE_TEXT_SELECTION = NotesDao.KEY_TEXT_LENGTH + " <= " + NoteChunksDao.MAX_INLINE_TEXT_LENGTH;
+
+    private SQLiteDatabase db;
+    private StatementCache statementCache;
+
+    public NotesSearchDao(SQLiteDatabase db) {
+        this(db, new StatementCache(db));
+    }
+
+    public NotesSearchDao(SQLiteDatabase db, StatementCache statementCache) {
+        this.db = db;
+        this.statementCache = statementCache;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        String CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE IF NOT EXISTS " + SEARCH_TABLE_NAME
+                + " USING fts4(" + NotesDao.KEY_TEXT + ", "
+                + "tokenize=unicode61 \"remove_diacritics=0\")";
+        db.execSQL(CREATE_SEARCH_TABLE);
+        createTriggers(db);
+    }
+
+    @Override
+    public List<Migration> getMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        // version 3 indexed external content of notes.text, which misses the end of chunked texts;
+        // older versions had no index, this one creates it for them too
+        migrations.add(new Migration(8) {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                drop(db);
+                onCreate(db);
+                rebuild(db);
+            }
+        });
+        return migrations;
+    }
+
+    @Override
+    public void drop(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_AFTER_INSERT);
+        db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_BEFORE_UPDATE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_AFTER_UPDATE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_BEFORE_DELETE);
+        db.execSQL("DROP TABLE IF EXISTS " + SEARCH_TABLE_NAME);
+    }
+
+    @Override
+    public void fillWithDefaultData(SQLiteDatabase db, Context context) {  // must run after notes table is filled
+        drop(db);
+        onCreate(db);
+        rebuild(db);
+    }
+
+    /**
+     * Indexes notes from scratch: inline texts from notes table, longer ones assembled from their chunks.
+     */
+    public void rebuild(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + SEARCH_TABLE_NAME);
+        db.execSQL("INSERT INTO " + SEARCH_TABLE_NAME + "(docid, " + NotesDao.KEY_TEXT + ")"
+                + " SELECT " + NotesDao.KEY_NOTE_ID + ", " + NotesDao.KEY_TEXT
+                + " FROM " + NotesDao.NOTES_TABLE_NAME + " WHERE " + INLINE_TEXT_SELECTION);
+        NoteChunksDao noteChunksDao = new NoteChunksDao(db);
+        Cursor cursor = db.rawQuery("SELECT " + NotesDao.KEY_NOTE_ID + ", " + NotesDao.KEY_TEXT_LENGTH
+                + " FROM " + NotesDao.NOTES_TABLE_NAME + " WHERE NOT (" + INLINE_TEXT_SELECTION + ")", null);
+        int chunkedCount = 0;
+        try {
+            while (cursor.moveToNext()) {
+                String text = noteChunksDao.readText(cursor.getInt(0), cursor.getInt(1));
+                if (text != null) {
+                    db.execSQL(INSERT_ROW_SQL, new Object[] { cursor.getInt(0), text });
+                    chunkedCount++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        Log.d(LOG_TAG, "Search index rebuilt, chunked texts: " + chunkedCount);
+    }
+
+    /**
+     * Indexes the full text of a chunked note, replacing what was indexed for it. Runs after notes.text is written,
+     * in the same transaction, as the update trigger removes the old row.
+     */
+    public void indexChunkedText(int noteId, String text) {
+        SQLiteStatement deleteStatement = statementCache.get(DELETE_ROW_SQL);
+        synchronized (deleteStatement) {
+            deleteStatement.bindLong(1, noteId);
+            deleteStatement.executeUpdateDelete();
+            deleteStatement.clearBindings();
+        }
+        SQLiteStatement insertStatement = statementCache.get(INSERT_ROW_SQL);
+        synchronized (insertStatement) {
+            insertStatement.bindLong(1, noteId);
+            insertStatement.bindString(2, text);
+            insertStatement.executeInsert();
+            insertStatement.clearBindings();
+        }
+    }
+
+    private void createTriggers(SQLiteDatabase db) {
+        String notes = NotesDao.NOTES_TABLE_NAME;
+        String noteId = NotesDao.KEY_NOTE_ID;
+        String text = NotesDao.KEY_TEXT;
+        String deleteOldRow = "DELETE FROM " + SEARCH_TABLE_NAME + " WHERE docid = old." + noteId + "; ";
+        String insertNewRow = "INSERT INTO " + SEARCH_TABLE_NAME + "(docid, " + text + ") VALUES(new." + noteId + ", new." + text + "); ";
+        String whenInline = " WHEN new." + INLINE_TEXT_SELECTION;  // chunked texts are indexed by indexChunkedText()
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGER_AFTER_INSERT
+                + " AFTER INSERT ON " + notes + whenInline + " BEGIN " + insertNewRow + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGER_BEFORE_UPDATE
+                + " BEFORE UPDATE OF " + text + " ON " + notes + " BEGIN " + deleteOldRow + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGER_AFTER_UPDATE
+                + " AFTER UPDATE OF " + text + " ON " + notes + whenInline + " BEGIN " + insertNewRow + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGER_BEFORE_DELETE
+                + " BEFORE DELETE ON " + notes + " BEGIN " + deleteOldRow + "END");
+    }
+
+    /**
+     * Turns user input into MATCH expression: every word is matched as a prefix,
+     * all words must be present. Returns null if there is nothing to search for.
+     */
+    public static String toMatchQuery(String searchRequest) {
+        String[] words = splitSearchRequest(searchRequest);
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            matchQuery.append('"').append(word).append("*\"");
+        }
+        if (matchQuery.length() == 0) {
+            return null;
+        }
+        return matchQuery.toString();
+    }
+
+    /**
+     * Checks a text against the search request in memory, the same way as MATCH with toMatchQuery() does:
+     * every word of the request must be a prefix of a word in the text; a word with punctuation inside
+     * is a phrase. Words are split and case-folded like unicode61 tokenizer does, close enough for letters and digits.
+     */
+    public static boolean matches(String text, String searchRequest) {
+        if (text == null) {
+            return false;
+        }
+        List<String> textTokens = tokenize(text);
+        for (String word : splitSearchRequest(searchRequest)) {
+            List<String> phrase = tokenize(word);
+            if (phrase.isEmpty()) {
+                continue;
+            }
+            if (!containsPhrase(textTokens, phrase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] splitSearchRequest(String searchRequest) {
+        return searchRequest.replace("\"", " ").replace("*", " ").trim().split("\\s+");
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        int tokenStart = -1;
+        for (int i = 0; i < lowerCaseText.length(); i++) {
+            if (Character.isLetterOrDigit(lowerCaseText.charAt(i))) {
+                if (tokenStart == -1) {
+                    tokenStart = i;
+                }
+            } else if (tokenStart != -1) {
+                tokens.add(lowerCaseText.substring(tokenStart, i));
+                tokenStart = -1;
+            }
+        }
+        if (tokenStart != -1) {
+            tokens.add(lowerCaseText.substring(tokenStart));
+        }
+        return tokens;
+    }
+
+    private static boolean containsPhrase(List<String> textTokens, List<String> phrase) {  // last word of phrase is a prefix
+        int lastIndex = phrase.size() - 1;
+        for (int start = 0; start + lastIndex < textTokens.size(); start++) {
+            boolean found = true;
+            for (int i = 0; i < lastIndex; i++) {
+                if (!textTokens.get(start + i).equals(phrase.get(i))) {
+                    found = false;
+                    break;
+                }
+            }
+            if (found && textTokens.get(start + lastIndex).startsWith(phrase.get(lastIndex))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -8,6 +8,7 @@ import android.util.Log;
 
 import com.anshmidt.easynote.Priority;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -39,9 +40,8 @@ public class PriorityDao implements TableHelper {
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db) {
-//        drop(db);
-//        onCreate(db);
+    public List<Migration> getMigrations() {
+        return new ArrayList<>();
     }
 
     @Override
@@ -70,11 +70,35 @@ public class PriorityDao implements TableHelper {
         Log.d(LOG_TAG, "Priority inserted: " + priority.name);
     }
 
+    public void addPriorityKeepingId(Priority priority) {  //for restoring a backup
+        ContentValues values = new ContentValues();
+        values.put(KEY_PRIORITY_ID, priority.id);
+        values.put(KEY_PRIORITY_NAME, priority.name);
+        db.insert(PRIORITY_TABLE_NAME, null, values);
+    }
+
+    public List<Priority> getAllPriorities() {
+        ArrayList<Priority> priorities = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT " + KEY_PRIORITY_ID + ", " + KEY_PRIORITY_NAME
+                + " FROM " + PRIORITY_TABLE_NAME, null);
+        if (cursor.moveToFirst()) {
+            do {
+                priorities.add(new Priority(cursor.getInt(0), cursor.getString(1)));
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return priorities;
+    }
+
+    public int deleteAllPriorities() {
+        return db.delete(PRIORITY_TABLE_NAME, null, null);
+    }
+
     public int getPriorityIdByName(String priorityName) {
         String selectPriorityIdQuery = "SELECT " + KEY_PRIORITY_ID
                 + " FROM " + PRIORITY_TABLE_NAME
-                + " WHERE " + KEY_PRIORITY_NAME + " = '" + priorityName + "'";
-        Cursor cursor = db.rawQuery(selectPriorityIdQuery, null);
+                + " WHERE " + KEY_PRIORITY_NAME + " = ?";
+        Cursor cursor = db.rawQuery(selectPriorityIdQuery, new String[] { priorityName });
 
         int priorityId = -1;
         if (cursor.moveToFirst()) {
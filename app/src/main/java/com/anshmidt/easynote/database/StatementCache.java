@@ -0,0 +1,37 @@
+package com.anshmidt.easynote.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+
+/**
+ * Compiled statements for the hot paths, reused for the lifetime of the db connection.
+ * A statement keeps its bound arguments, so callers must bind and execute it inside synchronized (statement).
+ */
+
+public class StatementCache {
+
+    private final SQLiteDatabase db;
+    private final HashMap<String, SQLiteStatement> statements = new HashMap<>();
+
+    public StatementCache(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    public synchronized SQLiteStatement get(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    public synchronized void close() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+}
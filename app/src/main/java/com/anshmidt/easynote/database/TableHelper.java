@@ -4,14 +4,16 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.util.List;
+
 /**
  * Created by Ilya Anshmidt on 21.02.2018.
  */
 
 public interface TableHelper {
 
-    void onCreate(SQLiteDatabase db);
-    void onUpgrade(SQLiteDatabase db);
+    void onCreate(SQLiteDatabase db);  // creates the latest version of the table
+    List<Migration> getMigrations();  // steps from older versions, ordered by Migration.toVersion
     void drop(SQLiteDatabase db);
     void fillWithDefaultData(SQLiteDatabase db, Context context);
 }
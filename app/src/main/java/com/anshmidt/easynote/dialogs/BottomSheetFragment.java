@@ -19,7 +19,6 @@ import com.anshmidt.easynote.PriorityInfo;
 import com.anshmidt.easynote.R;
 import com.anshmidt.easynote.activities.EditNoteActivity;
 import com.anshmidt.easynote.activities.MainActivity;
-import com.anshmidt.easynote.database.DatabaseHelper;
 import com.anshmidt.oneline_list_entry_selector.OneLineListEntrySelector;
 
 import java.util.ArrayList;
@@ -35,7 +34,6 @@ public class BottomSheetFragment extends BottomSheetDialogFragment {
     private int selectedNotePosition;
     private String selectedNotePriorityName;
     private OneLineListEntrySelector oneLineListEntrySelector;
-    private DatabaseHelper databaseHelper;
     private Priority changedPriority;
 
     public interface BottomSheetListener {
@@ -50,8 +48,6 @@ public class BottomSheetFragment extends BottomSheetDialogFragment {
         View view = inflater.inflate(R.layout.bottom_sheet, container,
                 false);
 
-        databaseHelper = DatabaseHelper.getInstance(getContext());
-
         Bundle bundle = getArguments();
         if (bundle != null) {
             selectedNoteId = bundle.getInt(KEY_SELECTED_NOTE_ID);
@@ -82,7 +78,7 @@ public class BottomSheetFragment extends BottomSheetDialogFragment {
         });
 
         oneLineListEntrySelector = view.findViewById(R.id.bottom_sheet_priority_selector);
-        PriorityInfo priorityInfo = new PriorityInfo(getContext());
+        final PriorityInfo priorityInfo = PriorityInfo.getInstance(getContext());
         ArrayList<String> priorities = new ArrayList<>();
         priorities.add(priorityInfo.MINOR.name);
         priorities.add(priorityInfo.NORMAL.name);
@@ -94,7 +90,7 @@ public class BottomSheetFragment extends BottomSheetDialogFragment {
         oneLineListEntrySelector.setOnValueChangeListener(new OneLineListEntrySelector.OnValueChangeListener() {
             @Override
             public void onValueChange(OneLineListEntrySelector oneLineListEntrySelector, String oldValue, String newValue) {
-                changedPriority = new Priority(newValue, getContext());
+                changedPriority = priorityInfo.getPriorityByName(newValue);
                 setPriorityAppearance(newValue);
             }
         });
@@ -117,7 +113,7 @@ public class BottomSheetFragment extends BottomSheetDialogFragment {
     }
 
     public void setPriorityAppearance(String currentPriority) {
-        PriorityInfo priorityInfo = new PriorityInfo(getContext());
+        PriorityInfo priorityInfo = PriorityInfo.getInstance(getContext());
         if (currentPriority.equals(priorityInfo.IMPORTANT.name)) {
             oneLineListEntrySelector.setTextStyle(Typeface.BOLD);
             oneLineListEntrySelector.setTextColor(ContextCompat.getColor(getContext(), R.color.notesTextColor));
@@ -8,12 +8,13 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.anshmidt.easynote.NotesList;
 import com.anshmidt.easynote.R;
-import com.anshmidt.easynote.database.DatabaseHelper;
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -26,7 +27,7 @@ public class MoveNoteDialogFragment extends DialogFragment {
 
     public final String FRAGMENT_TAG = "moveNoteDialog";
     public final String KEY_SELECTED_NOTE_ID = "selected_note_id";
-    private DatabaseHelper databaseHelper = DatabaseHelper.getInstance(getActivity());
+    private AsyncDatabaseHelper.Request listsRequest;
 
     public interface MoveNoteDialogListener {
         void onDestinationListChosen(int chosenListId, String chosenListName, int noteId);
@@ -46,17 +47,25 @@ public class MoveNoteDialogFragment extends DialogFragment {
         }
 
 
-        final List<String> allListNames = databaseHelper.getAllListNames();
-        CharSequence items[] = allListNames.toArray(new CharSequence[allListNames.size()]);
+        final List<NotesList> allLists = new ArrayList<>();
+        final ArrayAdapter<String> listNamesAdapter = new ArrayAdapter<>(getActivity(), android.R.layout.select_dialog_item);
+        listsRequest = AsyncDatabaseHelper.getInstance(getActivity()).getListsNotFromTrash(new AsyncDatabaseHelper.Callback<List<NotesList>>() {
+            @Override
+            public void onResult(List<NotesList> lists) {  //dialog is shown empty until then
+                allLists.addAll(lists);
+                for (NotesList list : lists) {
+                    listNamesAdapter.add(list.name);
+                }
+            }
+        });
 
-        builder.setItems(items, new DialogInterface.OnClickListener() {
+        builder.setAdapter(listNamesAdapter, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
-                String chosenListName = allListNames.get(which);
-                int chosenListId = databaseHelper.getListIdByName(chosenListName);
+                NotesList chosenList = allLists.get(which);
 
                 MoveNoteDialogListener activity = (MoveNoteDialogListener) getActivity();
-                activity.onDestinationListChosen(chosenListId, chosenListName, selectedNoteId);
+                activity.onDestinationListChosen(chosenList.id, chosenList.name, selectedNoteId);
             }
         });
 
@@ -64,4 +73,12 @@ public class MoveNoteDialogFragment extends DialogFragment {
         final AlertDialog dialog = builder.create();
         return dialog;
     }
+
+    @Override
+    public void onDestroy() {
+        if (listsRequest != null) {
+            listsRequest.cancel();
+        }
+        super.onDestroy();
+    }
 }
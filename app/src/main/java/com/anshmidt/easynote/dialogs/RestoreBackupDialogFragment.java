@@ -0,0 +1,43 @@
+package com.anshmidt.easynote.dialogs;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.text.format.DateUtils;
+
+import com.anshmidt.easynote.R;
+
+/**
+ * Asks before all notes are replaced with the backup made at KEY_BACKUP_TIME.
+ */
+
+public class RestoreBackupDialogFragment extends DialogFragment {
+
+    public interface RestoreBackupDialogListener {
+        void onRestoreBackupConfirmed();
+    }
+
+    public final static String KEY_BACKUP_TIME = "backup_time";
+    public final static String FRAGMENT_TAG = "restoreBackupDialog";
+
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        long backupTime = getArguments().getLong(KEY_BACKUP_TIME);
+        String backupTimeText = DateUtils.formatDateTime(getActivity(), backupTime,
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setMessage(getString(R.string.restore_backup_dialog_text, backupTimeText));
+        builder.setPositiveButton(R.string.rename_list_dialog_ok_button, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                RestoreBackupDialogListener activity = (RestoreBackupDialogListener) getActivity();
+                activity.onRestoreBackupConfirmed();
+            }
+        });
+        builder.setNegativeButton(R.string.rename_list_dialog_cancel_button, null);
+        return builder.create();
+    }
+}
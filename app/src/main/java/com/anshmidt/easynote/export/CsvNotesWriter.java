@@ -0,0 +1,75 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * One row per note, RFC 4180: fields with commas, quotes or line breaks are quoted, quotes are doubled.
+ * Priority is its id, modification time is in ms.
+ */
+
+public class CsvNotesWriter extends NotesWriter {
+
+    static final String HEADER = "list,priority,modified_at,text";
+    private static final String LINE_END = "\r\n";
+
+    private String listName;
+
+    public CsvNotesWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void begin() throws IOException {
+        out.write(HEADER);
+        out.write(LINE_END);
+    }
+
+    @Override
+    public void beginList(NotesList list) throws IOException {
+        listName = list.name;
+    }
+
+    @Override
+    public void writeNote(Note note) throws IOException {
+        writeField(listName);
+        out.write(',');
+        out.write(String.valueOf(note.priority.id));
+        out.write(',');
+        out.write(String.valueOf(note.modificationTime));
+        out.write(',');
+        writeField(note.text);
+        out.write(LINE_END);
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quoted = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c == ',') || (c == '"') || (c == '\n') || (c == '\r')) {
+                quoted = true;
+                break;
+            }
+        }
+        if (!quoted) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        int quote;
+        while ((quote = value.indexOf('"', start)) != -1) {
+            out.write(value, start, quote + 1 - start);
+            out.write('"');
+            start = quote + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,128 @@
+package com.anshmidt.easynote.export;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.PriorityInfo;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the format of JsonNotesWriter token by token, so a file of any size is read in constant memory.
+ * Unknown keys are skipped. Name of a list has to come before its notes, as JsonNotesWriter writes it.
+ */
+
+public class JsonNotesReader extends NotesReader {
+
+    private final JsonReader jsonReader;
+    private boolean started = false;
+    private boolean finished = false;
+    private boolean inNotes = false;  // inside notes array of a list
+    private String listName;
+
+    public JsonNotesReader(Reader in) {
+        jsonReader = new JsonReader(in);
+    }
+
+    @Override
+    public Note readNote() throws IOException {
+        if (!started) {
+            started = true;
+            finished = !beginLists();
+        }
+        while (!finished) {
+            if (inNotes) {
+                if (jsonReader.hasNext()) {
+                    return readNoteObject();
+                }
+                jsonReader.endArray();
+                inNotes = false;
+                skipRestOfObject();  // the list
+            }
+            if (!jsonReader.hasNext()) {
+                jsonReader.endArray();
+                finished = true;
+                break;
+            }
+            beginList();
+        }
+        return null;
+    }
+
+    private boolean beginLists() throws IOException {  // false if there are no lists
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(JsonNotesWriter.KEY_VERSION)) {
+                int version = jsonReader.nextInt();
+                if (version > JsonNotesWriter.VERSION) {
+                    throw new IOException("Unsupported version: " + version);
+                }
+            } else if (name.equals(JsonNotesWriter.KEY_LISTS)) {
+                jsonReader.beginArray();
+                return true;
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        return false;
+    }
+
+    private void beginList() throws IOException {
+        jsonReader.beginObject();
+        listName = null;
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(JsonNotesWriter.KEY_LIST_NAME)) {
+                listName = nextStringOrNull();
+            } else if (name.equals(JsonNotesWriter.KEY_NOTES)) {
+                jsonReader.beginArray();
+                inNotes = true;
+                return;
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();  // list without notes
+    }
+
+    private Note readNoteObject() throws IOException {
+        String text = "";
+        int priorityId = PriorityInfo.NORMAL_ID;
+        long modificationTime = 0;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(JsonNotesWriter.KEY_TEXT)) {
+                String value = nextStringOrNull();
+                text = (value == null) ? "" : value;
+            } else if (name.equals(JsonNotesWriter.KEY_PRIORITY)) {
+                priorityId = jsonReader.nextInt();
+            } else if (name.equals(JsonNotesWriter.KEY_MODIFIED_AT)) {
+                modificationTime = jsonReader.nextLong();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return createNote(listName, text, priorityId, modificationTime);
+    }
+
+    private void skipRestOfObject() throws IOException {
+        while (jsonReader.hasNext()) {
+            jsonReader.nextName();
+            jsonReader.skipValue();
+        }
+        jsonReader.endObject();
+    }
+
+    private String nextStringOrNull() throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        }
+        return jsonReader.nextString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.anshmidt.easynote.export;
+
+import android.util.JsonWriter;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Lossless format, the one to import notes back from:
+ * {"version": 1, "lists": [{"name": "Shopping", "notes": [{"text": "milk", "priority": 1, "modified_at": 1520000000000}]}]}
+ * In trash export a list may come several times, notes are grouped by list only as they go.
+ */
+
+public class JsonNotesWriter extends NotesWriter {
+
+    static final int VERSION = 1;
+    static final String KEY_VERSION = "version";
+    static final String KEY_LISTS = "lists";
+    static final String KEY_LIST_NAME = "name";
+    static final String KEY_NOTES = "notes";
+    static final String KEY_TEXT = "text";
+    static final String KEY_PRIORITY = "priority";
+    static final String KEY_MODIFIED_AT = "modified_at";
+
+    private final JsonWriter jsonWriter;
+
+    public JsonNotesWriter(Writer out) {
+        super(out);
+        jsonWriter = new JsonWriter(out);
+    }
+
+    @Override
+    public void begin() throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name(KEY_VERSION).value(VERSION);
+        jsonWriter.name(KEY_LISTS).beginArray();
+    }
+
+    @Override
+    public void beginList(NotesList list) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name(KEY_LIST_NAME).value(list.name);
+        jsonWriter.name(KEY_NOTES).beginArray();
+    }
+
+    @Override
+    public void writeNote(Note note) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name(KEY_TEXT).value(note.text);
+        jsonWriter.name(KEY_PRIORITY).value(note.priority.id);
+        jsonWriter.name(KEY_MODIFIED_AT).value(note.modificationTime);
+        jsonWriter.endObject();
+    }
+
+    @Override
+    public void endList() throws IOException {
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+    }
+
+    @Override
+    public void end() throws IOException {
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+}
@@ -0,0 +1,52 @@
+package com.anshmidt.easynote.export;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Base of line-based readers. A line that starts the next note is found only after the current one is read,
+ * so it can be put back.
+ */
+
+abstract class LineNotesReader extends NotesReader {
+
+    private final BufferedReader in;
+    private String unreadLine = null;
+    private int unreadBlankLines;
+    protected int blankLinesBefore;  // of the line returned by readNonBlankLine()
+
+    protected LineNotesReader(Reader in) {
+        this.in = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+    }
+
+    protected String readNonBlankLine() throws IOException {  // null at the end of input
+        if (unreadLine != null) {
+            String line = unreadLine;
+            blankLinesBefore = unreadBlankLines;
+            unreadLine = null;
+            return line;
+        }
+        blankLinesBefore = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                return line;
+            }
+            blankLinesBefore++;
+        }
+        return null;
+    }
+
+    protected void unreadLine(String line) {
+        unreadLine = line;
+        unreadBlankLines = blankLinesBefore;
+    }
+
+    protected void appendLine(StringBuilder text, String line, int start) {  // keeps blank lines inside the note
+        for (int i = 0; i <= blankLinesBefore; i++) {
+            text.append('\n');
+        }
+        text.append(line, start, line.length());
+    }
+}
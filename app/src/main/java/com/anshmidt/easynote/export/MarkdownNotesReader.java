@@ -0,0 +1,86 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.PriorityInfo;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the format of MarkdownNotesWriter: a heading names the list, a bullet starts a note and its priority mark
+ * is read back, indented lines continue it. Other paragraphs are notes of their own.
+ */
+
+public class MarkdownNotesReader extends LineNotesReader {
+
+    private static final String[] BULLETS = { MarkdownNotesWriter.NOTE_PREFIX, "* ", "+ " };
+
+    private String listName = null;
+
+    public MarkdownNotesReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public Note readNote() throws IOException {
+        StringBuilder text = null;
+        int priorityId = PriorityInfo.NORMAL_ID;
+        String line;
+        while ((line = readNonBlankLine()) != null) {
+            String headingText = getHeadingText(line);
+            boolean heading = (headingText != null);
+            int bulletEnd = heading ? -1 : getBulletEnd(line);
+            if (!heading && (bulletEnd == -1) && (text != null)) {
+                if (line.startsWith(MarkdownNotesWriter.CONTINUATION_PREFIX)) {
+                    appendLine(text, line, MarkdownNotesWriter.CONTINUATION_PREFIX.length());
+                    continue;
+                } else if (blankLinesBefore == 0) {  // lazy continuation
+                    appendLine(text, line, 0);
+                    continue;
+                }
+            }
+            if (text != null) {  // line starts the next note or list
+                unreadLine(line);
+                break;
+            }
+            if (heading) {
+                listName = headingText;
+                continue;
+            }
+            int textStart = 0;
+            if (bulletEnd != -1) {
+                textStart = bulletEnd;
+                if (line.startsWith(MarkdownNotesWriter.IMPORTANT_MARK, textStart)) {
+                    priorityId = PriorityInfo.IMPORTANT_ID;
+                    textStart += MarkdownNotesWriter.IMPORTANT_MARK.length();
+                } else if (line.startsWith(MarkdownNotesWriter.MINOR_MARK, textStart)) {
+                    priorityId = PriorityInfo.MINOR_ID;
+                    textStart += MarkdownNotesWriter.MINOR_MARK.length();
+                }
+            }
+            text = new StringBuilder(line.length() - textStart);
+            text.append(line, textStart, line.length());
+        }
+        return (text == null) ? null : createNote(listName, text.toString(), priorityId, 0);
+    }
+
+    private static int getBulletEnd(String line) {
+        for (String bullet : BULLETS) {
+            if (line.startsWith(bullet)) {
+                return bullet.length();
+            }
+        }
+        return -1;
+    }
+
+    private static String getHeadingText(String line) {  // "## Shopping" -> "Shopping", null if it's not a heading
+        int i = 0;
+        while ((i < line.length()) && (line.charAt(i) == '#')) {
+            i++;
+        }
+        if ((i == 0) || ((i < line.length()) && (line.charAt(i) != ' '))) {
+            return null;
+        }
+        return line.substring(i).trim();
+    }
+}
@@ -0,0 +1,66 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.PriorityInfo;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A heading per list and a bullet per note. Important notes start with IMPORTANT_MARK, minor ones
+ * with MINOR_MARK; further lines of a note are indented, so they stay in its bullet.
+ *
+ * ## Shopping
+ *
+ * - **!** milk
+ * - bread
+ *   white
+ */
+
+public class MarkdownNotesWriter extends NotesWriter {
+
+    static final String LIST_PREFIX = "## ";
+    static final String NOTE_PREFIX = "- ";
+    static final String CONTINUATION_PREFIX = "  ";
+    static final String IMPORTANT_MARK = "**!** ";
+    static final String MINOR_MARK = "_(minor)_ ";
+
+    private boolean firstList = true;
+
+    public MarkdownNotesWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void beginList(NotesList list) throws IOException {
+        if (!firstList) {
+            out.write('\n');
+        }
+        firstList = false;
+        out.write(LIST_PREFIX);
+        out.write(getListName(list));
+        out.write("\n\n");
+    }
+
+    @Override
+    public void writeNote(Note note) throws IOException {
+        out.write(NOTE_PREFIX);
+        if (note.priority.id == PriorityInfo.IMPORTANT_ID) {
+            out.write(IMPORTANT_MARK);
+        } else if (note.priority.id == PriorityInfo.MINOR_ID) {
+            out.write(MINOR_MARK);
+        }
+        String text = note.text;
+        int lineStart = 0;
+        int lineEnd;
+        while ((lineEnd = text.indexOf('\n', lineStart)) != -1) {
+            out.write(text, lineStart, lineEnd - lineStart);
+            out.write('\n');
+            out.write(CONTINUATION_PREFIX);
+            lineStart = lineEnd + 1;
+        }
+        out.write(text, lineStart, text.length() - lineStart);
+        out.write('\n');
+    }
+}
@@ -0,0 +1,144 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.database.DatabaseHelper;
+import com.anshmidt.easynote.database.NoteKey;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Streams notes from db to a NotesWriter page by page, in the order they are displayed, so a list
+ * of any size is exported in constant memory. Has to run off the main thread, see AsyncDatabaseHelper.exportNotes().
+ */
+
+public class NotesExporter {
+
+    public static final int FORMAT_TEXT = 0;
+    public static final int FORMAT_MARKDOWN = 1;
+    public static final int FORMAT_CSV = 2;
+    public static final int FORMAT_JSON = 3;
+
+    public static final int SCOPE_LIST = 0;
+    public static final int SCOPE_ALL_LISTS = 1;  // not from trash
+    public static final int SCOPE_TRASH = 2;
+
+    private static final int PAGE_SIZE = 200;
+
+    private final DatabaseHelper databaseHelper;
+
+    public NotesExporter(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    public static NotesWriter createWriter(int format, Writer out) {
+        switch (format) {
+            case FORMAT_MARKDOWN:
+                return new MarkdownNotesWriter(out);
+            case FORMAT_CSV:
+                return new CsvNotesWriter(out);
+            case FORMAT_JSON:
+                return new JsonNotesWriter(out);
+            default:
+                return new TextNotesWriter(out);
+        }
+    }
+
+    public static String getMimeType(int format) {
+        switch (format) {
+            case FORMAT_MARKDOWN:
+                return "text/markdown";
+            case FORMAT_CSV:
+                return "text/csv";
+            case FORMAT_JSON:
+                return "application/json";
+            default:
+                return "text/plain";
+        }
+    }
+
+    public static String getFileExtension(int format) {
+        switch (format) {
+            case FORMAT_MARKDOWN:
+                return "md";
+            case FORMAT_CSV:
+                return "csv";
+            case FORMAT_JSON:
+                return "json";
+            default:
+                return "txt";
+        }
+    }
+
+    /**
+     * Returns number of exported notes. List is needed only for SCOPE_LIST.
+     */
+    public int export(int scope, NotesList list, NotesWriter writer) throws IOException {
+        int exportedCount = 0;
+        writer.begin();
+        if (scope == SCOPE_LIST) {
+            exportedCount = exportList(list, writer);
+        } else if (scope == SCOPE_ALL_LISTS) {
+            for (NotesList listFromDb : databaseHelper.getAllLists()) {
+                if (!listFromDb.inTrash) {
+                    exportedCount += exportList(listFromDb, writer);
+                }
+            }
+        } else {
+            exportedCount = exportTrash(writer);
+        }
+        writer.end();
+        return exportedCount;
+    }
+
+    private int exportList(NotesList list, NotesWriter writer) throws IOException {
+        writer.beginList(list);
+        int exportedCount = 0;
+        NoteKey after = null;
+        ArrayList<Note> page;
+        do {
+            page = databaseHelper.getNotesFromListPage(list, after, PAGE_SIZE);
+            databaseHelper.loadFullTexts(page);  // pages hold previews of long notes
+            for (Note note : page) {
+                writer.writeNote(note);
+            }
+            exportedCount += page.size();
+            if (!page.isEmpty()) {
+                after = NoteKey.of(page.get(page.size() - 1));
+            }
+        } while (page.size() == PAGE_SIZE);
+        writer.endList();
+        return exportedCount;
+    }
+
+    private int exportTrash(NotesWriter writer) throws IOException {  // newest first, so notes of one list may be apart
+        int exportedCount = 0;
+        int currentListId = -1;
+        NoteKey after = null;
+        ArrayList<Note> page;
+        do {
+            page = databaseHelper.getNotesFromTrashPage(after, PAGE_SIZE);
+            databaseHelper.loadFullTexts(page);
+            for (Note note : page) {
+                if (note.list.id != currentListId) {
+                    if (currentListId != -1) {
+                        writer.endList();
+                    }
+                    currentListId = note.list.id;
+                    writer.beginList(note.list);
+                }
+                writer.writeNote(note);
+            }
+            exportedCount += page.size();
+            if (!page.isEmpty()) {
+                after = NoteKey.of(page.get(page.size() - 1));
+            }
+        } while (page.size() == PAGE_SIZE);
+        if (currentListId != -1) {
+            writer.endList();
+        }
+        return exportedCount;
+    }
+}
@@ -0,0 +1,130 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+import com.anshmidt.easynote.PriorityInfo;
+import com.anshmidt.easynote.database.DatabaseHelper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Streams notes from a NotesReader to db in batches of BATCH_SIZE, each in one transaction, so a file of any size
+ * is imported in constant memory. Lists are matched by name as notes come and created if missing.
+ * Has to run on the writer thread, see AsyncDatabaseHelper.importNotes(). If reading fails halfway,
+ * batches written before stay.
+ */
+
+public class NotesImporter {
+
+    public interface ProgressListener {
+        void onProgress(int importedCount);  // after every batch
+    }
+
+    private static final int BATCH_SIZE = 1000;  // notes per transaction
+    private static final int DETECT_FORMAT_LIMIT = 4 * 1024;  // chars looked at to guess the format
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final DatabaseHelper databaseHelper;
+    private final HashMap<String, NotesList> listsByName = new HashMap<>();  // not from trash
+
+    public NotesImporter(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    public static NotesReader createReader(int format, Reader in) {  //formats of NotesExporter, except CSV
+        switch (format) {
+            case NotesExporter.FORMAT_MARKDOWN:
+                return new MarkdownNotesReader(in);
+            case NotesExporter.FORMAT_JSON:
+                return new JsonNotesReader(in);
+            default:
+                return new TextNotesReader(in);
+        }
+    }
+
+    /**
+     * Guesses the format by the first char that isn't blank. Skips byte order mark, otherwise leaves in where it was.
+     */
+    public static int detectFormat(BufferedReader in) throws IOException {
+        in.mark(1);
+        if (in.read() != BYTE_ORDER_MARK) {
+            in.reset();
+        }
+        in.mark(DETECT_FORMAT_LIMIT);
+        int c;
+        int readCount = 0;
+        do {
+            c = in.read();
+            readCount++;
+        } while ((c != -1) && Character.isWhitespace(c) && (readCount < DETECT_FORMAT_LIMIT));
+        in.reset();
+        if (c == '{') {
+            return NotesExporter.FORMAT_JSON;
+        } else if ((c == '#') || (c == '-')) {
+            return NotesExporter.FORMAT_MARKDOWN;
+        } else {
+            return NotesExporter.FORMAT_TEXT;
+        }
+    }
+
+    /**
+     * Returns number of imported notes. Notes the input doesn't assign to a list go to defaultList.
+     */
+    public int importNotes(NotesReader reader, NotesList defaultList, ProgressListener progressListener) throws IOException {
+        listsByName.clear();
+        for (NotesList list : databaseHelper.getAllLists()) {
+            if (!list.inTrash && (list.name != null) && !listsByName.containsKey(list.name)) {
+                listsByName.put(list.name, list);
+            }
+        }
+        long importTime = System.currentTimeMillis();  // for formats without it; notes with the same time keep their order
+        ArrayList<Note> batch = new ArrayList<>(BATCH_SIZE);
+        int importedCount = 0;
+        Note note;
+        while ((note = reader.readNote()) != null) {
+            note.list = resolveList(note.list.name, defaultList);
+            if ((note.priority.id < PriorityInfo.IMPORTANT_ID) || (note.priority.id > PriorityInfo.MINOR_ID)) {
+                note.priority = new Priority(PriorityInfo.NORMAL_ID);
+            }
+            if (note.modificationTime <= 0) {
+                note.modificationTime = importTime;
+            }
+            batch.add(note);
+            if (batch.size() == BATCH_SIZE) {
+                importedCount += addBatch(batch, progressListener, importedCount);
+            }
+        }
+        if (!batch.isEmpty()) {
+            importedCount += addBatch(batch, progressListener, importedCount);
+        }
+        return importedCount;
+    }
+
+    private int addBatch(ArrayList<Note> batch, ProgressListener progressListener, int importedBefore) {
+        databaseHelper.addNotes(batch);
+        int batchSize = batch.size();
+        batch.clear();
+        if (progressListener != null) {
+            progressListener.onProgress(importedBefore + batchSize);
+        }
+        return batchSize;
+    }
+
+    private NotesList resolveList(String listName, NotesList defaultList) {
+        if ((listName == null) || listName.isEmpty()) {
+            return defaultList;
+        }
+        NotesList list = listsByName.get(listName);
+        if (list == null) {
+            list = new NotesList(listName);
+            list.id = databaseHelper.addList(list);
+            listsByName.put(listName, list);
+        }
+        return list;
+    }
+}
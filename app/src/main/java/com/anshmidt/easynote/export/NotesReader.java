@@ -0,0 +1,22 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+
+import java.io.IOException;
+
+/**
+ * Reads notes of one export format as they come, so nothing but the current note is kept in memory.
+ * A note read has no id; its list has only the name, null if the input doesn't tell the list.
+ * Modification time is 0 if the format doesn't keep it.
+ */
+
+public abstract class NotesReader {
+
+    public abstract Note readNote() throws IOException;  // null at the end of input
+
+    protected static Note createNote(String listName, String text, int priorityId, long modificationTime) {
+        return new Note(0, modificationTime, text, false, new Priority(priorityId), new NotesList(listName));
+    }
+}
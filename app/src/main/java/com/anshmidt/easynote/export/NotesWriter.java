@@ -0,0 +1,39 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes notes in one export format as they come, so nothing but the current note is kept in memory.
+ * Calls go as begin(), then beginList(), writeNote()... endList() for every list, then end().
+ */
+
+public abstract class NotesWriter {
+
+    protected final Writer out;
+
+    protected NotesWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void begin() throws IOException {
+    }
+
+    public abstract void beginList(NotesList list) throws IOException;
+
+    public abstract void writeNote(Note note) throws IOException;
+
+    public void endList() throws IOException {
+    }
+
+    public void end() throws IOException {
+        out.flush();
+    }
+
+    protected static String getListName(NotesList list) {  // null if the list was deleted
+        return (list.name == null) ? "" : list.name;
+    }
+}
@@ -0,0 +1,73 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.PriorityInfo;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the format of TextNotesWriter. A line ending with a colon at the start or after a blank line names the list,
+ * a numbered line starts a note, other lines continue it. Lines before any numbered one are notes of their own,
+ * so a plain list of lines can be imported too. All notes get normal priority, the format doesn't keep it.
+ */
+
+public class TextNotesReader extends LineNotesReader {
+
+    private static final String LIST_NAME_END = TextNotesWriter.LIST_NAME_SUFFIX.trim();
+
+    private String listName = null;
+    private boolean firstLine = true;
+
+    public TextNotesReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public Note readNote() throws IOException {
+        StringBuilder text = null;
+        String line;
+        while ((line = readNonBlankLine()) != null) {
+            boolean listStart = (firstLine || (blankLinesBefore > 0)) && isListName(line);
+            firstLine = false;
+            int textStart = listStart ? -1 : getNoteTextStart(line);
+            if (!listStart && (textStart == -1) && (text != null)) {
+                appendLine(text, line, 0);
+                continue;
+            }
+            if (text != null) {  // line starts the next note or list
+                unreadLine(line);
+                break;
+            }
+            if (listStart) {
+                String trimmedLine = line.trim();
+                listName = trimmedLine.substring(0, trimmedLine.length() - LIST_NAME_END.length());
+            } else if (textStart == -1) {
+                return createNote(listName, line, PriorityInfo.NORMAL_ID, 0);
+            } else {
+                text = new StringBuilder(line.length() - textStart);
+                text.append(line, textStart, line.length());
+            }
+        }
+        return (text == null) ? null : createNote(listName, text.toString(), PriorityInfo.NORMAL_ID, 0);
+    }
+
+    private static boolean isListName(String line) {
+        return line.trim().endsWith(LIST_NAME_END) && (getNoteTextStart(line) == -1);
+    }
+
+    static int getNoteTextStart(String line) {  // after "12) ", or -1 if the line isn't numbered
+        int i = 0;
+        while ((i < line.length()) && Character.isDigit(line.charAt(i))) {
+            i++;
+        }
+        if ((i == 0) || !line.startsWith(TextNotesWriter.NOTE_NUMBER_SUFFIX.trim(), i)) {
+            return -1;
+        }
+        i += TextNotesWriter.NOTE_NUMBER_SUFFIX.trim().length();
+        if (i == line.length()) {  // empty note, trailing space was trimmed
+            return i;
+        }
+        return (line.charAt(i) == ' ') ? i + 1 : -1;
+    }
+}
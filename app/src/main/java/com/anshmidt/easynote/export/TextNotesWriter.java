@@ -0,0 +1,53 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.PriorityInfo;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Format of "copy list to clipboard": list name, then numbered notes. Minor notes are left out,
+ * but keep their numbers.
+ *
+ * Shopping:
+ * 1) milk
+ * 3) bread
+ */
+
+public class TextNotesWriter extends NotesWriter {
+
+    static final String LIST_NAME_SUFFIX = ": ";
+    static final String NOTE_NUMBER_SUFFIX = ") ";
+
+    private int noteNumber;
+    private boolean firstList = true;
+
+    public TextNotesWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void beginList(NotesList list) throws IOException {
+        if (!firstList) {
+            out.write('\n');
+        }
+        firstList = false;
+        out.write(getListName(list));
+        out.write(LIST_NAME_SUFFIX);
+        out.write('\n');
+        noteNumber = 1;
+    }
+
+    @Override
+    public void writeNote(Note note) throws IOException {
+        if (note.priority.id != PriorityInfo.MINOR_ID) {
+            out.write(String.valueOf(noteNumber));
+            out.write(NOTE_NUMBER_SUFFIX);
+            out.write(note.text);
+            out.write('\n');
+        }
+        noteNumber++;
+    }
+}
@@ -11,9 +11,10 @@ import android.widget.Spinner;
 import com.anshmidt.easynote.NotesList;
 import com.anshmidt.easynote.R;
 import com.anshmidt.easynote.SharedPreferencesHelper;
-import com.anshmidt.easynote.database.DatabaseHelper;
+import com.anshmidt.easynote.database.AsyncDatabaseHelper;
 import com.anshmidt.easynote.dialogs.RenameListDialogFragment;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -29,9 +30,10 @@ public class ListNamesSpinnerController {
     ListSelectedListener listSelectedListener;
     ListNamesSpinnerAdapter listNamesSpinnerAdapter;
     Spinner listNamesSpinner;
-    List<String> listNamesList;
+    List<String> listNamesList = new ArrayList<>();
+    List<NotesList> lists = new ArrayList<>();  // in the same order as listNamesList, without "add list" item
     SharedPreferencesHelper sharedPreferencesHelper;
-    DatabaseHelper databaseHelper;
+    AsyncDatabaseHelper asyncDatabaseHelper;
     Context context;
     private NotesList currentList;
     private final String LOG_TAG = ListNamesSpinnerController.class.getSimpleName();
@@ -40,20 +42,41 @@ public class ListNamesSpinnerController {
         this.context = context;
         this.listNamesSpinner = listNamesSpinner;
         this.sharedPreferencesHelper = new SharedPreferencesHelper(context);
-        this.databaseHelper = DatabaseHelper.getInstance(context);
+        this.asyncDatabaseHelper = AsyncDatabaseHelper.getInstance(context);
 
     }
 
-    public void init(final List<String> listNamesList) {
-        this.listNamesList = listNamesList;
-        //this.currentList = currentList;
-        initAdapter(this.listNamesList);
-        int currentListId = sharedPreferencesHelper.getLastOpenedListId();
-        String currentListName = databaseHelper.getListNameById(currentListId);
-        setCurrentList(new NotesList(currentListId, currentListName));
+    /**
+     * Current list is known right away, so its notes can be loaded; its name and the spinner are filled in
+     * when lists are read from db.
+     */
+    public void init() {
+        setCurrentList(new NotesList(sharedPreferencesHelper.getLastOpenedListId()));
+        asyncDatabaseHelper.getListsNotFromTrash(new AsyncDatabaseHelper.Callback<List<NotesList>>() {
+            @Override
+            public void onResult(List<NotesList> lists) {
+                setLists(lists);
+                int position = getPositionById(currentList.id);
+                if (position != -1) {
+                    setCurrentList(lists.get(position));
+                }
+                initOnItemSelectedListener();
+                setSpinnerPosition(listNamesSpinner, currentList);
+            }
+        });
+    }
+
+    private void setLists(List<NotesList> lists) {
+        this.lists = lists;
+        listNamesList = new ArrayList<>();
+        for (NotesList list : lists) {
+            listNamesList.add(list.name);
+        }
+        initAdapter(listNamesList);
+    }
 
-        initOnItemSelectedListener();
-        setSpinnerPosition(listNamesSpinner, currentList);
+    public List<NotesList> getLists() {
+        return lists;
     }
 
     public void setListSelectedListener(ListSelectedListener listSelectedListener) {
@@ -72,19 +95,48 @@ public class ListNamesSpinnerController {
         //int listId = renamedList.id;
         String renamedListName = renamedList.name;
         int position = getPositionInSpinner(currentList);
-        listNamesList.set(position, renamedListName);
         setCurrentList(renamedList);
+        if (position == -1) {  //lists aren't read yet
+            return;
+        }
+        listNamesList.set(position, renamedListName);
+        lists.set(position, renamedList);
         //initAdapter(listNamesList);
         listNamesSpinnerAdapter.notifyDataSetChanged();
     }
 
-    public void onListAdded(NotesList newList) {
+    public void onListAdded(NotesList newList) {  //its id is set when it's written to db
         listNamesList.add(newList.name);
+        lists.add(newList);
         initAdapter(listNamesList);
     }
 
+    public void onListsChanged(List<NotesList> lists) {  //e.g. after import or restore
+        setLists(lists);
+        int position = getPositionInSpinner(currentList);
+        if (position == -1) {  // current list is gone, the first one is opened
+            position = 0;
+        }
+        if (isAddListItemSelected(position)) {  // there are no lists
+            return;
+        }
+        NotesList list = getListByPosition(position);  // its id may have changed too
+        boolean listChanged = (list.id != currentList.id);
+        setCurrentList(list);
+        sharedPreferencesHelper.setLastOpenedList(list);
+        listNamesSpinner.setSelection(position);
+        if (listChanged) {
+            listSelectedListener.onListSelected();
+        }
+    }
+
     public void onListMovedToTrash(NotesList list) {
-        listNamesList.remove(list.name);
+        int position = getPositionInSpinner(list);
+        if (position == -1) {
+            return;
+        }
+        listNamesList.remove(position);
+        lists.remove(position);
         initAdapter(listNamesList);
     }
 
@@ -135,9 +187,7 @@ public class ListNamesSpinnerController {
 
 
     public NotesList getListByPosition(int position) {
-        String selectedListName = listNamesList.get(position);
-        int selectedListId = databaseHelper.getListIdByName(selectedListName);
-        return new NotesList(selectedListId, selectedListName);
+        return lists.get(position);
     }
 
     public void setSpinnerPosition(Spinner spinner, NotesList currentList) {
@@ -148,4 +198,13 @@ public class ListNamesSpinnerController {
     public int getPositionInSpinner(NotesList list) {
         return listNamesList.indexOf(list.name);
     }
+
+    private int getPositionById(int listId) {
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).id == listId) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
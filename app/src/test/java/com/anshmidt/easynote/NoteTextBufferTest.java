@@ -0,0 +1,55 @@
+package com.anshmidt.easynote;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NoteTextBufferTest {
+
+    @Test
+    public void typingAtEnd_appendsText() throws Exception {
+        NoteTextBuffer buffer = new NoteTextBuffer("abc");
+        assertTrue(buffer.applyChange("abcd", 3, 0, 1));
+        assertTrue(buffer.applyChange("abcde", 4, 0, 1));
+        assertEquals("abcde", buffer.toString());
+        assertEquals(5, buffer.length());
+    }
+
+    @Test
+    public void replacingInTheMiddle_keepsRestOfText() throws Exception {
+        NoteTextBuffer buffer = new NoteTextBuffer("hello world");
+        assertTrue(buffer.applyChange("hello there world", 6, 0, 6));
+        assertTrue(buffer.applyChange("hello here world", 6, 5, 4));
+        assertTrue(buffer.applyChange("hello here", 10, 6, 0));
+        assertEquals("hello here", buffer.toString());
+    }
+
+    @Test
+    public void changeOutsideOfText_isRejected() throws Exception {
+        NoteTextBuffer buffer = new NoteTextBuffer("abc");
+        assertFalse(buffer.applyChange("abc", 2, 5, 0));
+        assertEquals("abc", buffer.toString());
+    }
+
+    @Test
+    public void randomChanges_matchStringBuilder() throws Exception {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder("The quick brown fox jumps over the lazy dog");
+        NoteTextBuffer buffer = new NoteTextBuffer(expected.toString());
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int before = random.nextInt(Math.min(5, expected.length() - start) + 1);
+            int count = random.nextInt(4);
+            StringBuilder inserted = new StringBuilder();
+            for (int j = 0; j < count; j++) {
+                inserted.append((char) ('a' + random.nextInt(26)));
+            }
+            expected.replace(start, start + before, inserted.toString());
+            assertTrue(buffer.applyChange(expected, start, before, count));
+        }
+        assertEquals(expected.toString(), buffer.toString());
+        assertEquals(expected.length(), buffer.length());
+    }
+}
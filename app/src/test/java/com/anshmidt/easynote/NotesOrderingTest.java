@@ -0,0 +1,64 @@
+package com.anshmidt.easynote;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NotesOrderingTest {
+
+    @Test
+    public void listOrder_isPriorityThenNewestThenId() throws Exception {
+        Note important = createNote(3, 1, 100);
+        Note newNormal = createNote(1, 2, 300);
+        Note oldNormal = createNote(2, 2, 200);
+        Note sameTimeNormal = createNote(4, 2, 200);
+        ArrayList<Note> notes = listOf(sameTimeNormal, oldNormal, newNormal, important);
+
+        Collections.sort(notes, NotesOrdering.LIST);
+        assertEquals(listOf(important, newNormal, oldNormal, sameTimeNormal), notes);
+    }
+
+    @Test
+    public void trashOrder_ignoresPriority() throws Exception {
+        Note oldImportant = createNote(1, 1, 100);
+        Note newMinor = createNote(2, 3, 200);
+        ArrayList<Note> notes = listOf(oldImportant, newMinor);
+
+        Collections.sort(notes, NotesOrdering.TRASH);
+        assertEquals(listOf(newMinor, oldImportant), notes);
+    }
+
+    @Test
+    public void repositionedNote_endsUpWhereSortWouldPutIt() throws Exception {
+        Random random = new Random(42);
+        ArrayList<Note> notes = new ArrayList<>();
+        for (int id = 1; id <= 200; id++) {
+            notes.add(createNote(id, 1 + random.nextInt(3), random.nextInt(50)));
+        }
+        Collections.sort(notes, NotesOrdering.LIST);
+        for (int i = 0; i < 100; i++) {
+            int position = random.nextInt(notes.size());
+            notes.get(position).setPriority(new Priority(1 + random.nextInt(3)));
+
+            int newPosition = NotesOrdering.LIST.reposition(notes, position);
+            ArrayList<Note> sortedNotes = new ArrayList<>(notes);
+            Collections.sort(sortedNotes, NotesOrdering.LIST);
+            assertEquals(sortedNotes, notes);
+            assertTrue(newPosition >= 0 && newPosition < notes.size());
+        }
+    }
+
+    private static Note createNote(int id, int priorityId, long modificationTime) {
+        return new Note(id, modificationTime, "note " + id, false, new Priority(priorityId), new NotesList(1));
+    }
+
+    private static ArrayList<Note> listOf(Note... notes) {
+        ArrayList<Note> list = new ArrayList<>();
+        Collections.addAll(list, notes);
+        return list;
+    }
+}
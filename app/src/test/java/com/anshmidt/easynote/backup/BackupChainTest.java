@@ -0,0 +1,54 @@
+package com.anshmidt.easynote.backup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BackupChainTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void read_followsLinkedDeltasOnly() throws Exception {
+        File baseFile = new File(temporaryFolder.getRoot(), "notes.snapshot");
+        writeRange(baseFile, true, 0, 10);
+        File delta1 = writeRange(new File(baseFile.getPath() + ".delta.1"), false, 10, 15);
+        File delta2 = writeRange(new File(baseFile.getPath() + ".delta.2"), false, 15, 20);
+        File staleDelta = writeRange(new File(baseFile.getPath() + ".delta.10"), false, 3, 30);  // from an older base
+        new File(baseFile.getPath() + ".delta.3.tmp").createNewFile();
+
+        BackupChain chain = BackupChain.read(baseFile);
+
+        assertEquals(Arrays.asList(delta1, delta2), chain.deltaFiles);
+        assertEquals(Arrays.asList(staleDelta), chain.staleFiles);
+        assertEquals(20, chain.lastChangeSeq);
+        assertEquals(new File(baseFile.getPath() + ".delta.3"), chain.getNextDeltaFile());
+    }
+
+    @Test
+    public void read_withoutBase_hasNothingToFollow() throws Exception {
+        File baseFile = new File(temporaryFolder.getRoot(), "notes.snapshot");
+        writeRange(new File(baseFile.getPath() + ".delta.1"), false, 10, 15);
+
+        BackupChain chain = BackupChain.read(baseFile);
+
+        assertEquals(-1, chain.lastChangeSeq);
+        assertTrue(chain.deltaFiles.isEmpty());
+        assertEquals(1, chain.staleFiles.size());
+    }
+
+    private File writeRange(File file, boolean full, long fromChangeSeq, long toChangeSeq) throws Exception {
+        SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(file));
+        writer.writeChangeRange(full, fromChangeSeq, toChangeSeq);
+        writer.finish();
+        writer.close();
+        return file;
+    }
+}
@@ -0,0 +1,174 @@
+package com.anshmidt.easynote.backup;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readBack_returnsWrittenRecords() throws Exception {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longText.append("ß€ ");  // 2 and 3 bytes in UTF-8, a record bigger than a block
+        }
+        File file = temporaryFolder.newFile();
+        SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(file));
+        writer.writeNote(createNote(1, "milk", false));
+        writer.writeNote(createNote(300, longText.toString(), true));
+        writer.writeNote(createNote(301, null, false));
+        writer.writeList(new NotesList(2, "Shopping", false));
+        writer.writeList(new NotesList(3, null, true));
+        writer.writePriority(new Priority(1, "Important"));
+        writer.finish();
+        writer.close();
+
+        SnapshotReader reader = new SnapshotReader(file);
+        reader.verify();
+        RecordCollector collector = new RecordCollector();
+        reader.read(SnapshotWriter.BLOCK_NOTES, collector);
+        reader.read(SnapshotWriter.BLOCK_LISTS, collector);
+        reader.read(SnapshotWriter.BLOCK_PRIORITIES, collector);
+        reader.close();
+
+        assertEquals(3, collector.notes.size());
+        Note note = collector.notes.get(1);
+        assertEquals(300, note.id);
+        assertEquals(1520000000000L, note.modificationTime);
+        assertEquals(3, note.priority.id);
+        assertEquals(2, note.list.id);
+        assertTrue(note.inTrash);
+        assertEquals(longText.toString(), note.text);
+        assertNull(collector.notes.get(2).text);
+
+        assertEquals(2, collector.lists.size());
+        assertEquals("Shopping", collector.lists.get(0).name);
+        assertNull(collector.lists.get(1).name);
+        assertTrue(collector.lists.get(1).inTrash);
+        assertEquals("Important", collector.priorities.get(0).name);
+    }
+
+    @Test
+    public void delta_returnsChangeRangeAndDeletedIds() throws Exception {
+        File file = temporaryFolder.newFile();
+        SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(file));
+        writer.writeChangeRange(false, 100, 100000);
+        writer.writeDeletedNote(5);
+        writer.writeDeletedNote(700);
+        writer.writeDeletedList(3);
+        writer.writeNote(createNote(1, "milk", false));
+        writer.finish();
+        writer.close();
+
+        SnapshotReader reader = new SnapshotReader(file);
+        reader.verify();
+        SnapshotReader.ChangeRange range = reader.readChangeRange();
+        RecordCollector collector = new RecordCollector();
+        reader.read(SnapshotWriter.BLOCK_DELETED_NOTES, collector);
+        reader.read(SnapshotWriter.BLOCK_DELETED_LISTS, collector);
+        reader.read(SnapshotWriter.BLOCK_NOTES, collector);
+        reader.close();
+
+        assertFalse(range.full);
+        assertEquals(100, range.fromChangeSeq);
+        assertEquals(100000, range.toChangeSeq);
+        assertEquals(Arrays.asList(5, 700), collector.deletedNoteIds);
+        assertEquals(Arrays.asList(3), collector.deletedListIds);
+        assertEquals(1, collector.notes.size());
+    }
+
+    @Test
+    public void snapshotWithoutRange_hasNoChangeRange() throws Exception {
+        File file = temporaryFolder.newFile();
+        SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(file));
+        writer.writeNote(createNote(1, "milk", false));
+        writer.finish();
+        writer.close();
+
+        SnapshotReader reader = new SnapshotReader(file);
+        assertNull(reader.readChangeRange());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void verify_findsChangedByte() throws Exception {
+        File file = temporaryFolder.newFile();
+        SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(file));
+        writer.writeNote(createNote(1, "milk", false));
+        writer.finish();
+        writer.close();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(file.length() - 10);
+        randomAccessFile.write('x');
+        randomAccessFile.close();
+
+        new SnapshotReader(file).verify();
+    }
+
+    @Test(expected = IOException.class)
+    public void verify_findsCutFile() throws Exception {
+        File file = temporaryFolder.newFile();
+        SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(file));
+        writer.writeNote(createNote(1, "milk", false));
+        writer.finish();
+        writer.close();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 3);
+        randomAccessFile.close();
+
+        new SnapshotReader(file).verify();
+    }
+
+    private Note createNote(int id, String text, boolean inTrash) {
+        return new Note(id, 1520000000000L, text, inTrash, new Priority(3), new NotesList(2));
+    }
+
+    private static class RecordCollector implements SnapshotReader.RecordListener {
+        final ArrayList<Note> notes = new ArrayList<>();
+        final ArrayList<NotesList> lists = new ArrayList<>();
+        final ArrayList<Priority> priorities = new ArrayList<>();
+        final ArrayList<Integer> deletedNoteIds = new ArrayList<>();
+        final ArrayList<Integer> deletedListIds = new ArrayList<>();
+
+        @Override
+        public void onPriority(Priority priority) {
+            priorities.add(priority);
+        }
+
+        @Override
+        public void onList(NotesList list) {
+            lists.add(list);
+        }
+
+        @Override
+        public void onNote(Note note) {
+            notes.add(note);
+        }
+
+        @Override
+        public void onDeletedNote(int noteId) {
+            deletedNoteIds.add(noteId);
+        }
+
+        @Override
+        public void onDeletedList(int listId) {
+            deletedListIds.add(listId);
+        }
+    }
+}
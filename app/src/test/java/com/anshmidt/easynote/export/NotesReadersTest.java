@@ -0,0 +1,95 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+import com.anshmidt.easynote.PriorityInfo;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class NotesReadersTest {
+
+    private final NotesList shopping = new NotesList(1, "Shopping");
+    private final NotesList work = new NotesList(2, "Work");
+
+    @Test
+    public void markdownReader_readsBackWhatWriterWrote() throws Exception {
+        Note milk = createNote("milk", PriorityInfo.IMPORTANT_ID, shopping);
+        Note bread = createNote("bread\n\nwhite", PriorityInfo.NORMAL_ID, shopping);
+        Note report = createNote("report", PriorityInfo.MINOR_ID, work);
+        StringWriter out = new StringWriter();
+        write(new MarkdownNotesWriter(out), milk, bread, report);
+
+        ArrayList<Note> notes = readAll(new MarkdownNotesReader(new StringReader(out.toString())));
+        assertEquals(3, notes.size());
+        assertNote(milk, notes.get(0));
+        assertNote(bread, notes.get(1));
+        assertNote(report, notes.get(2));
+    }
+
+    @Test
+    public void textReader_readsBackTextsAndLists() throws Exception {
+        Note milk = createNote("milk", PriorityInfo.NORMAL_ID, shopping);
+        Note bread = createNote("bread\nwhite", PriorityInfo.NORMAL_ID, shopping);
+        Note report = createNote("report", PriorityInfo.NORMAL_ID, work);
+        StringWriter out = new StringWriter();
+        write(new TextNotesWriter(out), milk, bread, report);
+
+        ArrayList<Note> notes = readAll(new TextNotesReader(new StringReader(out.toString())));
+        assertEquals(3, notes.size());
+        assertNote(milk, notes.get(0));
+        assertNote(bread, notes.get(1));
+        assertNote(report, notes.get(2));
+    }
+
+    @Test
+    public void textReader_makesNoteOfEveryPlainLine() throws Exception {
+        ArrayList<Note> notes = readAll(new TextNotesReader(new StringReader("milk\n\nbread\n")));
+        assertEquals(2, notes.size());
+        assertEquals("milk", notes.get(0).text);
+        assertEquals("bread", notes.get(1).text);
+        assertNull(notes.get(1).list.name);
+    }
+
+    private void write(NotesWriter writer, Note... notes) throws Exception {
+        writer.begin();
+        NotesList currentList = null;
+        for (Note note : notes) {
+            if (note.list != currentList) {
+                if (currentList != null) {
+                    writer.endList();
+                }
+                currentList = note.list;
+                writer.beginList(currentList);
+            }
+            writer.writeNote(note);
+        }
+        writer.endList();
+        writer.end();
+    }
+
+    private ArrayList<Note> readAll(NotesReader reader) throws Exception {
+        ArrayList<Note> notes = new ArrayList<>();
+        Note note;
+        while ((note = reader.readNote()) != null) {
+            notes.add(note);
+        }
+        return notes;
+    }
+
+    private void assertNote(Note expected, Note actual) {
+        assertEquals(expected.text, actual.text);
+        assertEquals(expected.priority.id, actual.priority.id);
+        assertEquals(expected.list.name, actual.list.name);
+    }
+
+    private Note createNote(String text, int priorityId, NotesList list) {
+        return new Note(0, 100, text, false, new Priority(priorityId), list);
+    }
+}
@@ -0,0 +1,66 @@
+package com.anshmidt.easynote.export;
+
+import com.anshmidt.easynote.Note;
+import com.anshmidt.easynote.NotesList;
+import com.anshmidt.easynote.Priority;
+import com.anshmidt.easynote.PriorityInfo;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class NotesWritersTest {
+
+    private final NotesList shopping = new NotesList(1, "Shopping");
+
+    @Test
+    public void textWriter_skipsMinorNotesButKeepsNumbering() throws Exception {
+        StringWriter out = new StringWriter();
+        NotesWriter writer = new TextNotesWriter(out);
+        writer.begin();
+        writer.beginList(shopping);
+        writer.writeNote(createNote("milk", PriorityInfo.IMPORTANT_ID));
+        writer.writeNote(createNote("gum", PriorityInfo.MINOR_ID));
+        writer.writeNote(createNote("bread", PriorityInfo.NORMAL_ID));
+        writer.endList();
+        writer.end();
+
+        assertEquals("Shopping: \n1) milk\n3) bread\n", out.toString());
+    }
+
+    @Test
+    public void markdownWriter_marksPriorityAndIndentsFurtherLines() throws Exception {
+        StringWriter out = new StringWriter();
+        NotesWriter writer = new MarkdownNotesWriter(out);
+        writer.begin();
+        writer.beginList(shopping);
+        writer.writeNote(createNote("milk", PriorityInfo.IMPORTANT_ID));
+        writer.writeNote(createNote("bread\nwhite", PriorityInfo.NORMAL_ID));
+        writer.endList();
+        writer.end();
+
+        assertEquals("## Shopping\n\n- **!** milk\n- bread\n  white\n", out.toString());
+    }
+
+    @Test
+    public void csvWriter_quotesOnlyFieldsThatNeedIt() throws Exception {
+        StringWriter out = new StringWriter();
+        NotesWriter writer = new CsvNotesWriter(out);
+        writer.begin();
+        writer.beginList(shopping);
+        writer.writeNote(createNote("milk", PriorityInfo.NORMAL_ID));
+        writer.writeNote(createNote("say \"hi\", twice", PriorityInfo.MINOR_ID));
+        writer.endList();
+        writer.end();
+
+        assertEquals(CsvNotesWriter.HEADER + "\r\n"
+                + "Shopping,2,100,milk\r\n"
+                + "Shopping,3,100,\"say \"\"hi\"\", twice\"\r\n", out.toString());
+    }
+
+    private Note createNote(String text, int priorityId) {
+        return new Note(0, 100, text, false, new Priority(priorityId), shopping);
+    }
+}